@@ -4,29 +4,31 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.util.AttributeSet;
-import android.widget.ImageView;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
 public class BorderImageView extends AppCompatImageView {
+    /**
+     * 边框画笔，onDraw中不创建对象
+     */
+    private final Paint borderPaint = new Paint();
+
     public BorderImageView(Context context) {
-        super(context);
+        this(context, null);
     }
 
     public BorderImageView(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setStrokeWidth(4);
+        borderPaint.setColor(Color.RED);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        Paint paint = new Paint();
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(4);
-        paint.setColor(Color.RED);
-        canvas.drawRect(new Rect(0,0,getWidth(),getHeight()),paint);
+        canvas.drawRect(0, 0, getWidth(), getHeight(), borderPaint);
     }
 }
@@ -4,15 +4,11 @@ import android.Manifest;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
 import android.graphics.Point;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.hardware.camera2.CameraDevice;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.Size;
@@ -32,12 +28,17 @@ import androidx.core.content.ContextCompat;
 
 import com.camera.preview.camera2.Camera2Helper;
 import com.camera.preview.camera2.Camera2Listener;
+import com.camera.preview.camera2.CameraInfoCache;
+import com.camera.preview.pipeline.FrameFanout;
+import com.camera.preview.pipeline.LatestFrameDispatcher;
+import com.camera.preview.pipeline.PipelineMetrics;
+import com.camera.preview.pipeline.YuvFrame;
 import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.LumaStatistics;
+import com.camera.preview.util.MotionDetector;
+import com.camera.preview.util.YuvToRgbConverter;
 import com.camera.preview.view.ShowRectView;
 
-import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -63,10 +64,6 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
      * 默认打开的CAMERA
      */
     private static final String CAMERA_ID = Camera2Helper.CAMERA_ID_BACK;
-    /**
-     * 图像帧数据，全局变量避免反复创建，降低gc频率
-     */
-    private byte[] nv21;
     /**
      * 显示的旋转角度
      */
@@ -80,17 +77,66 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
      */
     private String openedCameraId;
     /**
-     * 当前获取的帧数
+     * 处理的目标间隔，单位毫秒，处理耗时超过该值时会自动降低处理频率
+     */
+    private static final long PROCESS_INTERVAL_MS = 1000;
+    /**
+     * 缩略图相对于分析帧的缩小倍数
+     */
+    private static final int THUMBNAIL_SCALE = 2;
+    /**
+     * 分析流的目标尺寸，检测在该分辨率下进行，不需要拷贝和转换完整的预览尺寸
+     */
+    private static final Point ANALYSIS_SIZE = new Point(640, 480);
+    /**
+     * 预览的目标帧率，只选择能维持该帧率的预览尺寸
      */
-    private int currentIndex = 0;
+    private static final float TARGET_FPS = 30;
     /**
-     * 处理的间隔帧
+     * 每一帧的亮度和曝光统计，在稀疏网格上采样，只在相机线程中使用
      */
-    private static final int PROCESS_INTERVAL = 30;
+    private final LumaStatistics lumaStatistics = new LumaStatistics(64, 36);
+    /**
+     * 打印亮度统计的帧间隔
+     */
+    private static final int LUMA_LOG_INTERVAL_FRAMES = 300;
+    /**
+     * 在缩略图上做运动检测，画面没有变化时跳过之后的转换，只在图像处理线程中使用
+     */
+    private final MotionDetector motionDetector = new MotionDetector(16, 9, 2);
+    /**
+     * 缩略图的ARGB数据，全局变量避免反复创建，降低gc频率
+     */
+    private int[] thumbnailArgb;
+    /**
+     * 旋转和镜像后与预览画面方向一致的帧数据
+     */
+    private byte[] rotatedYuv;
+    /**
+     * 与预览画面方向一致的缩略图ARGB数据
+     */
+    private int[] previewArgb;
     /**
      * 线程池
      */
     private ExecutorService imageProcessExecutor;
+    /**
+     * 将预览帧分发给各个消费者，每个消费者只保留最新一帧，处理不过来时旧帧会被新帧替换，不会在线程池中堆积
+     */
+    private final FrameFanout frameFanout = new FrameFanout();
+    /**
+     * 生成缩略图的消费者，由分发器在YUV域缩小后交给图像处理线程
+     */
+    private FrameFanout.Consumer thumbnailConsumer;
+    /**
+     * 相机到UI各阶段的耗时统计
+     */
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+    /**
+     * 打印耗时统计的间隔，单位毫秒
+     */
+    private static final long METRICS_LOG_INTERVAL_MS = 10000;
+    private long lastMetricsLogTime;
     /**
      * 需要的权限
      */
@@ -98,6 +144,10 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
             Manifest.permission.CAMERA
     };
     private ShowRectView srvRectView;
+    /**
+     * 演示用的方框，view坐标，以left、top、right、bottom为一组
+     */
+    private static final int[] DEMO_RECTS = {200, 300, 500, 600, 500, 500, 700, 800};
     /**
      * 是否需要检车权限
      */
@@ -109,7 +159,22 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
         setContentView(R.layout.activity_main);
+        // 在后台读取摄像头特性，打开和切换摄像头时直接使用缓存
+        CameraInfoCache.getInstance().prefetch(this);
         imageProcessExecutor = Executors.newSingleThreadExecutor();
+        thumbnailConsumer = new FrameFanout.Consumer.Builder()
+                .executor(imageProcessExecutor)
+                .consumer(new LatestFrameDispatcher.FrameConsumer() {
+                    @Override
+                    public void onFrame(YuvFrame frame) {
+                        processFrame(frame);
+                    }
+                })
+                .fps(1000f / PROCESS_INTERVAL_MS)
+                .scale(THUMBNAIL_SCALE)
+                .build();
+        thumbnailConsumer.getDispatcher().setMetrics(pipelineMetrics);
+        frameFanout.addConsumer(thumbnailConsumer);
         initView();
     }
 
@@ -139,6 +204,9 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
                 .previewOn(textureView)
                 .previewViewSize(new Point(textureView.getWidth(), textureView.getHeight()))
                 .rotation(getWindowManager().getDefaultDisplay().getRotation())
+                .pipelineMetrics(pipelineMetrics)
+                .analysisSize(ANALYSIS_SIZE)
+                .targetFps(TARGET_FPS)
                 .build();
         camera2Helper.start();
     }
@@ -206,13 +274,10 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
     }
 
     /**
-     * 在预览之上绘制方框
+     * 在预览之上绘制方框，可以在任意线程中调用
      */
     public void showRectView() {
-        List<Rect> rects = new ArrayList<>();
-        rects.add(new Rect(200, 300, 500, 600));
-        rects.add(new Rect(500, 500, 700, 800));
-        srvRectView.setRect(rects);
+        srvRectView.setViewRects(DEMO_RECTS, DEMO_RECTS.length / 4);
     }
 
     @Override
@@ -221,6 +286,12 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
         this.displayOrientation = displayOrientation;
         this.isMirrorPreview = isMirror;
         this.openedCameraId = cameraId;
+        // 与预览画面一致的分析帧坐标变换，检测结果可直接以帧坐标推送给方框view
+        int degrees = Camera2Helper.CAMERA_ID_BACK.equals(cameraId) ? displayOrientation : (360 - displayOrientation) % 360;
+        Size analysisSize = camera2Helper.getAnalysisSize();
+        srvRectView.setImageGeometry(analysisSize.getWidth(), analysisSize.getHeight(), degrees,
+                Camera2Helper.CAMERA_ID_FRONT.equals(cameraId) ^ isMirror,
+                getWindowManager().getDefaultDisplay().getRotation() * 90);
         //在相机打开时，添加右上角的view用于显示原始数据和预览数据
         runOnUiThread(new Runnable() {
             @Override
@@ -264,61 +335,104 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
 
 
     @Override
-    public void onPreview(final byte[] y, final byte[] u, final byte[] v, final Size previewSize, final int stride) {
-        if (currentIndex++ % PROCESS_INTERVAL == 0) {
-            imageProcessExecutor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    if (nv21 == null) {
-                        nv21 = new byte[stride * previewSize.getHeight() * 3 / 2];
-                    }
-                    // 回传数据是YUV422
-                    if (y.length / u.length == 2) {
-                        ImageUtil.yuv422ToYuv420sp(y, u, v, nv21, stride, previewSize.getHeight());
-                    }
-                    // 回传数据是YUV420
-                    else if (y.length / u.length == 4) {
-                        ImageUtil.yuv420ToYuv420sp(y, u, v, nv21, stride, previewSize.getHeight());
-                    }
-                    YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, stride, previewSize.getHeight(), null);
-                    // ByteArrayOutputStream的close中其实没做任何操作，可不执行
-                    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-                    // 由于某些stride和previewWidth差距大的分辨率，[0,previewWidth)是有数据的，而[previewWidth,stride)补上的U、V均为0，因此在这种情况下运行会看到明显的绿边
-//                    yuvImage.compressToJpeg(new Rect(0, 0, stride, previewSize.getHeight()), 100, byteArrayOutputStream);
-
-                    // 由于U和V一般都有缺损，因此若使用方式，可能会有个宽度为1像素的绿边
-                    yuvImage.compressToJpeg(new Rect(0, 0, previewSize.getWidth(), previewSize.getHeight()), 100, byteArrayOutputStream);
-
-                    // 为了删除绿边，抛弃一行像素
-//                    yuvImage.compressToJpeg(new Rect(0, 0, previewSize.getWidth() - 1, previewSize.getHeight()), 100, byteArrayOutputStream);
-
-                    byte[] jpgBytes = byteArrayOutputStream.toByteArray();
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inSampleSize = 4;
-                    // 原始预览数据生成的bitmap
-                    final Bitmap originalBitmap = BitmapFactory.decodeByteArray(jpgBytes, 0, jpgBytes.length, options);
-                    Matrix matrix = new Matrix();
-                    // 预览相对于原数据可能有旋转
-                    matrix.postRotate(Camera2Helper.CAMERA_ID_BACK.equals(openedCameraId) ? displayOrientation : -displayOrientation);
+    public void onPreview(YuvFrame frame) {
+        // 紧凑排列的YUV420数据开头即为Y平面
+        lumaStatistics.update(frame.getData(), frame.getWidth(), frame.getWidth(), frame.getHeight());
+        if (frame.getSequence() % LUMA_LOG_INTERVAL_FRAMES == 0) {
+            Log.i(TAG, "luma mean: " + lumaStatistics.getMean() + ", contrast: " + lumaStatistics.getStdDev()
+                    + ", p5/p95: " + lumaStatistics.getPercentile(5) + "/" + lumaStatistics.getPercentile(95)
+                    + ", under: " + lumaStatistics.getUnderExposedFraction() + ", over: " + lumaStatistics.getOverExposedFraction());
+            if (frame.hasCaptureInfo()) {
+                Log.i(TAG, "exposure: " + frame.getExposureTime() / 1000 + "us, iso: " + frame.getSensitivity()
+                        + ", frame duration: " + frame.getFrameDuration() / 1000 + "us");
+            }
+        }
+        frameFanout.onFrame(frame);
+    }
 
-                    // 对于前置数据，镜像处理；若手动设置镜像预览，则镜像处理；若都有，则不需要镜像处理
-                    if (Camera2Helper.CAMERA_ID_FRONT.equals(openedCameraId) ^ isMirrorPreview) {
-                        matrix.postScale(-1, 1);
-                    }
-                    // 和预览画面相同的bitmap
-                    final Bitmap previewBitmap = Bitmap.createBitmap(originalBitmap, 0, 0, originalBitmap.getWidth(), originalBitmap.getHeight(), matrix, false);
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            ivOriginFrame.setImageBitmap(originalBitmap);
-                            ivPreviewFrame.setImageBitmap(previewBitmap);
-                            showRectView();
-                        }
-                    });
+    /**
+     * 在图像处理线程中生成原始数据和预览画面的缩略图
+     *
+     * @param thumbnail 已在YUV域缩小的预览帧，之后的旋转和颜色转换只处理缩略图大小的数据，方法返回后由分发器释放
+     */
+    private void processFrame(YuvFrame thumbnail) {
+        int thumbnailWidth = thumbnail.getWidth();
+        int thumbnailHeight = thumbnail.getHeight();
+        if (thumbnailArgb == null || thumbnailArgb.length != thumbnailWidth * thumbnailHeight) {
+            thumbnailArgb = new int[thumbnailWidth * thumbnailHeight];
+            previewArgb = new int[thumbnailWidth * thumbnailHeight];
+            rotatedYuv = new byte[ImageUtil.getYuv420Size(thumbnailWidth, thumbnailHeight)];
+        }
+        // 紧凑排列的YUV420数据开头即为Y平面
+        motionDetector.detect(thumbnail.getData(), thumbnailWidth, thumbnailWidth, thumbnailHeight);
+        if (!motionDetector.hasMotion()) {
+            logMetrics();
+            return;
+        }
+        long start = System.nanoTime();
+        // 直接由YUV转换为ARGB，省去JPEG编码和解码
+        YuvToRgbConverter.yuv420ToArgb(thumbnail.getData(), thumbnail.getFormat(), thumbnailWidth, thumbnailHeight,
+                thumbnailArgb, 1, true);
+        long bitmapStart = System.nanoTime();
+        long convertNanos = bitmapStart - start;
+        // 原始预览数据生成的bitmap
+        final Bitmap originalBitmap = Bitmap.createBitmap(thumbnailArgb, thumbnailWidth, thumbnailHeight, Bitmap.Config.ARGB_8888);
+        long convertStart = System.nanoTime();
+        long bitmapNanos = convertStart - bitmapStart;
+        // 预览相对于原数据可能有旋转
+        int degrees = Camera2Helper.CAMERA_ID_BACK.equals(openedCameraId) ? displayOrientation : (360 - displayOrientation) % 360;
+        // 对于前置数据，镜像处理；若手动设置镜像预览，则镜像处理；若都有，则不需要镜像处理
+        boolean mirror = Camera2Helper.CAMERA_ID_FRONT.equals(openedCameraId) ^ isMirrorPreview;
+        // 在YUV数据上一次完成旋转和镜像，不再创建额外的bitmap
+        ImageUtil.rotateYuv420(thumbnail.getData(), rotatedYuv, thumbnail.getFormat(), thumbnailWidth, thumbnailHeight, degrees, mirror);
+        boolean swap = degrees % 180 != 0;
+        int rotatedWidth = swap ? thumbnailHeight : thumbnailWidth;
+        int rotatedHeight = swap ? thumbnailWidth : thumbnailHeight;
+        YuvToRgbConverter.yuv420ToArgb(rotatedYuv, thumbnail.getFormat(), rotatedWidth, rotatedHeight, previewArgb, 1, true);
+        bitmapStart = System.nanoTime();
+        convertNanos += bitmapStart - convertStart;
+        // 和预览画面相同的bitmap
+        final Bitmap previewBitmap = Bitmap.createBitmap(previewArgb, rotatedWidth, rotatedHeight, Bitmap.Config.ARGB_8888);
+        bitmapNanos += System.nanoTime() - bitmapStart;
+        pipelineMetrics.record(PipelineMetrics.STAGE_CONVERT, convertNanos);
+        pipelineMetrics.record(PipelineMetrics.STAGE_BITMAP, bitmapNanos);
+        logMetrics();
+        Camera2Helper helper = camera2Helper;
+        // 帧在方法返回后被释放，先换算好曝光时刻
+        final long exposureNanoTime = helper == null ? 0 : helper.toNanoTime(thumbnail.getTimestamp());
+        final long postTime = System.nanoTime();
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                pipelineMetrics.recordSince(PipelineMetrics.STAGE_UI_POST, postTime);
+                ivOriginFrame.setImageBitmap(originalBitmap);
+                ivPreviewFrame.setImageBitmap(previewBitmap);
+                showRectView();
+                if (exposureNanoTime != 0) {
+                    pipelineMetrics.recordSince(PipelineMetrics.STAGE_END_TO_END, exposureNanoTime);
                 }
-            });
+            }
+        });
+    }
+
+    /**
+     * 定期打印各阶段的耗时统计并清空
+     */
+    private void logMetrics() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastMetricsLogTime < METRICS_LOG_INTERVAL_MS) {
+            return;
+        }
+        if (lastMetricsLogTime != 0) {
+            Log.i(TAG, "pipeline latency:\n" + pipelineMetrics.dump(true));
+            Camera2Helper helper = camera2Helper;
+            if (helper != null) {
+                Log.i(TAG, "images delivered: " + helper.getDeliveredImageCount() + ", skipped: " + helper.getSkippedImageCount());
+                Log.i(TAG, "capture results matched: " + helper.getCaptureResultMatchedCount()
+                        + ", missed: " + helper.getCaptureResultMissedCount());
+            }
         }
+        lastMetricsLogTime = now;
     }
 
     @Override
@@ -337,6 +451,7 @@ public class CameraPreviewActivity extends AppCompatActivity implements Camera2L
             imageProcessExecutor.shutdown();
             imageProcessExecutor = null;
         }
+        frameFanout.clear();
         if (camera2Helper != null) {
             camera2Helper.release();
         }
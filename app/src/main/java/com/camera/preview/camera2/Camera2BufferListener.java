@@ -0,0 +1,16 @@
+package com.camera.preview.camera2;
+
+import com.camera.preview.pipeline.YuvPlanes;
+
+/**
+ * 预览原始平面回调，不经过堆内存拷贝。
+ * 适用于只需要读取部分数据的场景，通过{@link Camera2Helper.Builder#bufferListener(Camera2BufferListener)}设置
+ */
+public interface Camera2BufferListener {
+    /**
+     * 预览平面回调，在相机线程中执行
+     *
+     * @param planes Y、U、V平面及其步长、时间戳和尺寸，只在回调期间有效，不能写入平面数据
+     */
+    void onPreviewBuffer(YuvPlanes planes);
+}
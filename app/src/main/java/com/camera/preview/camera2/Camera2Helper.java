@@ -8,75 +8,66 @@ import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.os.Message;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.Surface;
 import android.view.TextureView;
 
 import androidx.annotation.NonNull;
 
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import com.camera.preview.pipeline.CaptureResultTable;
+import com.camera.preview.pipeline.FramePool;
+import com.camera.preview.pipeline.FrameSource;
+import com.camera.preview.pipeline.PipelineMetrics;
+import com.camera.preview.pipeline.YuvFrame;
+import com.camera.preview.pipeline.YuvPlanes;
+import com.camera.preview.util.ImageUtil;
+
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class Camera2Helper {
+public class Camera2Helper implements FrameSource {
 
     private static final String TAG = "Camera2Helper";
 
     private Point maxPreviewSize;
     private Point minPreviewSize;
 
-    private static final int START_CAMERA = 1000;
-
-    private MyHandler handler = new MyHandler(this);
-
-    private static class MyHandler extends Handler {
-
-        private WeakReference<Camera2Helper> camera2HelperWeakReference;
-
-        MyHandler(Camera2Helper camera2Helper) {
-            camera2HelperWeakReference = new WeakReference<>(camera2Helper);
-        }
-
-        @Override
-        public void dispatchMessage(@NonNull Message msg) {
-            super.dispatchMessage(msg);
-            if (msg.what == START_CAMERA) {
-                if (camera2HelperWeakReference.get() != null) {
-                    camera2HelperWeakReference.get().start();
-                }
-            }
-        }
-    }
-
-    /**
-     * 是否关闭了摄像头
-     */
-    private AtomicBoolean isClosed = new AtomicBoolean(false);
     /**
      * 是否开始了摄像头
      */
     private AtomicBoolean isStart = new AtomicBoolean(false);
     /**
-     * 是否切换了摄像头
+     * 是否正在切换摄像头
      */
     private AtomicBoolean isSwitchCamera = new AtomicBoolean(false);
+    /**
+     * 切换开始的时间，由第一帧到达时清零，单位纳秒
+     */
+    private volatile long switchStartNanos;
+    /**
+     * 新摄像头的会话已配置，之后到达的帧属于新摄像头
+     */
+    private volatile boolean awaitingSwitchFrame;
+    /**
+     * 最近一次切换到第一帧的耗时，单位纳秒
+     */
+    private volatile long lastSwitchLatencyNanos;
 
     /**
      * 前摄像头
@@ -87,10 +78,61 @@ public class Camera2Helper {
      */
     public static final String CAMERA_ID_BACK = "0";
 
+    /**
+     * 延迟优先：每次只取ImageReader中最新的一帧，立即关闭更旧的帧，处理不过来时跳帧而不是排队
+     */
+    public static final int ACQUIRE_MODE_LATEST = 0;
+    /**
+     * 吞吐优先：按顺序处理每一帧，使用更深的ImageReader队列吸收处理耗时的抖动
+     */
+    public static final int ACQUIRE_MODE_SEQUENTIAL = 1;
+
+    /**
+     * 默认配置：只设置连续自动对焦，其余使用TEMPLATE_PREVIEW的默认值
+     */
+    public static final int PROFILE_DEFAULT = 0;
+    /**
+     * 延迟优先：关闭或使用最快的降噪、锐化等后处理，关闭防抖，使用最高的帧率范围
+     */
+    public static final int PROFILE_LOW_LATENCY = 1;
+    /**
+     * 功耗优先：尽量关闭后处理和防抖，并将帧率限制在{@link #POWER_SAVER_FPS}，适用于长时间常开的设备
+     */
+    public static final int PROFILE_POWER_SAVER = 2;
+    /**
+     * 画质优先：使用高质量的降噪、锐化、坏点校正和色调映射，并开启防抖
+     */
+    public static final int PROFILE_MAX_QUALITY = 3;
+    /**
+     * 功耗优先配置的目标帧率
+     */
+    private static final float POWER_SAVER_FPS = 15;
+    /**
+     * 延迟优先模式默认的maxImages，取最新帧时需要同时持有新旧两帧
+     */
+    private static final int DEFAULT_LATEST_MAX_IMAGES = 2;
+    /**
+     * 吞吐优先模式默认的maxImages
+     */
+    private static final int DEFAULT_SEQUENTIAL_MAX_IMAGES = 4;
+
 
     private String mCameraId;
     private String specificCameraId;
     private Camera2Listener camera2Listener;
+    private Camera2BufferListener bufferListener;
+    /**
+     * 是否将预览数据拷贝到帧池中并回调{@link Camera2Listener#onPreview(YuvFrame)}
+     */
+    private boolean frameCopyEnabled;
+    /**
+     * 各阶段耗时统计，为null时不统计
+     */
+    private PipelineMetrics pipelineMetrics;
+    /**
+     * 与具体帧源无关的帧回调，见{@link FrameSource}
+     */
+    private volatile FrameListener frameListener;
     private TextureView mTextureView;
     private int rotation;
     private Point previewViewSize;
@@ -108,6 +150,82 @@ public class Camera2Helper {
     private CameraDevice mCameraDevice;
 
     private Size mPreviewSize;
+    /**
+     * 目标帧率，大于0时按帧率和像素吞吐预算选择预览尺寸，并设置自动曝光的帧率范围
+     */
+    private float targetFps;
+    /**
+     * 每秒最多处理的像素数，0表示不限制
+     */
+    private long pixelBudget;
+    /**
+     * 按目标帧率选出的自动曝光帧率范围，未设置目标帧率时为null
+     */
+    private Range<Integer> mAeFpsRange;
+    /**
+     * 拍摄配置，取值为{@link #PROFILE_DEFAULT}等
+     */
+    private volatile int captureProfile;
+    /**
+     * 预览的Surface，切换拍摄配置时重建请求使用
+     */
+    private Surface mPreviewSurface;
+    /**
+     * 分析流的目标尺寸，为null时与预览尺寸相同
+     */
+    private Point analysisTargetSize;
+    /**
+     * 分析帧的格式，取值为{@link ImageUtil#FORMAT_NV21}等
+     */
+    private int analysisFormat;
+    /**
+     * 当前分析流（ImageReader）的尺寸
+     */
+    private volatile Size mAnalysisSize;
+
+    /**
+     * 预览帧池，避免相机线程覆盖正在被其他线程读取的数据
+     */
+    private FramePool framePool;
+    private int framePoolSize;
+    /**
+     * 取帧模式，取值为{@link #ACQUIRE_MODE_LATEST}或{@link #ACQUIRE_MODE_SEQUENTIAL}
+     */
+    private int acquireMode;
+    private int maxImages;
+    /**
+     * 交给回调处理的帧数
+     */
+    private final AtomicLong deliveredImageCount = new AtomicLong();
+    /**
+     * 延迟优先模式下因有更新的帧而未处理就关闭的帧数
+     */
+    private final AtomicLong skippedImageCount = new AtomicLong();
+    /**
+     * 拍摄结果在图像之前最多领先的帧数
+     */
+    private static final int CAPTURE_RESULT_CAPACITY = 8;
+    /**
+     * 帧间隔未知时等待拍摄结果的时间
+     */
+    private static final long CAPTURE_RESULT_DEFAULT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(33);
+    /**
+     * 最近的拍摄结果，在相机线程中写入和关联，按时间戳关联到预览帧
+     */
+    private final CaptureResultTable captureResults = new CaptureResultTable(CAPTURE_RESULT_CAPACITY);
+    /**
+     * 等待拍摄结果超时后分发暂缓的帧
+     */
+    private final Runnable flushCaptureResultsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            captureResults.flushExpired(System.nanoTime());
+        }
+    };
+    /**
+     * 当前摄像头的时间戳是否与{@link SystemClock#elapsedRealtimeNanos()}同一时基
+     */
+    private volatile boolean timestampRealtime;
 
 
     private Camera2Helper(Camera2Helper.Builder builder) {
@@ -119,8 +237,26 @@ public class Camera2Helper {
         specificPreviewSize = builder.previewSize;
         maxPreviewSize = builder.maxPreviewSize;
         minPreviewSize = builder.minPreviewSize;
+        analysisTargetSize = builder.analysisSize;
+        targetFps = builder.targetFps;
+        captureProfile = builder.captureProfile;
+        pixelBudget = builder.pixelBudget;
+        analysisFormat = builder.analysisFormat;
         isMirror = builder.isMirror;
         context = builder.context;
+        framePoolSize = builder.framePoolSize;
+        captureResults.setFrameListener(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                dispatchFrame(frame);
+            }
+        });
+        bufferListener = builder.bufferListener;
+        frameCopyEnabled = builder.frameCopyEnabled;
+        pipelineMetrics = builder.pipelineMetrics;
+        acquireMode = builder.acquireMode;
+        maxImages = builder.maxImages > 0 ? builder.maxImages
+                : (acquireMode == ACQUIRE_MODE_LATEST ? DEFAULT_LATEST_MAX_IMAGES : DEFAULT_SEQUENTIAL_MAX_IMAGES);
         if (isMirror) {
             mTextureView.setScaleX(-1);
         }
@@ -128,26 +264,102 @@ public class Camera2Helper {
 
     /**
      * 切换摄像头
-     * 切换摄像头逻辑
-     * 1.先设置需要切换的CameraId
-     * 2.关闭摄像头
-     * 3.重新设置之前设置的CameraId并打开摄像头
-     * 由于连续快速的关闭马上打开会报一个java.lang.IllegalStateException: CameraDevice was already closed异常
-     * 所以定义isClosed 只有未关闭的时候才能关闭
+     * 在相机线程中只关闭并重新打开CameraDevice和CaptureSession，
+     * 相机线程、帧池以及尺寸不变时的ImageReader都会保留，
+     * 切换到新摄像头第一帧的耗时可通过{@link #getLastSwitchLatencyNanos()}获取。
+     * 切换完成前重复调用会被忽略
      */
     public void switchCamera() {
-        //是否通过点击按钮切换
-        isSwitchCamera.set(true);
-        //当切换前后摄像头的时候
-        if (!isClosed.get()) {
-            isClosed.set(true);
-            if (CAMERA_ID_BACK.equals(mCameraId)) {
-                specificCameraId = CAMERA_ID_FRONT;
-            } else if (CAMERA_ID_FRONT.equals(mCameraId)) {
-                specificCameraId = CAMERA_ID_BACK;
+        if (!isSwitchCamera.compareAndSet(false, true)) {
+            return;
+        }
+        if (CAMERA_ID_BACK.equals(mCameraId)) {
+            specificCameraId = CAMERA_ID_FRONT;
+        } else if (CAMERA_ID_FRONT.equals(mCameraId)) {
+            specificCameraId = CAMERA_ID_BACK;
+        }
+        Handler backgroundHandler = mBackgroundHandler;
+        if (!isStart.get() || backgroundHandler == null) {
+            // 未打开时只修改cameraId，下次start时生效
+            isSwitchCamera.set(false);
+            return;
+        }
+        switchStartNanos = System.nanoTime();
+        awaitingSwitchFrame = false;
+        backgroundHandler.post(switchCameraTask);
+    }
+
+    private final Runnable switchCameraTask = new Runnable() {
+        @Override
+        public void run() {
+            // 切换任务执行前已被stop
+            if (mCameraDevice == null || context == null) {
+                isSwitchCamera.set(false);
+                return;
+            }
+            closeCameraDevice();
+            if (!openCamera()) {
+                isSwitchCamera.set(false);
             }
-            stop();
         }
+    };
+
+    /**
+     * 获取最近一次切换摄像头到收到新摄像头第一帧的耗时
+     *
+     * @return 耗时，单位纳秒，未切换过时为0
+     */
+    public long getLastSwitchLatencyNanos() {
+        return lastSwitchLatencyNanos;
+    }
+
+    /**
+     * 交给回调处理的帧数
+     */
+    public long getDeliveredImageCount() {
+        return deliveredImageCount.get();
+    }
+
+    /**
+     * 延迟优先模式下因有更新的帧而跳过的帧数，吞吐优先模式下始终为0
+     */
+    public long getSkippedImageCount() {
+        return skippedImageCount.get();
+    }
+
+    /**
+     * 当前分析流的尺寸，即{@link Camera2Listener#onPreview(YuvFrame)}回调帧的尺寸，摄像头打开前为null
+     */
+    public Size getAnalysisSize() {
+        return mAnalysisSize;
+    }
+
+    /**
+     * 找到对应拍摄结果的帧数
+     */
+    public long getCaptureResultMatchedCount() {
+        return captureResults.getMatchedCount();
+    }
+
+    /**
+     * 拍摄结果晚于图像到达而没有附加拍摄参数的帧数
+     */
+    public long getCaptureResultMissedCount() {
+        return captureResults.getMissedCount();
+    }
+
+    /**
+     * 将帧的传感器时间戳换算到{@link System#nanoTime()}的时基，用于计算从曝光到处理完成的延迟。
+     * 时间戳来源未知的设备上时间戳一般与{@link System#nanoTime()}同为单调时钟，此时不做换算
+     *
+     * @param sensorTimestamp {@link YuvFrame#getTimestamp()}
+     * @return 对应的{@link System#nanoTime()}
+     */
+    public long toNanoTime(long sensorTimestamp) {
+        if (!timestampRealtime) {
+            return sensorTimestamp;
+        }
+        return sensorTimestamp - (SystemClock.elapsedRealtimeNanos() - System.nanoTime());
     }
 
     private int getCameraOri(int rotation, String cameraId) {
@@ -221,7 +433,6 @@ public class Camera2Helper {
                 camera2Listener.onCameraOpened(cameraDevice, mCameraId, mPreviewSize, getCameraOri(rotation, mCameraId), isMirror);
             }
             isStart.set(true);
-            isClosed.set(false);
             isSwitchCamera.set(false);
         }
 
@@ -237,7 +448,6 @@ public class Camera2Helper {
                 camera2Listener.onCameraClosed();
             }
             isStart.set(false);
-            isClosed.set(false);
             isSwitchCamera.set(false);
         }
 
@@ -245,14 +455,11 @@ public class Camera2Helper {
         public void onClosed(@NonNull CameraDevice camera) {
             // 当相机关闭时回调该方法，这个方法可以不用实现
             Log.i(TAG, "onClosed: ");
-            isClosed.set(true);
-            isStart.set(false);
-            //只有切换摄像头的时候才自动关闭后马上开启
-            if (isSwitchCamera.get()) {
-                Message message = Message.obtain();
-                message.what = START_CAMERA;
-                handler.sendMessage(message);
+            //切换摄像头时旧设备的关闭回调可能在新设备打开之后到达，此时忽略
+            if (mCameraDevice != null && mCameraDevice != camera) {
+                return;
             }
+            isStart.set(false);
         }
 
         @Override
@@ -274,7 +481,6 @@ public class Camera2Helper {
             }
 
             isStart.set(false);
-            isClosed.set(false);
             isSwitchCamera.set(false);
         }
 
@@ -292,8 +498,34 @@ public class Camera2Helper {
     private Handler mBackgroundHandler;
 
     private ImageReader mImageReader;
+    /**
+     * 预览帧回调，重新创建ImageReader时复用，帧序号在切换摄像头后继续递增
+     */
+    private final OnImageAvailableListenerImpl imageAvailableListener = new OnImageAvailableListenerImpl();
 
 
+    /**
+     * 将每帧的拍摄参数写入{@link #captureResults}，回调在相机线程中执行，
+     * 等待该结果的帧在此时带着参数分发
+     */
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (timestamp == null) {
+                return;
+            }
+            Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+            Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+            Long frameDuration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+            captureResults.put(result.getFrameNumber(), timestamp,
+                    exposureTime == null ? 0 : exposureTime,
+                    sensitivity == null ? 0 : sensitivity,
+                    frameDuration == null ? 0 : frameDuration);
+        }
+    };
+
     /**
      * {@link CaptureRequest.Builder} for the camera preview
      */
@@ -311,71 +543,45 @@ public class Camera2Helper {
      */
     private int mSensorOrientation;
 
-    private Size getBestSupportedSize(List<Size> sizes) {
-        Size defaultSize = sizes.get(0);
-        Size[] tempSizes = sizes.toArray(new Size[0]);
-        Arrays.sort(tempSizes, new Comparator<Size>() {
-            @Override
-            public int compare(Size o1, Size o2) {
-                if (o1.getWidth() > o2.getWidth()) {
-                    return -1;
-                } else if (o1.getWidth() == o2.getWidth()) {
-                    return o1.getHeight() > o2.getHeight() ? -1 : 1;
-                } else {
-                    return 1;
-                }
-            }
-        });
-        sizes = new ArrayList<>(Arrays.asList(tempSizes));
-        for (int i = sizes.size() - 1; i >= 0; i--) {
-            if (maxPreviewSize != null) {
-                if (sizes.get(i).getWidth() > maxPreviewSize.x || sizes.get(i).getHeight() > maxPreviewSize.y) {
-                    sizes.remove(i);
-                    continue;
-                }
-            }
-            if (minPreviewSize != null) {
-                if (sizes.get(i).getWidth() < minPreviewSize.x || sizes.get(i).getHeight() < minPreviewSize.y) {
-                    sizes.remove(i);
-                }
+    /**
+     * 当前摄像头的特性，来自{@link CameraInfoCache}
+     */
+    private CameraInfo mCameraInfo;
+
+    private Size getBestSupportedSize(CameraInfo cameraInfo) {
+        if (targetFps > 0 && specificPreviewSize == null) {
+            Size throughputSize = cameraInfo.getThroughputPreviewSize(maxPreviewSize, minPreviewSize, previewViewSize,
+                    analysisTargetSize, targetFps, pixelBudget);
+            if (throughputSize != null) {
+                return throughputSize;
             }
+            Log.w(TAG, "no previewSize can sustain " + targetFps + "fps within budget, fall back to ratio selection");
         }
-        if (sizes.size() == 0) {
+        Size bestSize = cameraInfo.getBestPreviewSize(maxPreviewSize, minPreviewSize, previewViewSize, specificPreviewSize);
+        if (bestSize == null) {
             String msg = "can not find suitable previewSize, now using default";
             if (camera2Listener != null) {
                 Log.e(TAG, msg);
                 camera2Listener.onCameraError(new Exception(msg));
             }
-            return defaultSize;
-        }
-        Size bestSize = sizes.get(0);
-        float previewViewRatio;
-        if (previewViewSize != null) {
-            previewViewRatio = (float) previewViewSize.x / (float) previewViewSize.y;
-        } else {
-            previewViewRatio = (float) bestSize.getWidth() / (float) bestSize.getHeight();
-        }
-
-        if (previewViewRatio > 1) {
-            previewViewRatio = 1 / previewViewRatio;
-        }
-
-        for (Size s : sizes) {
-            if (specificPreviewSize != null && specificPreviewSize.x == s.getWidth() && specificPreviewSize.y == s.getHeight()) {
-                return s;
-            }
-            if (Math.abs((s.getHeight() / (float) s.getWidth()) - previewViewRatio) < Math.abs(bestSize.getHeight() / (float) bestSize.getWidth() - previewViewRatio)) {
-                bestSize = s;
-            }
+            return cameraInfo.getDefaultPreviewSize();
         }
         return bestSize;
     }
 
+    @Override
+    public void setFrameListener(FrameListener listener) {
+        frameListener = listener;
+    }
+
+    @Override
     public synchronized void start() {
-        if (mCameraDevice != null) {
+        if (mBackgroundThread != null) {
             return;
         }
         startBackgroundThread();
+        // 通常已在后台读取完成，这里确保之后打开和切换摄像头时命中缓存
+        CameraInfoCache.getInstance().prefetch(context);
 
         // When the screen is turned off and turned back on, the SurfaceTexture is already
         // available, and "onSurfaceTextureAvailable" will not be called. In that case, we can open
@@ -388,23 +594,37 @@ public class Camera2Helper {
         }
     }
 
+    @Override
     public synchronized void stop() {
-        if (mCameraDevice == null) {
+        //切换摄像头的过程中mCameraDevice可能暂时为null，以相机线程判断是否已启动
+        if (mBackgroundThread == null) {
             return;
         }
         closeCamera();
         stopBackgroundThread();
+        // 相机线程已结束，归还暂缓分发的帧
+        captureResults.clearPending();
+        isSwitchCamera.set(false);
+    }
+
+    /**
+     * 获取因帧池耗尽而丢弃的帧数，消费者持有帧过久时该值会增长
+     *
+     * @return 丢弃的帧数
+     */
+    @Override
+    public long getDroppedFrameCount() {
+        FramePool pool = framePool;
+        return pool == null ? 0 : pool.getDroppedCount();
     }
 
     public void release() {
         stop();
         mTextureView = null;
         camera2Listener = null;
+        bufferListener = null;
+        frameListener = null;
         context = null;
-        if (handler != null) {
-            handler.removeMessages(START_CAMERA);
-            handler = null;
-        }
     }
 
     /**
@@ -419,7 +639,7 @@ public class Camera2Helper {
                 return;
             }
             //获取可用摄像头列表
-            for (String cameraId : cameraManager.getCameraIdList()) {
+            for (String cameraId : CameraInfoCache.getInstance().getCameraIdList(cameraManager)) {
                 if (configCameraParams(cameraManager, cameraId)) {
                     return;
                 }
@@ -447,46 +667,97 @@ public class Camera2Helper {
     private boolean configCameraParams(CameraManager manager, String cameraId) throws CameraAccessException {
         //CameraCharacteristics：摄像头特性。
         //通过CameraManager的getCameraCharacteristics(cameraId)来获取，用于描述特定摄像头所支持的各种特性。
-        CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
-
-        //通过 CameraCharacteristics 类获取相机设备的特性，包括硬件等级的支持等级.
-        //LEVEL_3 > FULL > LIMIT > LEGACY
-        //
-        //对于大多数的手机而言，都会支持到 FULL 或 LIMIT。
-        // 当支持到 FULL 等级的相机设备，将拥有比旧 API 强大的新特性，
-        // 如 30fps 全高清连拍，帧之间的手动设置，RAW 格式的图片拍摄，快门零延迟以及视频速拍等，否则和旧 API 功能差别不大。
-        int hardwareLevel = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-
-        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        if (map == null) {
+        //特性和排好序的预览尺寸由CameraInfoCache缓存，切换摄像头时不再重复查询和排序
+        CameraInfo cameraInfo = CameraInfoCache.getInstance().get(manager, cameraId);
+        if (cameraInfo == null) {
             return false;
         }
-        mPreviewSize = getBestSupportedSize(new ArrayList<Size>(Arrays.asList(map.getOutputSizes(SurfaceTexture.class))));
-        mImageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(),
-                ImageFormat.YUV_420_888, 2);
-
-        mImageReader.setOnImageAvailableListener(new OnImageAvailableListenerImpl(), mBackgroundHandler);
+        mPreviewSize = getBestSupportedSize(cameraInfo);
+        // 分析流的尺寸独立于显示尺寸选择，检测只需要较低的分辨率
+        Size analysisSize = analysisTargetSize == null ? mPreviewSize
+                : cameraInfo.getBestAnalysisSize(analysisTargetSize, mPreviewSize);
+        //切换摄像头时尺寸不变则复用ImageReader
+        if (mImageReader == null || mImageReader.getWidth() != analysisSize.getWidth()
+                || mImageReader.getHeight() != analysisSize.getHeight()) {
+            if (mImageReader != null) {
+                mImageReader.close();
+            }
+            mImageReader = ImageReader.newInstance(analysisSize.getWidth(), analysisSize.getHeight(),
+                    ImageFormat.YUV_420_888, maxImages);
+            mImageReader.setOnImageAvailableListener(imageAvailableListener, mBackgroundHandler);
+        }
+        if (framePool == null || !framePool.matches(analysisSize.getWidth(), analysisSize.getHeight(), analysisFormat)) {
+            framePool = new FramePool(framePoolSize, analysisSize.getWidth(), analysisSize.getHeight(), analysisFormat);
+        }
+        mAnalysisSize = analysisSize;
+        mAeFpsRange = targetFps > 0 ? cameraInfo.getBestFpsRange(targetFps) : null;
 
-        mSensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        mSensorOrientation = cameraInfo.getSensorOrientation();
+        mCameraInfo = cameraInfo;
         mCameraId = cameraId;
+        timestampRealtime = cameraInfo.isTimestampRealtime();
         return true;
     }
 
-    private void openCamera() {
+    /**
+     * 打开摄像头
+     *
+     * @return 是否已发起打开
+     */
+    private boolean openCamera() {
         //CameraManager：摄像头管理器。专门用于检测系统摄像头、打开系统摄像头。
         CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
         //设定摄像头参数
         setUpCameraOutputs(cameraManager);
-        configureTransform(mTextureView.getWidth(), mTextureView.getHeight());
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            configureTransform(mTextureView.getWidth(), mTextureView.getHeight());
+        } else {
+            //切换摄像头时在相机线程中执行，view的变换需要在主线程中设置
+            final TextureView textureView = mTextureView;
+            textureView.post(new Runnable() {
+                @Override
+                public void run() {
+                    configureTransform(textureView.getWidth(), textureView.getHeight());
+                }
+            });
+        }
         try {
             if (!mCameraOpenCloseLock.tryAcquire(2500, TimeUnit.MILLISECONDS)) {
                 throw new RuntimeException("Time out waiting to lock camera opening.");
             }
             cameraManager.openCamera(mCameraId, mDeviceStateCallback, mBackgroundHandler);
+            return true;
         } catch (CameraAccessException | InterruptedException e) {
             if (camera2Listener != null) {
                 camera2Listener.onCameraError(e);
             }
+            return false;
+        }
+    }
+
+    /**
+     * 只关闭CaptureSession和CameraDevice，保留ImageReader和相机线程
+     */
+    private void closeCameraDevice() {
+        try {
+            mCameraOpenCloseLock.acquire();
+            if (null != mCaptureSession) {
+                mCaptureSession.close();
+                mCaptureSession = null;
+            }
+            if (null != mCameraDevice) {
+                mCameraDevice.close();
+                mCameraDevice = null;
+            }
+            if (camera2Listener != null) {
+                camera2Listener.onCameraClosed();
+            }
+        } catch (InterruptedException e) {
+            if (camera2Listener != null) {
+                camera2Listener.onCameraError(e);
+            }
+        } finally {
+            mCameraOpenCloseLock.release();
         }
     }
 
@@ -557,22 +828,10 @@ public class Camera2Helper {
 
             // This is the output Surface we need to start preview.
             Surface surface = new Surface(texture);
+            mPreviewSurface = surface;
 
             // We set up a CaptureRequest.Builder with the output Surface.
-            //使用指定模板创建一个 CaptureRequest.Builder 用于新的捕获请求构建。
-            //CaptureRequest.Builder createCaptureRequest(int templateType)参数讲解
-            //CameraDevice.TEMPLATE_PREVIEWTEMPLATE_PREVIEW:用于创建一个相机预览请求。相机会优先保证高帧率而不是高画质
-            mPreviewRequestBuilder
-                    = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-
-            // 设置连续自动对焦
-            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                    CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-
-            //设置预览输出的 Surface
-            mPreviewRequestBuilder.addTarget(surface);
-            // mImageReader.getSurface() 是用于拍照输出的 Surface
-            mPreviewRequestBuilder.addTarget(mImageReader.getSurface());
+            mPreviewRequestBuilder = createPreviewRequestBuilder(surface);
             // 生成一个预览的请求
             final CaptureRequest captureRequest = mPreviewRequestBuilder.build();
             // Here, we create a CameraCaptureSession for camera preview.
@@ -596,9 +855,12 @@ public class Camera2Helper {
 
                             // When the session is ready, we start displaying the preview.
                             mCaptureSession = cameraCaptureSession;
+                            if (switchStartNanos != 0) {
+                                awaitingSwitchFrame = true;
+                            }
                             try {
                                 // 开始预览，即设置反复请求
-                                mCaptureSession.setRepeatingRequest(captureRequest, null, mBackgroundHandler);
+                                mCaptureSession.setRepeatingRequest(captureRequest, captureCallback, mBackgroundHandler);
                             } catch (CameraAccessException e) {
                                 e.printStackTrace();
                             }
@@ -619,6 +881,148 @@ public class Camera2Helper {
         }
     }
 
+    /**
+     * 创建预览请求，设置当前拍摄配置对应的参数和两个输出Surface
+     */
+    private CaptureRequest.Builder createPreviewRequestBuilder(Surface previewSurface) throws CameraAccessException {
+        //使用指定模板创建一个 CaptureRequest.Builder 用于新的捕获请求构建。
+        //CaptureRequest.Builder createCaptureRequest(int templateType)参数讲解
+        //CameraDevice.TEMPLATE_PREVIEWTEMPLATE_PREVIEW:用于创建一个相机预览请求。相机会优先保证高帧率而不是高画质
+        CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+
+        // 设置连续自动对焦
+        builder.set(CaptureRequest.CONTROL_AF_MODE,
+                CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+
+        applyCaptureProfile(builder, captureProfile);
+
+        //设置预览输出的 Surface
+        builder.addTarget(previewSurface);
+        // mImageReader.getSurface() 是用于分析的 Surface，尺寸可以与显示的Surface不同
+        builder.addTarget(mImageReader.getSurface());
+        return builder;
+    }
+
+    /**
+     * 按拍摄配置设置帧率范围和后处理模式，摄像头不支持的模式不设置
+     */
+    private void applyCaptureProfile(CaptureRequest.Builder builder, int profile) {
+        CameraInfo info = mCameraInfo;
+        // 按目标帧率固定自动曝光的帧率范围，避免暗光下降帧
+        Range<Integer> fpsRange = mAeFpsRange;
+        int noiseReduction;
+        int edge;
+        int hotPixel;
+        int tonemap;
+        int stabilization;
+        switch (profile) {
+            case PROFILE_LOW_LATENCY:
+                if (fpsRange == null) {
+                    fpsRange = info.getBestFpsRange(Float.MAX_VALUE);
+                }
+                noiseReduction = CameraInfo.selectMode(info.getNoiseReductionModes(),
+                        CaptureRequest.NOISE_REDUCTION_MODE_OFF, CaptureRequest.NOISE_REDUCTION_MODE_FAST);
+                edge = CameraInfo.selectMode(info.getEdgeModes(),
+                        CaptureRequest.EDGE_MODE_OFF, CaptureRequest.EDGE_MODE_FAST);
+                hotPixel = CameraInfo.selectMode(info.getHotPixelModes(), CaptureRequest.HOT_PIXEL_MODE_FAST);
+                tonemap = CameraInfo.selectMode(info.getTonemapModes(), CaptureRequest.TONEMAP_MODE_FAST);
+                stabilization = CameraInfo.selectMode(info.getVideoStabilizationModes(),
+                        CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE_OFF);
+                break;
+            case PROFILE_POWER_SAVER:
+                fpsRange = info.getBestFpsRange(POWER_SAVER_FPS);
+                noiseReduction = CameraInfo.selectMode(info.getNoiseReductionModes(),
+                        CaptureRequest.NOISE_REDUCTION_MODE_OFF, CaptureRequest.NOISE_REDUCTION_MODE_FAST);
+                edge = CameraInfo.selectMode(info.getEdgeModes(),
+                        CaptureRequest.EDGE_MODE_OFF, CaptureRequest.EDGE_MODE_FAST);
+                hotPixel = CameraInfo.selectMode(info.getHotPixelModes(),
+                        CaptureRequest.HOT_PIXEL_MODE_OFF, CaptureRequest.HOT_PIXEL_MODE_FAST);
+                tonemap = CameraInfo.selectMode(info.getTonemapModes(), CaptureRequest.TONEMAP_MODE_FAST);
+                stabilization = CameraInfo.selectMode(info.getVideoStabilizationModes(),
+                        CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE_OFF);
+                break;
+            case PROFILE_MAX_QUALITY:
+                noiseReduction = CameraInfo.selectMode(info.getNoiseReductionModes(),
+                        CaptureRequest.NOISE_REDUCTION_MODE_HIGH_QUALITY, CaptureRequest.NOISE_REDUCTION_MODE_FAST);
+                edge = CameraInfo.selectMode(info.getEdgeModes(),
+                        CaptureRequest.EDGE_MODE_HIGH_QUALITY, CaptureRequest.EDGE_MODE_FAST);
+                hotPixel = CameraInfo.selectMode(info.getHotPixelModes(),
+                        CaptureRequest.HOT_PIXEL_MODE_HIGH_QUALITY, CaptureRequest.HOT_PIXEL_MODE_FAST);
+                tonemap = CameraInfo.selectMode(info.getTonemapModes(),
+                        CaptureRequest.TONEMAP_MODE_HIGH_QUALITY, CaptureRequest.TONEMAP_MODE_FAST);
+                stabilization = CameraInfo.selectMode(info.getVideoStabilizationModes(),
+                        CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE_ON);
+                break;
+            default:
+                noiseReduction = edge = hotPixel = tonemap = stabilization = -1;
+                break;
+        }
+        if (fpsRange != null) {
+            builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+        }
+        if (noiseReduction >= 0) {
+            builder.set(CaptureRequest.NOISE_REDUCTION_MODE, noiseReduction);
+        }
+        if (edge >= 0) {
+            builder.set(CaptureRequest.EDGE_MODE, edge);
+        }
+        if (hotPixel >= 0) {
+            builder.set(CaptureRequest.HOT_PIXEL_MODE, hotPixel);
+        }
+        if (tonemap >= 0) {
+            builder.set(CaptureRequest.TONEMAP_MODE, tonemap);
+        }
+        if (stabilization >= 0) {
+            builder.set(CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE, stabilization);
+        }
+    }
+
+    /**
+     * 切换拍摄配置，在相机线程中只重建并重新提交反复请求，不重新创建CaptureSession，预览不会中断。
+     * 相机未打开时在下次打开时生效
+     *
+     * @param profile {@link #PROFILE_DEFAULT}、{@link #PROFILE_LOW_LATENCY}、{@link #PROFILE_POWER_SAVER}
+     *                或{@link #PROFILE_MAX_QUALITY}
+     */
+    public void setCaptureProfile(int profile) {
+        checkCaptureProfile(profile);
+        captureProfile = profile;
+        Handler handler = mBackgroundHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                updateRepeatingRequest();
+            }
+        });
+    }
+
+    public int getCaptureProfile() {
+        return captureProfile;
+    }
+
+    private static void checkCaptureProfile(int profile) {
+        if (profile != PROFILE_DEFAULT && profile != PROFILE_LOW_LATENCY
+                && profile != PROFILE_POWER_SAVER && profile != PROFILE_MAX_QUALITY) {
+            throw new IllegalArgumentException("unknown capture profile " + profile);
+        }
+    }
+
+    private void updateRepeatingRequest() {
+        if (mCameraDevice == null || mCaptureSession == null || mPreviewSurface == null) {
+            return;
+        }
+        try {
+            mPreviewRequestBuilder = createPreviewRequestBuilder(mPreviewSurface);
+            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), captureCallback, mBackgroundHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            // 会话可能已在切换或关闭摄像头时失效，新的会话会使用当前配置
+            Log.w(TAG, "updateRepeatingRequest: ", e);
+        }
+    }
+
     /**
      * 将必要的{@link Matrix}转换配置为`mTextureView`
      * 在setUpCameraOutputs中确定了摄像机预览大小并且固定了mTextureView大小之后，应调用此方法。
@@ -688,10 +1092,54 @@ public class Camera2Helper {
          * 最小分辨率
          */
         private Point minPreviewSize;
+        /**
+         * 拍摄配置，默认为{@link #PROFILE_DEFAULT}
+         */
+        private int captureProfile = PROFILE_DEFAULT;
+        /**
+         * 目标帧率
+         */
+        private float targetFps;
+        /**
+         * 像素吞吐预算
+         */
+        private long pixelBudget;
+        /**
+         * 分析流的目标尺寸
+         */
+        private Point analysisSize;
+        /**
+         * 分析帧的格式
+         */
+        private int analysisFormat = ImageUtil.FORMAT_NV21;
         /**
          * 上下文，用于获取CameraManager
          */
         private Context context;
+        /**
+         * 帧池大小，即同时可被消费者持有的最大帧数
+         */
+        private int framePoolSize = 3;
+        /**
+         * 原始平面回调
+         */
+        private Camera2BufferListener bufferListener;
+        /**
+         * 是否拷贝预览数据并回调onPreview，只使用原始平面回调时可关闭以省去拷贝
+         */
+        private boolean frameCopyEnabled = true;
+        /**
+         * 各阶段耗时统计
+         */
+        private PipelineMetrics pipelineMetrics;
+        /**
+         * 取帧模式，默认延迟优先
+         */
+        private int acquireMode = ACQUIRE_MODE_LATEST;
+        /**
+         * ImageReader的maxImages，0表示使用取帧模式的默认值
+         */
+        private int maxImages;
 
         public Builder() {
         }
@@ -723,6 +1171,52 @@ public class Camera2Helper {
             return this;
         }
 
+        /**
+         * 目标帧率，设置后在最大和最小尺寸范围内选择预览流和分析流都能维持该帧率的最大预览尺寸，
+         * 并将自动曝光的帧率范围设置为能达到该帧率的最窄范围；设置了{@link #previewSize(Point)}时只设置帧率范围
+         */
+        public Builder targetFps(float val) {
+            targetFps = val;
+            return this;
+        }
+
+        /**
+         * @param val {@link #PROFILE_DEFAULT}、{@link #PROFILE_LOW_LATENCY}、{@link #PROFILE_POWER_SAVER}
+         *            或{@link #PROFILE_MAX_QUALITY}，运行时可通过{@link Camera2Helper#setCaptureProfile(int)}切换
+         */
+        public Builder captureProfile(int val) {
+            captureProfile = val;
+            return this;
+        }
+
+        /**
+         * 分析流每秒最多处理的像素数，与{@link #targetFps(float)}一起使用，
+         * 对应的分析流宽 * 高 * 帧率超过预算的预览尺寸不会被选择，默认不限制
+         */
+        public Builder pixelBudget(long val) {
+            pixelBudget = val;
+            return this;
+        }
+
+        /**
+         * 分析流的目标尺寸，会从摄像头支持的YUV输出尺寸中选择宽高比与预览一致、且不小于该尺寸的最小尺寸，
+         * 不设置时分析流与预览尺寸相同
+         */
+        public Builder analysisSize(Point val) {
+            analysisSize = val;
+            return this;
+        }
+
+        /**
+         * 分析帧的格式，取值为{@link ImageUtil#FORMAT_NV21}、{@link ImageUtil#FORMAT_NV12}、
+         * {@link ImageUtil#FORMAT_I420}、{@link ImageUtil#FORMAT_YV12}或{@link ImageUtil#FORMAT_GRAY}，默认为NV21。
+         * 灰度帧只能缩放和裁剪为灰度帧，不能转换为RGB
+         */
+        public Builder analysisFormat(int val) {
+            analysisFormat = val;
+            return this;
+        }
+
         public Builder previewViewSize(Point val) {
             previewViewSize = val;
             return this;
@@ -749,6 +1243,39 @@ public class Camera2Helper {
             return this;
         }
 
+        public Builder framePoolSize(int val) {
+            framePoolSize = val;
+            return this;
+        }
+
+        public Builder bufferListener(Camera2BufferListener val) {
+            bufferListener = val;
+            return this;
+        }
+
+        public Builder frameCopyEnabled(boolean val) {
+            frameCopyEnabled = val;
+            return this;
+        }
+
+        public Builder pipelineMetrics(PipelineMetrics val) {
+            pipelineMetrics = val;
+            return this;
+        }
+
+        /**
+         * @param val {@link #ACQUIRE_MODE_LATEST}或{@link #ACQUIRE_MODE_SEQUENTIAL}
+         */
+        public Builder acquireMode(int val) {
+            acquireMode = val;
+            return this;
+        }
+
+        public Builder maxImages(int val) {
+            maxImages = val;
+            return this;
+        }
+
         public Camera2Helper build() {
             if (previewViewSize == null) {
                 Log.e(TAG, "previewViewSize is null, now use default previewSize");
@@ -759,44 +1286,162 @@ public class Camera2Helper {
             if (previewDisplayView == null) {
                 throw new NullPointerException("you must preview on a textureView or a surfaceView");
             }
+            if (framePoolSize <= 0) {
+                throw new IllegalArgumentException("framePoolSize must be positive");
+            }
+            if (acquireMode != ACQUIRE_MODE_LATEST && acquireMode != ACQUIRE_MODE_SEQUENTIAL) {
+                throw new IllegalArgumentException("unknown acquireMode " + acquireMode);
+            }
+            if (maxImages < 0 || (acquireMode == ACQUIRE_MODE_LATEST && maxImages == 1)) {
+                throw new IllegalArgumentException("maxImages must be at least 2 for ACQUIRE_MODE_LATEST, now " + maxImages);
+            }
             if (maxPreviewSize != null && minPreviewSize != null) {
                 if (maxPreviewSize.x < minPreviewSize.x || maxPreviewSize.y < minPreviewSize.y) {
                     throw new IllegalArgumentException("maxPreviewSize must greater than minPreviewSize");
                 }
             }
+            checkCaptureProfile(captureProfile);
+            if (targetFps < 0 || pixelBudget < 0) {
+                throw new IllegalArgumentException("targetFps and pixelBudget must not be negative");
+            }
+            if (analysisSize != null && (analysisSize.x <= 0 || analysisSize.y <= 0)) {
+                throw new IllegalArgumentException("invalid analysisSize " + analysisSize.x + "x" + analysisSize.y);
+            }
+            if (analysisFormat != ImageUtil.FORMAT_NV21 && analysisFormat != ImageUtil.FORMAT_NV12
+                    && analysisFormat != ImageUtil.FORMAT_I420 && analysisFormat != ImageUtil.FORMAT_YV12
+                    && analysisFormat != ImageUtil.FORMAT_GRAY) {
+                throw new IllegalArgumentException("unknown analysisFormat " + analysisFormat);
+            }
             return new Camera2Helper(this);
         }
     }
 
+    private void onFirstFrameAfterSwitch() {
+        awaitingSwitchFrame = false;
+        long latency = System.nanoTime() - switchStartNanos;
+        switchStartNanos = 0;
+        lastSwitchLatencyNanos = latency;
+        PipelineMetrics metrics = pipelineMetrics;
+        if (metrics != null) {
+            metrics.record(PipelineMetrics.STAGE_CAMERA_SWITCH, latency);
+        }
+        Log.i(TAG, "switch to first frame: " + TimeUnit.NANOSECONDS.toMillis(latency) + "ms");
+    }
+
+    /**
+     * 将关联了拍摄结果的帧交给监听者，在相机线程中执行，返回后帧由{@link #captureResults}释放
+     */
+    private void dispatchFrame(YuvFrame frame) {
+        Camera2Listener cameraListener = camera2Listener;
+        if (cameraListener != null) {
+            cameraListener.onPreview(frame);
+        }
+        FrameListener frameListener = this.frameListener;
+        if (frameListener != null) {
+            frameListener.onFrame(frame);
+        }
+    }
+
     private class OnImageAvailableListenerImpl implements ImageReader.OnImageAvailableListener {
-        private byte[] y;
-        private byte[] u;
-        private byte[] v;
-        private ReentrantLock lock = new ReentrantLock();
+        private long sequence;
+        /**
+         * 复用的平面视图，只在回调期间有效
+         */
+        private final YuvPlanes planes = new YuvPlanes();
 
         @Override
         public void onImageAvailable(ImageReader reader) {
-            Image image = reader.acquireNextImage();
-            // Y:U:V == 4:2:2
-            if (camera2Listener != null && image.getFormat() == ImageFormat.YUV_420_888) {
-                Image.Plane[] planes = image.getPlanes();
-                // 加锁确保y、u、v来源于同一个Image
-                lock.lock();
-                // 重复使用同一批byte数组，减少gc频率
-                if (y == null) {
-                    y = new byte[planes[0].getBuffer().limit() - planes[0].getBuffer().position()];
-                    u = new byte[planes[1].getBuffer().limit() - planes[1].getBuffer().position()];
-                    v = new byte[planes[2].getBuffer().limit() - planes[2].getBuffer().position()];
+            PipelineMetrics metrics = pipelineMetrics;
+            long start = metrics == null ? 0 : System.nanoTime();
+            Image image = acquireMode == ACQUIRE_MODE_LATEST ? acquireLatestImage(reader) : reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                onImage(image, metrics, start);
+            } finally {
+                // 处理中抛出异常时也要归还Image，否则ImageReader很快会被占满
+                image.close();
+            }
+        }
+
+        private void onImage(Image image, PipelineMetrics metrics, long start) {
+            deliveredImageCount.incrementAndGet();
+            if (metrics != null) {
+                metrics.recordSince(PipelineMetrics.STAGE_ACQUIRE, start);
+            }
+            if (awaitingSwitchFrame) {
+                onFirstFrameAfterSwitch();
+            }
+            if (image.getFormat() == ImageFormat.YUV_420_888) {
+                Image.Plane[] imagePlanes = image.getPlanes();
+                Camera2BufferListener bufferListener = Camera2Helper.this.bufferListener;
+                if (bufferListener != null) {
+                    planes.set(imagePlanes[0].getBuffer(), imagePlanes[0].getRowStride(),
+                            imagePlanes[1].getBuffer(), imagePlanes[2].getBuffer(), imagePlanes[1].getRowStride(), imagePlanes[1].getPixelStride(),
+                            image.getWidth(), image.getHeight(), image.getTimestamp());
+                    try {
+                        bufferListener.onPreviewBuffer(planes);
+                    } finally {
+                        planes.clear();
+                    }
+                }
+                FramePool pool = framePool;
+                Camera2Listener cameraListener = camera2Listener;
+                FrameListener frameListener = Camera2Helper.this.frameListener;
+                if (frameCopyEnabled && (cameraListener != null || frameListener != null) && pool != null) {
+                    // 池耗尽时丢弃该帧，由帧池记录丢帧数，不额外分配内存
+                    YuvFrame frame = pool.acquire();
+                    if (frame != null) {
+                        long copyStart = metrics == null ? 0 : System.nanoTime();
+                        ImageUtil.yuv420888ToYuv420(imagePlanes[0].getBuffer(), imagePlanes[0].getRowStride(),
+                                imagePlanes[1].getBuffer(), imagePlanes[2].getBuffer(), imagePlanes[1].getRowStride(), imagePlanes[1].getPixelStride(),
+                                frame.getWidth(), frame.getHeight(), frame.getData(), frame.getFormat());
+                        if (metrics != null) {
+                            metrics.recordSince(PipelineMetrics.STAGE_PLANE_COPY, copyStart);
+                        }
+                        frame.setFrameInfo(image.getTimestamp(), sequence);
+                        // 拍摄结果晚于图像到达时暂缓分发，最多等待一个帧间隔；帧池只有一帧时不等待
+                        long frameDuration = captureResults.getLastFrameDuration();
+                        long maxWait = framePoolSize <= 1 ? 0
+                                : (frameDuration > 0 ? frameDuration : CAPTURE_RESULT_DEFAULT_WAIT_NANOS);
+                        if (captureResults.deliver(frame, System.nanoTime(), maxWait)) {
+                            Handler handler = mBackgroundHandler;
+                            if (handler != null) {
+                                handler.removeCallbacks(flushCaptureResultsRunnable);
+                                handler.postDelayed(flushCaptureResultsRunnable, TimeUnit.NANOSECONDS.toMillis(maxWait) + 1);
+                            }
+                        }
+                    }
+                }
+                sequence++;
+            }
+        }
+
+        /**
+         * 与{@link ImageReader#acquireLatestImage()}相同，取出队列中所有的帧，只保留最新一帧，
+         * 同时记录被跳过的帧数
+         */
+        private Image acquireLatestImage(ImageReader reader) {
+            Image latest = reader.acquireNextImage();
+            if (latest == null) {
+                return null;
+            }
+            while (true) {
+                Image next;
+                try {
+                    next = reader.acquireNextImage();
+                } catch (IllegalStateException e) {
+                    // 已持有maxImages帧，不能再取，使用当前最新的一帧
+                    return latest;
                 }
-                if (image.getPlanes()[0].getBuffer().remaining() == y.length) {
-                    planes[0].getBuffer().get(y);
-                    planes[1].getBuffer().get(u);
-                    planes[2].getBuffer().get(v);
-                    camera2Listener.onPreview(y, u, v, mPreviewSize, planes[0].getRowStride());
+                if (next == null) {
+                    return latest;
                 }
-                lock.unlock();
+                latest.close();
+                skippedImageCount.incrementAndGet();
+                latest = next;
             }
-            image.close();
         }
     }
 }
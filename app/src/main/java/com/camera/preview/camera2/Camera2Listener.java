@@ -4,6 +4,8 @@ package com.camera.preview.camera2;
 import android.hardware.camera2.CameraDevice;
 import android.util.Size;
 
+import com.camera.preview.pipeline.YuvFrame;
+
 public interface Camera2Listener {
     /**
      * 当打开时执行
@@ -16,15 +18,13 @@ public interface Camera2Listener {
     void onCameraOpened(CameraDevice cameraDevice, String cameraId, Size previewSize, int displayOrientation, boolean isMirror);
 
     /**
-     * 预览数据回调
+     * 预览数据回调，在相机线程中执行。
+     * frame只在回调期间有效，若需要在回调结束后继续使用（如交给其他线程处理），
+     * 需先调用{@link YuvFrame#retain()}，使用完毕后调用{@link YuvFrame#release()}
      *
-     * @param y           预览数据，Y分量
-     * @param u           预览数据，U分量
-     * @param v           预览数据，V分量
-     * @param previewSize 预览尺寸
-     * @param stride      步长
+     * @param frame 分析流的预览帧，数据为紧凑排列的{@link Camera2Helper.Builder#analysisFormat(int)}格式，默认为nv21
      */
-    void onPreview(byte[] y, byte[] u, byte[] v, Size previewSize, int stride);
+    void onPreview(YuvFrame frame);
 
     /**
      * 当相机关闭时执行
@@ -0,0 +1,532 @@
+package com.camera.preview.camera2;
+
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.Range;
+import android.util.Size;
+
+import com.camera.preview.util.SizeSelector;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单个摄像头用到的特性，由{@link CameraInfoCache}创建并缓存。
+ * 预览尺寸在创建时按宽高从大到小排好序，按约束选出的最佳尺寸也会被缓存，
+ * 打开和切换摄像头时不再查询CameraCharacteristics或排序。
+ */
+public class CameraInfo {
+    /**
+     * 判断分析尺寸与预览宽高比一致时允许的误差，兼容1920x1088等对齐后的尺寸
+     */
+    private static final float ANALYSIS_RATIO_TOLERANCE = 0.02f;
+
+    private final String cameraId;
+    private final CameraCharacteristics characteristics;
+    private final StreamConfigurationMap streamConfigurationMap;
+    private final int sensorOrientation;
+    private final int hardwareLevel;
+    private final Integer lensFacing;
+    private final boolean timestampRealtime;
+    /**
+     * 支持的降噪、锐化、坏点校正、色调映射和防抖模式，不支持查询时为空数组
+     */
+    private final int[] noiseReductionModes;
+    private final int[] edgeModes;
+    private final int[] hotPixelModes;
+    private final int[] tonemapModes;
+    private final int[] videoStabilizationModes;
+    /**
+     * 按宽高从大到小排序的预览尺寸
+     */
+    private final Size[] previewSizes;
+    /**
+     * 找不到合适的尺寸时使用的尺寸，即系统返回的第一个尺寸
+     */
+    private final Size defaultPreviewSize;
+    /**
+     * 按宽高从大到小排序的YUV_420_888输出尺寸，用于分析流
+     */
+    private final Size[] analysisSizes;
+    /**
+     * 每个分析尺寸以YUV_420_888输出时的最小帧间隔，单位纳秒，与analysisSizes顺序一致，未知时为0
+     */
+    private final long[] analysisMinFrameDurations;
+    private final Range<Integer>[] fpsRanges;
+    /**
+     * 预览尺寸按宽、高为一组的紧凑数组，与previewSizes顺序一致，供{@link SizeSelector}使用
+     */
+    private final int[] packedPreviewSizes;
+    /**
+     * 每个预览尺寸以SurfaceTexture输出时的最小帧间隔，单位纳秒，未知时为0
+     */
+    private final long[] previewMinFrameDurations;
+    /**
+     * 帧率范围按下限、上限为一组的紧凑数组
+     */
+    private final int[] packedFpsRanges;
+    /**
+     * 约束条件到选择结果的缓存，每种选择使用各自的键
+     */
+    private final ConcurrentHashMap<PreviewQuery, Size> bestPreviewSizes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ThroughputQuery, Size> throughputPreviewSizes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<AnalysisQuery, Size> bestAnalysisSizes = new ConcurrentHashMap<>();
+
+    /**
+     * {@link #getBestPreviewSize(Point, Point, Point, Point)}的约束条件，尺寸为拷贝，可以为null
+     */
+    private static final class PreviewQuery {
+        final Point maxSize;
+        final Point minSize;
+        final Point viewSize;
+        final Point specificSize;
+
+        PreviewQuery(Point maxSize, Point minSize, Point viewSize, Point specificSize) {
+            this.maxSize = copy(maxSize);
+            this.minSize = copy(minSize);
+            this.viewSize = copy(viewSize);
+            this.specificSize = copy(specificSize);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PreviewQuery)) {
+                return false;
+            }
+            PreviewQuery other = (PreviewQuery) o;
+            return Objects.equals(maxSize, other.maxSize) && Objects.equals(minSize, other.minSize)
+                    && Objects.equals(viewSize, other.viewSize) && Objects.equals(specificSize, other.specificSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(maxSize, minSize, viewSize, specificSize);
+        }
+    }
+
+    /**
+     * {@link #getThroughputPreviewSize(Point, Point, Point, Point, float, long)}的约束条件，尺寸为拷贝，可以为null
+     */
+    private static final class ThroughputQuery {
+        final Point maxSize;
+        final Point minSize;
+        final Point viewSize;
+        final Point analysisTargetSize;
+        final float targetFps;
+        final long pixelBudget;
+
+        ThroughputQuery(Point maxSize, Point minSize, Point viewSize, Point analysisTargetSize,
+                        float targetFps, long pixelBudget) {
+            this.maxSize = copy(maxSize);
+            this.minSize = copy(minSize);
+            this.viewSize = copy(viewSize);
+            this.analysisTargetSize = copy(analysisTargetSize);
+            this.targetFps = targetFps;
+            this.pixelBudget = pixelBudget;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ThroughputQuery)) {
+                return false;
+            }
+            ThroughputQuery other = (ThroughputQuery) o;
+            return Float.compare(targetFps, other.targetFps) == 0 && pixelBudget == other.pixelBudget
+                    && Objects.equals(maxSize, other.maxSize) && Objects.equals(minSize, other.minSize)
+                    && Objects.equals(viewSize, other.viewSize)
+                    && Objects.equals(analysisTargetSize, other.analysisTargetSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(maxSize, minSize, viewSize, analysisTargetSize, targetFps, pixelBudget);
+        }
+    }
+
+    /**
+     * {@link #getBestAnalysisSize(Point, Size)}的约束条件
+     */
+    private static final class AnalysisQuery {
+        final Point targetSize;
+        final Size previewSize;
+
+        AnalysisQuery(Point targetSize, Size previewSize) {
+            this.targetSize = copy(targetSize);
+            this.previewSize = previewSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AnalysisQuery)) {
+                return false;
+            }
+            AnalysisQuery other = (AnalysisQuery) o;
+            return targetSize.equals(other.targetSize) && previewSize.equals(other.previewSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return targetSize.hashCode() * 31 + previewSize.hashCode();
+        }
+    }
+
+    /**
+     * Point是可变的，作为缓存的键时需要拷贝
+     */
+    private static Point copy(Point point) {
+        return point == null ? null : new Point(point);
+    }
+
+    private CameraInfo(String cameraId, CameraCharacteristics characteristics, StreamConfigurationMap map) {
+        this.cameraId = cameraId;
+        this.characteristics = characteristics;
+        this.streamConfigurationMap = map;
+        Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        sensorOrientation = orientation == null ? 0 : orientation;
+        //LEVEL_3 > FULL > LIMIT > LEGACY
+        Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+        hardwareLevel = level == null ? CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY : level;
+        lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        timestampRealtime = timestampSource != null
+                && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        noiseReductionModes = getModes(characteristics, CameraCharacteristics.NOISE_REDUCTION_AVAILABLE_NOISE_REDUCTION_MODES);
+        edgeModes = getModes(characteristics, CameraCharacteristics.EDGE_AVAILABLE_EDGE_MODES);
+        hotPixelModes = getModes(characteristics, CameraCharacteristics.HOT_PIXEL_AVAILABLE_HOT_PIXEL_MODES);
+        tonemapModes = getModes(characteristics, CameraCharacteristics.TONEMAP_AVAILABLE_TONE_MAP_MODES);
+        videoStabilizationModes = getModes(characteristics, CameraCharacteristics.CONTROL_AVAILABLE_VIDEO_STABILIZATION_MODES);
+        Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
+        defaultPreviewSize = sizes[0];
+        previewSizes = sizes.clone();
+        Arrays.sort(previewSizes, SIZE_DESCENDING);
+        Size[] yuvSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+        boolean hasYuvSizes = yuvSizes != null && yuvSizes.length > 0;
+        analysisSizes = hasYuvSizes ? yuvSizes.clone() : previewSizes;
+        Arrays.sort(analysisSizes, SIZE_DESCENDING);
+        analysisMinFrameDurations = new long[analysisSizes.length];
+        for (int i = 0; hasYuvSizes && i < analysisSizes.length; i++) {
+            analysisMinFrameDurations[i] = map.getOutputMinFrameDuration(ImageFormat.YUV_420_888, analysisSizes[i]);
+        }
+        packedPreviewSizes = new int[previewSizes.length * 2];
+        previewMinFrameDurations = new long[previewSizes.length];
+        for (int i = 0; i < previewSizes.length; i++) {
+            packedPreviewSizes[2 * i] = previewSizes[i].getWidth();
+            packedPreviewSizes[2 * i + 1] = previewSizes[i].getHeight();
+            previewMinFrameDurations[i] = map.getOutputMinFrameDuration(SurfaceTexture.class, previewSizes[i]);
+        }
+        int rangeCount = fpsRanges == null ? 0 : fpsRanges.length;
+        packedFpsRanges = new int[rangeCount * 2];
+        for (int i = 0; i < rangeCount; i++) {
+            packedFpsRanges[2 * i] = fpsRanges[i].getLower();
+            packedFpsRanges[2 * i + 1] = fpsRanges[i].getUpper();
+        }
+    }
+
+    private static int[] getModes(CameraCharacteristics characteristics, CameraCharacteristics.Key<int[]> key) {
+        int[] modes = characteristics.get(key);
+        return modes == null ? new int[0] : modes;
+    }
+
+    /**
+     * 按宽高从大到小排序
+     */
+    private static final Comparator<Size> SIZE_DESCENDING = new Comparator<Size>() {
+        @Override
+        public int compare(Size o1, Size o2) {
+            if (o1.getWidth() != o2.getWidth()) {
+                return o1.getWidth() > o2.getWidth() ? -1 : 1;
+            }
+            return o1.getHeight() == o2.getHeight() ? 0 : (o1.getHeight() > o2.getHeight() ? -1 : 1);
+        }
+    };
+
+    /**
+     * 由CameraCharacteristics创建
+     *
+     * @return 不支持输出流配置时返回null
+     */
+    static CameraInfo create(String cameraId, CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            return null;
+        }
+        Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
+        if (sizes == null || sizes.length == 0) {
+            return null;
+        }
+        return new CameraInfo(cameraId, characteristics, map);
+    }
+
+    /**
+     * 选择最佳预览尺寸：在最大和最小尺寸范围内，优先选择指定尺寸，否则选择宽高比最接近预览view的尺寸。
+     * 相同约束的结果会被缓存
+     *
+     * @param maxSize       最大尺寸，可为null
+     * @param minSize       最小尺寸，可为null
+     * @param viewSize      预览view的尺寸，可为null
+     * @param specificSize  指定尺寸，可为null
+     * @return 没有满足范围的尺寸时返回null，此时可使用{@link #getDefaultPreviewSize()}
+     */
+    public Size getBestPreviewSize(Point maxSize, Point minSize, Point viewSize, Point specificSize) {
+        PreviewQuery query = new PreviewQuery(maxSize, minSize, viewSize, specificSize);
+        Size best = bestPreviewSizes.get(query);
+        if (best == null) {
+            best = selectPreviewSize(maxSize, minSize, viewSize, specificSize);
+            if (best != null) {
+                bestPreviewSizes.put(query, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按目标帧率选择预览尺寸：在最大和最小尺寸范围内，选择能维持目标帧率、且分析流每秒像素数不超过预算的最大尺寸，
+     * 宽高比与预览view一致的尺寸优先。预览和分析两路流同时输出，每个候选尺寸的最小帧间隔取
+     * SurfaceTexture和分析流所用YUV_420_888尺寸二者中的较大者；分析流尺寸按{@link #getBestAnalysisSize(Point, Size)}
+     * 的规则由候选尺寸决定。相同约束的结果会被缓存
+     *
+     * @param maxSize            最大尺寸，可为null
+     * @param minSize            最小尺寸，可为null
+     * @param viewSize           预览view的尺寸，可为null
+     * @param analysisTargetSize 分析流的目标尺寸，为null时分析流与预览尺寸相同
+     * @param targetFps          目标帧率
+     * @param pixelBudget        分析流每秒最多处理的像素数，0表示不限制
+     * @return 没有能维持目标帧率的尺寸时返回null
+     * @see SizeSelector#selectSize(int[], long[], long[], int, int, int, int, float, float, long)
+     */
+    public Size getThroughputPreviewSize(Point maxSize, Point minSize, Point viewSize, Point analysisTargetSize,
+                                         float targetFps, long pixelBudget) {
+        ThroughputQuery query = new ThroughputQuery(maxSize, minSize, viewSize, analysisTargetSize,
+                targetFps, pixelBudget);
+        Size best = throughputPreviewSizes.get(query);
+        if (best == null) {
+            // 只在约束变化时计算，每个候选尺寸对应的分析流帧间隔和像素数
+            long[] durations = new long[previewSizes.length];
+            long[] analysisPixels = new long[previewSizes.length];
+            for (int i = 0; i < previewSizes.length; i++) {
+                Size analysisSize = analysisTargetSize == null ? previewSizes[i]
+                        : selectAnalysisSize(analysisTargetSize, previewSizes[i]);
+                durations[i] = Math.max(previewMinFrameDurations[i], getAnalysisMinFrameDuration(analysisSize));
+                analysisPixels[i] = (long) analysisSize.getWidth() * analysisSize.getHeight();
+            }
+            int index = SizeSelector.selectSize(packedPreviewSizes, durations, analysisPixels,
+                    minSize == null ? 0 : minSize.x, minSize == null ? 0 : minSize.y,
+                    maxSize == null ? 0 : maxSize.x, maxSize == null ? 0 : maxSize.y,
+                    viewSize == null ? 0 : SizeSelector.longSideRatio(viewSize.x, viewSize.y), targetFps, pixelBudget);
+            if (index >= 0) {
+                best = previewSizes[index];
+                throughputPreviewSizes.put(query, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 分析尺寸以YUV_420_888输出时的最小帧间隔，不是YUV_420_888输出尺寸时返回0
+     */
+    private long getAnalysisMinFrameDuration(Size size) {
+        for (int i = 0; i < analysisSizes.length; i++) {
+            if (analysisSizes[i].equals(size)) {
+                return analysisMinFrameDurations[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 选择自动曝光的目标帧率范围
+     *
+     * @param targetFps 目标帧率
+     * @return 摄像头没有提供帧率范围时返回null
+     * @see SizeSelector#selectFpsRange(int[], float)
+     */
+    public Range<Integer> getBestFpsRange(float targetFps) {
+        int index = SizeSelector.selectFpsRange(packedFpsRanges, targetFps);
+        return index < 0 ? null : fpsRanges[index];
+    }
+
+    /**
+     * 选择分析流的尺寸：不大于预览尺寸，优先选择宽高比与预览一致的尺寸，
+     * 其中宽高都不小于目标尺寸的最小者，没有时选择最大者。相同约束的结果会被缓存
+     *
+     * @param targetSize  分析需要的最小尺寸
+     * @param previewSize 当前的预览尺寸
+     * @return 不会为null，没有更合适的尺寸时返回previewSize
+     */
+    public Size getBestAnalysisSize(Point targetSize, Size previewSize) {
+        AnalysisQuery query = new AnalysisQuery(targetSize, previewSize);
+        Size best = bestAnalysisSizes.get(query);
+        if (best == null) {
+            best = selectAnalysisSize(targetSize, previewSize);
+            bestAnalysisSizes.put(query, best);
+        }
+        return best;
+    }
+
+    private Size selectAnalysisSize(Point targetSize, Size previewSize) {
+        Size best = null;
+        boolean bestMatchesRatio = false;
+        float previewRatio = (float) previewSize.getWidth() / previewSize.getHeight();
+        // 按宽高从大到小遍历，满足条件的尺寸中越靠后越小
+        for (Size s : analysisSizes) {
+            if (s.getWidth() > previewSize.getWidth() || s.getHeight() > previewSize.getHeight()) {
+                continue;
+            }
+            // 宽高比一致时分析帧与预览画面的视野相同，检测结果可以直接映射到预览上
+            boolean matchesRatio = Math.abs((float) s.getWidth() / s.getHeight() - previewRatio) < ANALYSIS_RATIO_TOLERANCE;
+            boolean covers = s.getWidth() >= targetSize.x && s.getHeight() >= targetSize.y;
+            if (best == null || (matchesRatio && !bestMatchesRatio)
+                    || (matchesRatio == bestMatchesRatio && covers)) {
+                best = s;
+                bestMatchesRatio = matchesRatio;
+            }
+        }
+        return best == null ? previewSize : best;
+    }
+
+    private Size selectPreviewSize(Point maxSize, Point minSize, Point viewSize, Point specificSize) {
+        Size bestSize = null;
+        float previewViewRatio = 0;
+        for (Size s : previewSizes) {
+            if (maxSize != null && (s.getWidth() > maxSize.x || s.getHeight() > maxSize.y)) {
+                continue;
+            }
+            if (minSize != null && (s.getWidth() < minSize.x || s.getHeight() < minSize.y)) {
+                continue;
+            }
+            if (bestSize == null) {
+                // 第一个满足范围的尺寸，即最大的尺寸
+                bestSize = s;
+                if (viewSize != null) {
+                    previewViewRatio = (float) viewSize.x / (float) viewSize.y;
+                } else {
+                    previewViewRatio = (float) s.getWidth() / (float) s.getHeight();
+                }
+                if (previewViewRatio > 1) {
+                    previewViewRatio = 1 / previewViewRatio;
+                }
+            }
+            if (specificSize != null && specificSize.x == s.getWidth() && specificSize.y == s.getHeight()) {
+                return s;
+            }
+            if (Math.abs((s.getHeight() / (float) s.getWidth()) - previewViewRatio) < Math.abs(bestSize.getHeight() / (float) bestSize.getWidth() - previewViewRatio)) {
+                bestSize = s;
+            }
+        }
+        return bestSize;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public CameraCharacteristics getCharacteristics() {
+        return characteristics;
+    }
+
+    public StreamConfigurationMap getStreamConfigurationMap() {
+        return streamConfigurationMap;
+    }
+
+    public int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    /**
+     * 硬件支持等级，取值为{@link CameraCharacteristics#INFO_SUPPORTED_HARDWARE_LEVEL_FULL}等
+     */
+    public int getHardwareLevel() {
+        return hardwareLevel;
+    }
+
+    /**
+     * 镜头朝向，取值为{@link CameraCharacteristics#LENS_FACING_FRONT}等，未知时为null
+     */
+    public Integer getLensFacing() {
+        return lensFacing;
+    }
+
+    /**
+     * 传感器时间戳是否与{@link android.os.SystemClock#elapsedRealtimeNanos()}同一时基
+     */
+    public boolean isTimestampRealtime() {
+        return timestampRealtime;
+    }
+
+    /**
+     * 从候选模式中选出第一个支持的模式
+     *
+     * @param available  支持的模式，如{@link #getNoiseReductionModes()}
+     * @param candidates 按优先级排列的候选模式
+     * @return 都不支持时返回-1
+     */
+    public static int selectMode(int[] available, int... candidates) {
+        for (int candidate : candidates) {
+            for (int mode : available) {
+                if (mode == candidate) {
+                    return candidate;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 支持的降噪模式，不要修改
+     */
+    public int[] getNoiseReductionModes() {
+        return noiseReductionModes;
+    }
+
+    /**
+     * 支持的锐化模式，不要修改
+     */
+    public int[] getEdgeModes() {
+        return edgeModes;
+    }
+
+    /**
+     * 支持的坏点校正模式，不要修改
+     */
+    public int[] getHotPixelModes() {
+        return hotPixelModes;
+    }
+
+    /**
+     * 支持的色调映射模式，不要修改
+     */
+    public int[] getTonemapModes() {
+        return tonemapModes;
+    }
+
+    /**
+     * 支持的视频防抖模式，不要修改
+     */
+    public int[] getVideoStabilizationModes() {
+        return videoStabilizationModes;
+    }
+
+    /**
+     * 按宽高从大到小排序的预览尺寸，不要修改
+     */
+    public Size[] getPreviewSizes() {
+        return previewSizes;
+    }
+
+    public Size getDefaultPreviewSize() {
+        return defaultPreviewSize;
+    }
+
+    /**
+     * 自动曝光支持的目标帧率范围，可能为null
+     */
+    public Range<Integer>[] getFpsRanges() {
+        return fpsRanges;
+    }
+}
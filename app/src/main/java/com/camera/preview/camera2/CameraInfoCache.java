@@ -0,0 +1,93 @@
+package com.camera.preview.camera2;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 进程内共享的摄像头特性缓存，按cameraId缓存{@link CameraInfo}。
+ * 调用{@link #prefetch(Context)}在后台线程中一次性读取所有摄像头，
+ * 之后打开和切换摄像头时直接使用缓存；尚未读取完时{@link #get(CameraManager, String)}会同步读取单个摄像头。
+ */
+public class CameraInfoCache {
+    private static final String TAG = "CameraInfoCache";
+
+    private static final CameraInfoCache INSTANCE = new CameraInfoCache();
+
+    private final ConcurrentHashMap<String, CameraInfo> cameraInfos = new ConcurrentHashMap<>();
+    /**
+     * 不支持输出流配置的cameraId，避免重复查询
+     */
+    private final ConcurrentHashMap<String, Boolean> unsupportedIds = new ConcurrentHashMap<>();
+    private final AtomicBoolean prefetchStarted = new AtomicBoolean(false);
+    private volatile String[] cameraIds;
+
+    private CameraInfoCache() {
+    }
+
+    public static CameraInfoCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 在后台线程中读取所有摄像头的特性，只会执行一次
+     *
+     * @param context 上下文，用于获取CameraManager
+     */
+    public void prefetch(Context context) {
+        if (!prefetchStarted.compareAndSet(false, true)) {
+            return;
+        }
+        final CameraManager cameraManager = (CameraManager) context.getApplicationContext().getSystemService(Context.CAMERA_SERVICE);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (String cameraId : getCameraIdList(cameraManager)) {
+                        get(cameraManager, cameraId);
+                    }
+                } catch (CameraAccessException e) {
+                    Log.e(TAG, "prefetch failed", e);
+                    prefetchStarted.set(false);
+                }
+            }
+        }, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * 获取摄像头的特性，未缓存时同步读取
+     *
+     * @return 不支持输出流配置时返回null
+     */
+    public CameraInfo get(CameraManager cameraManager, String cameraId) throws CameraAccessException {
+        CameraInfo info = cameraInfos.get(cameraId);
+        if (info != null || unsupportedIds.containsKey(cameraId)) {
+            return info;
+        }
+        info = CameraInfo.create(cameraId, cameraManager.getCameraCharacteristics(cameraId));
+        if (info == null) {
+            unsupportedIds.put(cameraId, Boolean.TRUE);
+            return null;
+        }
+        CameraInfo previous = cameraInfos.putIfAbsent(cameraId, info);
+        return previous != null ? previous : info;
+    }
+
+    /**
+     * 获取摄像头列表，只查询一次
+     */
+    public String[] getCameraIdList(CameraManager cameraManager) throws CameraAccessException {
+        String[] ids = cameraIds;
+        if (ids == null) {
+            ids = cameraManager.getCameraIdList();
+            cameraIds = ids;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,159 @@
+package com.camera.preview.pipeline;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 在独立线程中按固定帧率产生帧的帧源，帧来自帧池，子类只需填充数据。
+ * 帧率为0时不等待，尽可能快地产生帧。
+ * 也可以不调用{@link #start()}，直接在调用线程中通过{@link #produceFrame()}逐帧驱动，便于基准测试。
+ */
+public abstract class AbstractFrameSource implements FrameSource {
+    private final FramePool framePool;
+    private final long frameIntervalNanos;
+    private volatile FrameListener frameListener;
+    private volatile boolean running;
+    private Thread thread;
+    private long sequence;
+
+    /**
+     * @param width     帧宽度
+     * @param height    帧高度
+     * @param format    帧格式，取值为{@link com.camera.preview.util.ImageUtil#FORMAT_NV21}等
+     * @param fps       帧率，0表示尽可能快
+     * @param poolSize  帧池大小，即同时可被消费者持有的最大帧数
+     */
+    protected AbstractFrameSource(int width, int height, int format, float fps, int poolSize) {
+        if (fps < 0) {
+            throw new IllegalArgumentException("fps must not be negative");
+        }
+        framePool = new FramePool(poolSize, width, height, format);
+        frameIntervalNanos = fps == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+    }
+
+    /**
+     * 填充一帧数据
+     *
+     * @param frame    待填充的帧，尺寸和格式与构造时一致
+     * @param sequence 帧序号
+     * @return 是否填充成功，没有更多数据时返回false
+     */
+    protected abstract boolean fillFrame(YuvFrame frame, long sequence) throws IOException;
+
+    /**
+     * 生产线程结束时调用，用于释放资源
+     */
+    protected void onStopped() {
+    }
+
+    @Override
+    public void setFrameListener(FrameListener listener) {
+        frameListener = listener;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, getClass().getSimpleName());
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * 是否仍在产生帧，数据耗尽后变为false
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void loop() {
+        long deadline = System.nanoTime();
+        try {
+            while (running) {
+                if (frameIntervalNanos > 0) {
+                    long now = System.nanoTime();
+                    while (running && deadline - now > 0) {
+                        LockSupport.parkNanos(deadline - now);
+                        now = System.nanoTime();
+                    }
+                    // 落后超过一帧时不再追赶，避免恢复后连续突发
+                    deadline = now - deadline > frameIntervalNanos ? now + frameIntervalNanos : deadline + frameIntervalNanos;
+                }
+                if (running && !produceFrame()) {
+                    running = false;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            running = false;
+        } finally {
+            onStopped();
+        }
+    }
+
+    /**
+     * 在调用线程中产生一帧并回调，帧池耗尽时丢弃该帧
+     *
+     * @return 是否还有数据
+     */
+    public boolean produceFrame() throws IOException {
+        YuvFrame frame = framePool.acquire();
+        long currentSequence = sequence++;
+        if (frame == null) {
+            return true;
+        }
+        try {
+            if (!fillFrame(frame, currentSequence)) {
+                return false;
+            }
+            frame.setFrameInfo(System.nanoTime(), currentSequence);
+            FrameListener listener = frameListener;
+            if (listener != null) {
+                listener.onFrame(frame);
+            }
+            return true;
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return framePool.getDroppedCount();
+    }
+
+    public int getWidth() {
+        return framePool.getWidth();
+    }
+
+    public int getHeight() {
+        return framePool.getHeight();
+    }
+
+    public int getFormat() {
+        return framePool.getFormat();
+    }
+}
@@ -0,0 +1,247 @@
+package com.camera.preview.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最近若干帧拍摄结果的环形表，用于将拍摄参数按传感器时间戳关联到预览帧。
+ * 拍摄结果回调和图像回调分别到达，二者共有的键是传感器时间戳：
+ * 结果按帧号写入frameNumber % capacity对应的槽，读取时按时间戳查找。
+ * <p>
+ * 每个槽用版本号实现顺序锁：写入前后各递增一次版本号，读取时版本号为奇数或前后不一致则重试，
+ * 写入和读取都不加锁、不分配内存。只允许一个线程写入，可以有多个线程读取。
+ * <p>
+ * {@link #deliver(YuvFrame, long, long)}在分发前关联拍摄结果：结果晚于图像到达时暂缓分发该帧，
+ * 直到{@link #put}写入对应结果、等待超时或下一帧到达，再带着已有的参数分发一次，帧在分发后不再被修改。
+ * 暂缓分发的帧最多一帧，{@link #deliver}、{@link #put}和{@link #flushExpired(long)}需要在同一个线程中调用。
+ */
+public class CaptureResultTable {
+    private static final class Slot {
+        /**
+         * 为奇数时表示正在写入
+         */
+        volatile long version;
+        volatile long timestamp;
+        volatile long exposureTime;
+        volatile int sensitivity;
+        volatile long frameDuration;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong matchedCount = new AtomicLong();
+    private final AtomicLong missedCount = new AtomicLong();
+    /**
+     * 接收关联后的帧，只在写入线程中访问
+     */
+    private FrameSource.FrameListener frameListener;
+    /**
+     * 等待拍摄结果的帧，只在写入线程中访问
+     */
+    private YuvFrame pendingFrame;
+    private long pendingDeadline;
+    /**
+     * 最近一次写入的帧间隔，单位纳秒，未知时为0
+     */
+    private volatile long lastFrameDuration;
+
+    /**
+     * @param capacity 保留的结果数，向上取整为2的幂，需覆盖拍摄结果与图像之间的最大帧数差
+     */
+    public CaptureResultTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * 设置接收{@link #deliver(YuvFrame, long, long)}分发的帧的监听，在写入线程中回调，回调返回后帧被释放
+     */
+    public void setFrameListener(FrameSource.FrameListener listener) {
+        frameListener = listener;
+    }
+
+    /**
+     * 写入一帧的拍摄结果，只能在同一个线程中调用。
+     * 若等待中的帧正是该结果对应的帧，附加参数后分发；结果按帧号顺序到达，等待中的帧更早时不会再有结果，直接分发
+     *
+     * @param frameNumber   帧号，单调递增
+     * @param timestamp     传感器时间戳，单位纳秒
+     * @param exposureTime  曝光时间，单位纳秒
+     * @param sensitivity   感光度
+     * @param frameDuration 帧间隔，单位纳秒
+     */
+    public void put(long frameNumber, long timestamp, long exposureTime, int sensitivity, long frameDuration) {
+        Slot slot = slots[(int) (frameNumber & mask)];
+        long version = slot.version;
+        slot.version = version + 1;
+        slot.timestamp = timestamp;
+        slot.exposureTime = exposureTime;
+        slot.sensitivity = sensitivity;
+        slot.frameDuration = frameDuration;
+        slot.version = version + 2;
+        if (frameDuration > 0) {
+            lastFrameDuration = frameDuration;
+        }
+        YuvFrame frame = pendingFrame;
+        if (frame == null || frame.getTimestamp() > timestamp) {
+            return;
+        }
+        if (frame.getTimestamp() == timestamp) {
+            frame.setCaptureInfo(exposureTime, sensitivity, frameDuration);
+            matchedCount.incrementAndGet();
+        } else {
+            missedCount.incrementAndGet();
+        }
+        pendingFrame = null;
+        dispatch(frame);
+    }
+
+    /**
+     * 关联拍摄结果后分发帧。结果已到达时立即分发；否则暂缓分发，直到对应结果写入或超过maxWaitNanos，
+     * 调用者需要在超时后调用{@link #flushExpired(long)}。之前暂缓的帧在本帧之前不带参数分发，保持帧的顺序
+     *
+     * @param frame       已设置时间戳的帧，调用者的引用交给本表，分发后释放
+     * @param nowNanos    当前时间，{@link System#nanoTime()}的时基
+     * @param maxWaitNanos 最多等待拍摄结果的时间，不大于0时不等待
+     * @return 帧被暂缓分发时返回true
+     */
+    public boolean deliver(YuvFrame frame, long nowNanos, long maxWaitNanos) {
+        flushPending();
+        if (lookup(frame)) {
+            matchedCount.incrementAndGet();
+        } else if (maxWaitNanos > 0) {
+            pendingFrame = frame;
+            pendingDeadline = nowNanos + maxWaitNanos;
+            return true;
+        } else {
+            missedCount.incrementAndGet();
+        }
+        dispatch(frame);
+        return false;
+    }
+
+    /**
+     * 等待超时后不带参数分发暂缓的帧
+     *
+     * @param nowNanos 当前时间，{@link System#nanoTime()}的时基
+     */
+    public void flushExpired(long nowNanos) {
+        if (pendingFrame != null && nowNanos - pendingDeadline >= 0) {
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        YuvFrame frame = pendingFrame;
+        if (frame == null) {
+            return;
+        }
+        pendingFrame = null;
+        missedCount.incrementAndGet();
+        dispatch(frame);
+    }
+
+    private void dispatch(YuvFrame frame) {
+        try {
+            FrameSource.FrameListener listener = frameListener;
+            if (listener != null) {
+                listener.onFrame(frame);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 不分发、直接释放暂缓的帧，在写入线程中或写入线程结束后调用
+     */
+    public void clearPending() {
+        YuvFrame frame = pendingFrame;
+        if (frame != null) {
+            pendingFrame = null;
+            missedCount.incrementAndGet();
+            frame.release();
+        }
+    }
+
+    /**
+     * 是否有暂缓分发的帧
+     */
+    public boolean hasPending() {
+        return pendingFrame != null;
+    }
+
+    /**
+     * 按帧的时间戳查找拍摄结果并附加到帧上
+     *
+     * @param frame 已设置时间戳的帧
+     * @return 找到对应结果时返回true
+     */
+    public boolean attachTo(YuvFrame frame) {
+        if (lookup(frame)) {
+            matchedCount.incrementAndGet();
+            return true;
+        }
+        missedCount.incrementAndGet();
+        return false;
+    }
+
+    private boolean lookup(YuvFrame frame) {
+        long timestamp = frame.getTimestamp();
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[i];
+            while (true) {
+                long version = slot.version;
+                if ((version & 1) != 0) {
+                    // 写入者只会短暂占用该槽
+                    continue;
+                }
+                if (slot.timestamp != timestamp) {
+                    if (slot.version == version) {
+                        break;
+                    }
+                    continue;
+                }
+                long exposureTime = slot.exposureTime;
+                int sensitivity = slot.sensitivity;
+                long frameDuration = slot.frameDuration;
+                if (slot.version != version) {
+                    continue;
+                }
+                frame.setCaptureInfo(exposureTime, sensitivity, frameDuration);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 最近一次写入的帧间隔，单位纳秒，未知时为0，可用于决定等待拍摄结果的时间
+     */
+    public long getLastFrameDuration() {
+        return lastFrameDuration;
+    }
+
+    /**
+     * 找到拍摄结果的帧数
+     */
+    public long getMatchedCount() {
+        return matchedCount.get();
+    }
+
+    /**
+     * 没有找到拍摄结果的帧数，结果已被覆盖、等待超时或从未到达时计入
+     */
+    public long getMissedCount() {
+        return missedCount.get();
+    }
+}
@@ -0,0 +1,287 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 回放文件中的帧，支持Y4M（4:2:0）和无文件头的裸YUV420数据。
+ * 可以按指定帧率回放，也可以尽可能快地回放，用于在没有设备的环境中测量处理流程的吞吐量和耗时。
+ * 文件格式与输出格式不同时会在读取后转换。
+ */
+public class FileFrameSource extends AbstractFrameSource {
+    private static final String Y4M_MAGIC = "YUV4MPEG2";
+    private static final int MAX_HEADER_LENGTH = 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final boolean y4m;
+    private final int fileFormat;
+    private final boolean loop;
+    /**
+     * 文件格式与输出格式不同时用于读取原始数据
+     */
+    private final byte[] readBuffer;
+    private InputStream input;
+
+    private FileFrameSource(Builder builder, FileInfo info, float fps) {
+        super(info.width, info.height, builder.outputFormat, fps, builder.poolSize);
+        file = builder.file;
+        y4m = info.y4m;
+        fileFormat = info.format;
+        loop = builder.loop;
+        readBuffer = fileFormat == builder.outputFormat ? null : new byte[ImageUtil.getBufferSize(fileFormat, info.width, info.height)];
+    }
+
+    @Override
+    protected boolean fillFrame(YuvFrame frame, long sequence) throws IOException {
+        byte[] target = readBuffer != null ? readBuffer : frame.getData();
+        int length = ImageUtil.getBufferSize(fileFormat, frame.getWidth(), frame.getHeight());
+        if (!readFrame(target, length)) {
+            if (!loop || sequence == 0) {
+                return false;
+            }
+            closeInput();
+            if (!readFrame(target, length)) {
+                return false;
+            }
+        }
+        if (readBuffer != null) {
+            ImageUtil.convertYuv420(readBuffer, fileFormat, frame.getData(), frame.getFormat(), frame.getWidth(), frame.getHeight());
+        }
+        return true;
+    }
+
+    /**
+     * 读取一帧，文件结束或最后一帧不完整时返回false
+     */
+    private boolean readFrame(byte[] target, int length) throws IOException {
+        if (input == null) {
+            input = new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE);
+            if (y4m) {
+                readLine(input);
+            }
+        }
+        if (y4m) {
+            String frameHeader = readLine(input);
+            if (frameHeader == null) {
+                return false;
+            }
+            if (!frameHeader.startsWith("FRAME")) {
+                throw new IOException("invalid y4m frame header: " + frameHeader);
+            }
+        }
+        int offset = 0;
+        while (offset < length) {
+            int read = input.read(target, offset, length - offset);
+            if (read < 0) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    /**
+     * 读取以'\n'结尾的ASCII行
+     *
+     * @return 文件结束时返回null
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                if (builder.length() == 0) {
+                    return null;
+                }
+                throw new EOFException("unexpected end of y4m header");
+            }
+            if (builder.length() >= MAX_HEADER_LENGTH) {
+                throw new IOException("y4m header is too long");
+            }
+            builder.append((char) c);
+        }
+        return builder.toString();
+    }
+
+    private void closeInput() {
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            input = null;
+        }
+    }
+
+    @Override
+    protected void onStopped() {
+        closeInput();
+    }
+
+    public boolean isY4m() {
+        return y4m;
+    }
+
+    /**
+     * 文件头中的信息
+     */
+    private static class FileInfo {
+        boolean y4m;
+        int width;
+        int height;
+        int format;
+        /**
+         * Y4M文件中的帧率，未声明时为0
+         */
+        float fps;
+    }
+
+    private static FileInfo parseY4mHeader(String header) throws IOException {
+        String[] tokens = header.split(" ");
+        FileInfo info = new FileInfo();
+        info.y4m = true;
+        info.format = ImageUtil.FORMAT_I420;
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.isEmpty()) {
+                continue;
+            }
+            String value = token.substring(1);
+            switch (token.charAt(0)) {
+                case 'W':
+                    info.width = Integer.parseInt(value);
+                    break;
+                case 'H':
+                    info.height = Integer.parseInt(value);
+                    break;
+                case 'F':
+                    int colon = value.indexOf(':');
+                    if (colon > 0) {
+                        int denominator = Integer.parseInt(value.substring(colon + 1));
+                        if (denominator > 0) {
+                            info.fps = Integer.parseInt(value.substring(0, colon)) / (float) denominator;
+                        }
+                    }
+                    break;
+                case 'C':
+                    if (!value.startsWith("420")) {
+                        throw new IOException("only 4:2:0 y4m is supported, now " + value);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (info.width <= 0 || info.height <= 0) {
+            throw new IOException("invalid y4m header: " + header);
+        }
+        return info;
+    }
+
+    public static final class Builder {
+        /**
+         * 回放的文件
+         */
+        private File file;
+        /**
+         * 裸数据的宽高和格式，Y4M文件由文件头决定
+         */
+        private int rawWidth;
+        private int rawHeight;
+        private int rawFormat = ImageUtil.FORMAT_I420;
+        /**
+         * 输出的帧格式，默认与相机回调一致
+         */
+        private int outputFormat = ImageUtil.FORMAT_NV21;
+        /**
+         * 回放帧率，0表示尽可能快，未设置时使用Y4M文件中的帧率，裸数据为30
+         */
+        private float fps = -1;
+        /**
+         * 是否循环回放
+         */
+        private boolean loop;
+        private int poolSize = 3;
+
+        public Builder() {
+        }
+
+        public Builder file(File val) {
+            file = val;
+            return this;
+        }
+
+        /**
+         * 设置裸数据的宽高和格式，文件为Y4M时忽略
+         */
+        public Builder rawFormat(int width, int height, int format) {
+            rawWidth = width;
+            rawHeight = height;
+            rawFormat = format;
+            return this;
+        }
+
+        public Builder outputFormat(int val) {
+            outputFormat = val;
+            return this;
+        }
+
+        public Builder fps(float val) {
+            fps = val;
+            return this;
+        }
+
+        public Builder loop(boolean val) {
+            loop = val;
+            return this;
+        }
+
+        public Builder poolSize(int val) {
+            poolSize = val;
+            return this;
+        }
+
+        /**
+         * 读取文件头并创建帧源，文件以YUV4MPEG2开头时按Y4M解析，否则按裸数据处理
+         */
+        public FileFrameSource build() throws IOException {
+            if (file == null) {
+                throw new NullPointerException("file must be set");
+            }
+            FileInfo info;
+            InputStream in = new BufferedInputStream(new FileInputStream(file), MAX_HEADER_LENGTH);
+            try {
+                in.mark(Y4M_MAGIC.length());
+                byte[] magic = new byte[Y4M_MAGIC.length()];
+                int read = in.read(magic);
+                in.reset();
+                if (read == magic.length && Y4M_MAGIC.equals(new String(magic, "US-ASCII"))) {
+                    info = parseY4mHeader(readLine(in));
+                } else {
+                    if (rawWidth <= 0 || rawHeight <= 0) {
+                        throw new IllegalArgumentException("rawFormat must be set for raw yuv files");
+                    }
+                    info = new FileInfo();
+                    info.width = rawWidth;
+                    info.height = rawHeight;
+                    info.format = rawFormat;
+                }
+            } finally {
+                in.close();
+            }
+            if ((outputFormat == ImageUtil.FORMAT_GRAY) != (info.format == ImageUtil.FORMAT_GRAY)) {
+                throw new IllegalArgumentException("gray files can only be replayed as gray and vice versa");
+            }
+            float frameRate = fps >= 0 ? fps : (info.fps > 0 ? info.fps : 30);
+            return new FileFrameSource(this, info, frameRate);
+        }
+    }
+}
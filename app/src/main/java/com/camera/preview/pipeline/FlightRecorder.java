@@ -0,0 +1,348 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 飞行记录仪：将最近的原始预览帧循环写入固定大小的内存映射文件。
+ * 文件由文件头、帧索引和固定大小的帧槽组成，写满后覆盖最旧的帧，写入只是内存拷贝，由系统在后台刷盘，
+ * 进程崩溃后文件中仍保留最近的帧，可通过{@link #exportY4m(File, File)}导出。
+ * 稳定运行时记录不分配内存。只能在一个线程（通常是相机线程）中调用record。
+ * <p>
+ * 每条索引先被标记为无效，帧数据写完后再写入帧信息和序号，写入过程中崩溃的帧会被忽略。
+ * 导出时按记录器内部单调递增的写入次序排序，调用者传入的帧序号只作为信息保存，序号重新开始时不影响顺序。
+ */
+public class FlightRecorder {
+    private static final int MAGIC = 0x43504652;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int INDEX_ENTRY_SIZE = 64;
+    private static final int PAGE_SIZE = 4096;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_COUNT = 8;
+    private static final int HEADER_SLOT_SIZE = 12;
+    private static final int HEADER_DATA_OFFSET = 16;
+    private static final int HEADER_WRITE_COUNT = 24;
+
+    private static final int ENTRY_SEQUENCE = 0;
+    private static final int ENTRY_TIMESTAMP = 8;
+    private static final int ENTRY_WIDTH = 16;
+    private static final int ENTRY_HEIGHT = 20;
+    private static final int ENTRY_FORMAT = 24;
+    private static final int ENTRY_Y_ROW_STRIDE = 28;
+    private static final int ENTRY_UV_ROW_STRIDE = 32;
+    private static final int ENTRY_UV_PIXEL_STRIDE = 36;
+    private static final int ENTRY_Y_LENGTH = 40;
+    private static final int ENTRY_U_LENGTH = 44;
+    private static final int ENTRY_V_LENGTH = 48;
+    private static final int ENTRY_WRITE_INDEX = 52;
+
+    /**
+     * 索引中的格式，表示按YUV_420_888原样记录的三个平面
+     */
+    public static final int FORMAT_PLANES = -1;
+    private static final long INVALID_SEQUENCE = -1;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int slotSize;
+    private final int dataOffset;
+    private long writeCount;
+    private long oversizedCount;
+
+    /**
+     * 创建或覆盖记录文件，需要保存最近N秒时slotCount取N * 帧率
+     *
+     * @param file      记录文件
+     * @param slotCount 帧槽数
+     * @param slotSize  帧槽大小，可通过{@link #getSlotSize(int, int, int)}计算
+     */
+    public FlightRecorder(File file, int slotCount, int slotSize) throws IOException {
+        if (slotCount <= 0 || slotSize <= 0) {
+            throw new IllegalArgumentException("slotCount and slotSize must be positive");
+        }
+        int indexEnd = HEADER_SIZE + slotCount * INDEX_ENTRY_SIZE;
+        long dataOffset = (indexEnd + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+        long length = dataOffset + (long) slotCount * slotSize;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("ring file is too large: " + length);
+        }
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        this.dataOffset = (int) dataOffset;
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            this.file.setLength(length);
+            channel = this.file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_SLOT_COUNT, slotCount);
+        buffer.putInt(HEADER_SLOT_SIZE, slotSize);
+        buffer.putInt(HEADER_DATA_OFFSET, this.dataOffset);
+        buffer.putLong(HEADER_WRITE_COUNT, 0);
+        for (int i = 0; i < slotCount; i++) {
+            buffer.putLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE + ENTRY_SEQUENCE, INVALID_SEQUENCE);
+        }
+    }
+
+    /**
+     * 计算能容纳带步长的YUV_420_888帧的帧槽大小
+     *
+     * @param yRowStride  Y平面的行步长
+     * @param uvRowStride U、V平面的行步长
+     * @param height      帧高度
+     */
+    public static int getSlotSize(int yRowStride, int uvRowStride, int height) {
+        return yRowStride * height + uvRowStride * height;
+    }
+
+    /**
+     * 记录一帧紧凑排列的帧
+     *
+     * @return 帧大于帧槽时返回false
+     */
+    public boolean record(YuvFrame frame) {
+        int size = ImageUtil.getBufferSize(frame.getFormat(), frame.getWidth(), frame.getHeight());
+        if (size > slotSize) {
+            oversizedCount++;
+            return false;
+        }
+        int entry = beginEntry();
+        buffer.position(slotOffset(writeCount));
+        buffer.put(frame.getData(), 0, size);
+        int pixelStride = frame.getFormat() == ImageUtil.FORMAT_GRAY ? 0 : ImageUtil.getChromaPixelStride(frame.getFormat());
+        commitEntry(entry, frame.getSequence(), frame.getTimestamp(), frame.getWidth(), frame.getHeight(), frame.getFormat(),
+                frame.getWidth(), frame.getWidth() / 2 * pixelStride, pixelStride, size, 0, 0);
+        return true;
+    }
+
+    /**
+     * 按原样记录YUV_420_888的三个平面，包括行尾的padding
+     *
+     * @param planes   平面
+     * @param sequence 帧序号
+     * @return 帧大于帧槽时返回false
+     */
+    public boolean record(YuvPlanes planes, long sequence) {
+        ByteBuffer y = planes.getY();
+        ByteBuffer u = planes.getU();
+        ByteBuffer v = planes.getV();
+        int yLength = y.remaining();
+        int uLength = u.remaining();
+        int vLength = v.remaining();
+        if (yLength + uLength + vLength > slotSize) {
+            oversizedCount++;
+            return false;
+        }
+        int entry = beginEntry();
+        buffer.position(slotOffset(writeCount));
+        putPlane(y);
+        putPlane(u);
+        putPlane(v);
+        commitEntry(entry, sequence, planes.getTimestamp(), planes.getWidth(), planes.getHeight(), FORMAT_PLANES,
+                planes.getYRowStride(), planes.getUvRowStride(), planes.getUvPixelStride(), yLength, uLength, vLength);
+        return true;
+    }
+
+    private void putPlane(ByteBuffer plane) {
+        int position = plane.position();
+        buffer.put(plane);
+        plane.position(position);
+    }
+
+    private int slotOffset(long index) {
+        return dataOffset + (int) (index % slotCount) * slotSize;
+    }
+
+    private int beginEntry() {
+        int entry = HEADER_SIZE + (int) (writeCount % slotCount) * INDEX_ENTRY_SIZE;
+        buffer.putLong(entry + ENTRY_SEQUENCE, INVALID_SEQUENCE);
+        return entry;
+    }
+
+    private void commitEntry(int entry, long sequence, long timestamp, int width, int height, int format,
+                             int yRowStride, int uvRowStride, int uvPixelStride, int yLength, int uLength, int vLength) {
+        buffer.putLong(entry + ENTRY_TIMESTAMP, timestamp);
+        buffer.putInt(entry + ENTRY_WIDTH, width);
+        buffer.putInt(entry + ENTRY_HEIGHT, height);
+        buffer.putInt(entry + ENTRY_FORMAT, format);
+        buffer.putInt(entry + ENTRY_Y_ROW_STRIDE, yRowStride);
+        buffer.putInt(entry + ENTRY_UV_ROW_STRIDE, uvRowStride);
+        buffer.putInt(entry + ENTRY_UV_PIXEL_STRIDE, uvPixelStride);
+        buffer.putInt(entry + ENTRY_Y_LENGTH, yLength);
+        buffer.putInt(entry + ENTRY_U_LENGTH, uLength);
+        buffer.putInt(entry + ENTRY_V_LENGTH, vLength);
+        buffer.putLong(entry + ENTRY_WRITE_INDEX, writeCount);
+        // 序号最后写入，之前的内容都写完后该帧才有效
+        buffer.putLong(entry + ENTRY_SEQUENCE, sequence & Long.MAX_VALUE);
+        writeCount++;
+        buffer.putLong(HEADER_WRITE_COUNT, writeCount);
+    }
+
+    /**
+     * 已记录的总帧数，包括已被覆盖的帧
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * 因大于帧槽而未记录的帧数
+     */
+    public long getOversizedCount() {
+        return oversizedCount;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * 将当前记录的帧导出为Y4M文件，需要与record在同一线程中调用，或在停止记录后调用
+     *
+     * @param out 导出的文件
+     * @return 导出的帧数
+     */
+    public int dumpY4m(File out) throws IOException {
+        return exportY4m(buffer.duplicate(), out);
+    }
+
+    /**
+     * 将内存中的修改写入存储设备，通常不需要调用，系统会在后台刷盘
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    /**
+     * 停止记录并关闭文件，文件中的内容会保留
+     */
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * 导出记录文件中的帧为Y4M（I420），可用于进程崩溃后遗留的记录文件。
+     * 按写入次序从旧到新导出与最新一帧尺寸相同的帧，帧率由时间戳估算
+     *
+     * @param ringFile 记录文件
+     * @param out      导出的文件
+     * @return 导出的帧数
+     */
+    public static int exportY4m(File ringFile, File out) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(ringFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return exportY4m(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), out);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static int exportY4m(final ByteBuffer ring, File out) throws IOException {
+        if (ring.getInt(HEADER_MAGIC) != MAGIC || ring.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("not a flight recorder file");
+        }
+        int slotCount = ring.getInt(HEADER_SLOT_COUNT);
+        int slotSize = ring.getInt(HEADER_SLOT_SIZE);
+        int dataOffset = ring.getInt(HEADER_DATA_OFFSET);
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < slotCount; i++) {
+            if (ring.getLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE + ENTRY_SEQUENCE) != INVALID_SEQUENCE) {
+                slots.add(i);
+            }
+        }
+        if (slots.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(slots, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long s1 = ring.getLong(HEADER_SIZE + o1 * INDEX_ENTRY_SIZE + ENTRY_WRITE_INDEX);
+                long s2 = ring.getLong(HEADER_SIZE + o2 * INDEX_ENTRY_SIZE + ENTRY_WRITE_INDEX);
+                return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+        int newest = HEADER_SIZE + slots.get(slots.size() - 1) * INDEX_ENTRY_SIZE;
+        int width = ring.getInt(newest + ENTRY_WIDTH);
+        int height = ring.getInt(newest + ENTRY_HEIGHT);
+        List<Integer> entries = new ArrayList<>();
+        for (int slot : slots) {
+            int entry = HEADER_SIZE + slot * INDEX_ENTRY_SIZE;
+            if (ring.getInt(entry + ENTRY_WIDTH) == width && ring.getInt(entry + ENTRY_HEIGHT) == height
+                    && ring.getInt(entry + ENTRY_FORMAT) != ImageUtil.FORMAT_GRAY) {
+                entries.add(slot);
+            }
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        long first = ring.getLong(HEADER_SIZE + entries.get(0) * INDEX_ENTRY_SIZE + ENTRY_TIMESTAMP);
+        long last = ring.getLong(HEADER_SIZE + entries.get(entries.size() - 1) * INDEX_ENTRY_SIZE + ENTRY_TIMESTAMP);
+        int fpsMillis = entries.size() > 1 && last > first
+                ? (int) Math.round((entries.size() - 1) * 1e12 / (last - first)) : 30000;
+
+        byte[] i420 = new byte[ImageUtil.getYuv420Size(width, height)];
+        byte[] compact = new byte[i420.length];
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(out), 64 * 1024);
+        try {
+            output.write(("YUV4MPEG2 W" + width + " H" + height + " F" + fpsMillis + ":1000 Ip A1:1 C420jpeg\n").getBytes("US-ASCII"));
+            byte[] frameHeader = "FRAME\n".getBytes("US-ASCII");
+            for (int slot : entries) {
+                int entry = HEADER_SIZE + slot * INDEX_ENTRY_SIZE;
+                int data = dataOffset + slot * slotSize;
+                int format = ring.getInt(entry + ENTRY_FORMAT);
+                if (format == FORMAT_PLANES) {
+                    int yLength = ring.getInt(entry + ENTRY_Y_LENGTH);
+                    int uLength = ring.getInt(entry + ENTRY_U_LENGTH);
+                    int vLength = ring.getInt(entry + ENTRY_V_LENGTH);
+                    ImageUtil.yuv420888ToYuv420(slice(ring, data, yLength), ring.getInt(entry + ENTRY_Y_ROW_STRIDE),
+                            slice(ring, data + yLength, uLength), slice(ring, data + yLength + uLength, vLength),
+                            ring.getInt(entry + ENTRY_UV_ROW_STRIDE), ring.getInt(entry + ENTRY_UV_PIXEL_STRIDE),
+                            width, height, i420, ImageUtil.FORMAT_I420);
+                } else {
+                    ByteBuffer src = ring.duplicate();
+                    src.position(data);
+                    src.get(compact, 0, compact.length);
+                    ImageUtil.convertYuv420(compact, format, i420, ImageUtil.FORMAT_I420, width, height);
+                }
+                output.write(frameHeader);
+                output.write(i420);
+            }
+        } finally {
+            output.close();
+        }
+        return entries.size();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length);
+        duplicate.position(offset);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,328 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * 将一路帧分发给多个消费者，每个消费者有各自的目标帧率、executor以及需要的尺寸和格式。
+ * 每个消费者内部是一个{@link LatestFrameDispatcher}，处理不过来时只保留最新一帧。
+ * <p>
+ * 同一帧被所有消费者以只读方式共享，消费者不能修改帧数据；
+ * 缩小或转换格式后的帧在每一帧中按尺寸和格式只计算一次，由需要相同帧的消费者共享，
+ * 并且只在至少有一个消费者会被采样选中时才计算。
+ * 作为{@link FrameSource.FrameListener}挂到帧源上，{@link #onFrame(YuvFrame)}需要在同一个生产者线程中调用。
+ */
+public class FrameFanout implements FrameSource.FrameListener {
+    /**
+     * 使用原始帧的格式
+     */
+    public static final int FORMAT_SOURCE = -1;
+
+    /**
+     * 一个消费者及其要求
+     */
+    public static final class Consumer {
+        private final LatestFrameDispatcher dispatcher;
+        private final int scale;
+        private final int width;
+        private final int height;
+        private final int format;
+
+        private Consumer(Builder builder) {
+            dispatcher = new LatestFrameDispatcher(builder.executor, builder.consumer);
+            dispatcher.setTargetFps(builder.fps);
+            scale = builder.scale;
+            width = builder.width;
+            height = builder.height;
+            format = builder.format;
+        }
+
+        /**
+         * 该消费者的分发器，用于设置耗时统计和读取丢帧计数
+         */
+        public LatestFrameDispatcher getDispatcher() {
+            return dispatcher;
+        }
+
+        private int resolveWidth(YuvFrame frame) {
+            if (width > 0) {
+                return width;
+            }
+            int resolved = frame.getWidth() / scale;
+            return resolveFormat(frame) == ImageUtil.FORMAT_GRAY ? resolved : resolved & ~1;
+        }
+
+        private int resolveHeight(YuvFrame frame) {
+            if (height > 0) {
+                return height;
+            }
+            int resolved = frame.getHeight() / scale;
+            return resolveFormat(frame) == ImageUtil.FORMAT_GRAY ? resolved : resolved & ~1;
+        }
+
+        private int resolveFormat(YuvFrame frame) {
+            // 灰度帧没有色度，只能输出灰度帧
+            return format == FORMAT_SOURCE || frame.getFormat() == ImageUtil.FORMAT_GRAY ? frame.getFormat() : format;
+        }
+
+        public static final class Builder {
+            private Executor executor;
+            private LatestFrameDispatcher.FrameConsumer consumer;
+            private float fps;
+            private int scale = 1;
+            private int width;
+            private int height;
+            private int format = FORMAT_SOURCE;
+
+            public Builder() {
+            }
+
+            public Builder executor(Executor val) {
+                executor = val;
+                return this;
+            }
+
+            public Builder consumer(LatestFrameDispatcher.FrameConsumer val) {
+                consumer = val;
+                return this;
+            }
+
+            /**
+             * 目标帧率，默认为0，只受处理耗时约束
+             */
+            public Builder fps(float val) {
+                fps = val;
+                return this;
+            }
+
+            /**
+             * 按原始帧尺寸缩小的倍数，默认为1，设置了{@link #size(int, int)}时无效
+             */
+            public Builder scale(int val) {
+                scale = val;
+                return this;
+            }
+
+            /**
+             * 固定的输出尺寸，非灰度格式需为偶数
+             */
+            public Builder size(int width, int height) {
+                this.width = width;
+                this.height = height;
+                return this;
+            }
+
+            /**
+             * 输出格式，取值为{@link ImageUtil#FORMAT_NV21}等，默认为{@link #FORMAT_SOURCE}；
+             * 原始帧为{@link ImageUtil#FORMAT_GRAY}时总是输出灰度帧
+             */
+            public Builder format(int val) {
+                format = val;
+                return this;
+            }
+
+            public Consumer build() {
+                if (executor == null || consumer == null) {
+                    throw new NullPointerException("executor and consumer must not be null");
+                }
+                if (scale < 1) {
+                    throw new IllegalArgumentException("scale must be positive");
+                }
+                if (width < 0 || height < 0 || (width == 0) != (height == 0)) {
+                    throw new IllegalArgumentException("invalid size " + width + "x" + height);
+                }
+                return new Consumer(this);
+            }
+        }
+    }
+
+    /**
+     * 消费者列表的快照，增删消费者时整体替换，帧池和临时数组只在生产者线程中使用
+     */
+    private static final class State {
+        final Consumer[] consumers;
+        /**
+         * 本帧中为每个消费者准备的帧，尺寸和格式相同的消费者指向同一帧
+         */
+        final YuvFrame[] prepared;
+        /**
+         * 派生帧的帧池，按尺寸和格式在生产者线程中懒创建，其他线程只读取丢帧计数
+         */
+        final List<FramePool> pools = new CopyOnWriteArrayList<>();
+
+        /**
+         * @param previous 上一个快照，其帧池和丢帧计数被沿用，只在容量不够时按新容量重建
+         */
+        State(Consumer[] consumers, State previous) {
+            this.consumers = consumers;
+            prepared = new YuvFrame[consumers.length];
+            if (previous == null) {
+                return;
+            }
+            int capacity = poolCapacity(consumers.length);
+            for (FramePool pool : previous.pools) {
+                pools.add(pool.getCapacity() >= capacity ? pool : new FramePool(pool, capacity));
+            }
+        }
+    }
+
+    private volatile State state = new State(new Consumer[0], null);
+    private final Object lock = new Object();
+
+    /**
+     * 添加消费者，可以在分发过程中调用，从下一帧开始生效
+     */
+    public void addConsumer(Consumer consumer) {
+        synchronized (lock) {
+            Consumer[] consumers = state.consumers;
+            for (Consumer existing : consumers) {
+                if (existing == consumer) {
+                    return;
+                }
+            }
+            Consumer[] updated = new Consumer[consumers.length + 1];
+            System.arraycopy(consumers, 0, updated, 0, consumers.length);
+            updated[consumers.length] = consumer;
+            state = new State(updated, state);
+        }
+    }
+
+    /**
+     * 移除消费者，信箱中尚未处理的帧会被释放，正在处理的帧不受影响
+     */
+    public void removeConsumer(Consumer consumer) {
+        synchronized (lock) {
+            Consumer[] consumers = state.consumers;
+            int index = -1;
+            for (int i = 0; i < consumers.length; i++) {
+                if (consumers[i] == consumer) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            Consumer[] updated = new Consumer[consumers.length - 1];
+            System.arraycopy(consumers, 0, updated, 0, index);
+            System.arraycopy(consumers, index + 1, updated, index, consumers.length - index - 1);
+            state = new State(updated, state);
+        }
+        consumer.dispatcher.clear();
+    }
+
+    @Override
+    public void onFrame(YuvFrame frame) {
+        onFrame(frame, System.nanoTime());
+    }
+
+    void onFrame(YuvFrame frame, long nowNanos) {
+        State state = this.state;
+        Consumer[] consumers = state.consumers;
+        YuvFrame[] prepared = state.prepared;
+        try {
+            for (int i = 0; i < consumers.length; i++) {
+                Consumer consumer = consumers[i];
+                if (!consumer.dispatcher.isDue(nowNanos)) {
+                    // 由分发器记录采样丢弃
+                    consumer.dispatcher.offer(frame, nowNanos);
+                    continue;
+                }
+                YuvFrame derived = prepare(state, i, frame);
+                if (derived != null) {
+                    consumer.dispatcher.offer(derived, nowNanos);
+                }
+            }
+        } finally {
+            for (int i = 0; i < prepared.length; i++) {
+                YuvFrame derived = prepared[i];
+                if (derived == null) {
+                    continue;
+                }
+                // 同一帧可能被多个消费者共享，只释放一次
+                for (int j = i; j < prepared.length; j++) {
+                    if (prepared[j] == derived) {
+                        prepared[j] = null;
+                    }
+                }
+                if (derived != frame) {
+                    derived.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取第index个消费者需要的帧，优先复用本帧中已为其他消费者准备好的相同帧
+     *
+     * @return 帧池耗尽时返回null
+     */
+    private YuvFrame prepare(State state, int index, YuvFrame frame) {
+        Consumer consumer = state.consumers[index];
+        int width = consumer.resolveWidth(frame);
+        int height = consumer.resolveHeight(frame);
+        int format = consumer.resolveFormat(frame);
+        YuvFrame derived = null;
+        if (width == frame.getWidth() && height == frame.getHeight() && format == frame.getFormat()) {
+            derived = frame;
+        } else {
+            for (int i = 0; i < index; i++) {
+                YuvFrame candidate = state.prepared[i];
+                if (candidate != null && candidate.getWidth() == width && candidate.getHeight() == height
+                        && candidate.getFormat() == format) {
+                    derived = candidate;
+                    break;
+                }
+            }
+            if (derived == null) {
+                derived = FrameScaler.scale(frame, getPool(state, width, height, format));
+            }
+        }
+        state.prepared[index] = derived;
+        return derived;
+    }
+
+    private static FramePool getPool(State state, int width, int height, int format) {
+        List<FramePool> pools = state.pools;
+        for (int i = 0; i < pools.size(); i++) {
+            FramePool pool = pools.get(i);
+            if (pool.matches(width, height, format)) {
+                return pool;
+            }
+        }
+        FramePool pool = new FramePool(poolCapacity(state.consumers.length), width, height, format);
+        pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * 每个消费者最多持有信箱中的一帧和正在处理的一帧，另加一帧用于准备下一帧
+     */
+    private static int poolCapacity(int consumerCount) {
+        return consumerCount * 2 + 1;
+    }
+
+    /**
+     * 释放所有消费者信箱中尚未处理的帧，关闭executor后调用
+     */
+    public void clear() {
+        for (Consumer consumer : state.consumers) {
+            consumer.dispatcher.clear();
+        }
+    }
+
+    /**
+     * 派生帧因帧池耗尽而丢弃的总数
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        List<FramePool> pools = state.pools;
+        for (int i = 0; i < pools.size(); i++) {
+            dropped += pools.get(i).getDroppedCount();
+        }
+        return dropped;
+    }
+}
@@ -0,0 +1,124 @@
+package com.camera.preview.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的帧池，帧按需创建，最多创建capacity个，之后只复用已有的帧。
+ * 池中没有可用帧时{@link #acquire()}返回null并记录一次丢帧，不会额外分配内存，
+ * 因此长时间运行时内存占用是固定的。
+ */
+public class FramePool {
+    private final int width;
+    private final int height;
+    private final int format;
+    private final int capacity;
+    private final ArrayBlockingQueue<YuvFrame> freeFrames;
+    private final AtomicInteger createdCount = new AtomicInteger();
+    private final AtomicLong droppedCount;
+
+    /**
+     * @param capacity 最多持有的帧数
+     * @param width    帧宽度
+     * @param height   帧高度
+     * @param format   帧数据格式，取值为{@link com.camera.preview.util.ImageUtil#FORMAT_NV21}等
+     */
+    public FramePool(int capacity, int width, int height, int format) {
+        this(capacity, width, height, format, new AtomicLong());
+    }
+
+    /**
+     * 创建与previous尺寸和格式相同、容量不同的帧池，沿用previous的丢帧计数。
+     * previous中尚未归还的帧仍回到previous，之后随previous一起被回收
+     */
+    FramePool(FramePool previous, int capacity) {
+        this(capacity, previous.width, previous.height, previous.format, previous.droppedCount);
+    }
+
+    private FramePool(int capacity, int width, int height, int format, AtomicLong droppedCount) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.droppedCount = droppedCount;
+        freeFrames = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 获取一个空闲帧，引用计数为1
+     *
+     * @return 空闲帧，池已耗尽时返回null
+     */
+    public YuvFrame acquire() {
+        YuvFrame frame = freeFrames.poll();
+        if (frame == null) {
+            frame = create();
+            if (frame == null) {
+                droppedCount.incrementAndGet();
+                return null;
+            }
+        }
+        frame.onAcquire();
+        return frame;
+    }
+
+    private YuvFrame create() {
+        while (true) {
+            int created = createdCount.get();
+            if (created >= capacity) {
+                return null;
+            }
+            if (createdCount.compareAndSet(created, created + 1)) {
+                return new YuvFrame(this, width, height, format);
+            }
+        }
+    }
+
+    void recycle(YuvFrame frame) {
+        freeFrames.offer(frame);
+    }
+
+    /**
+     * 是否可以用于指定宽高和格式的帧
+     */
+    public boolean matches(int width, int height, int format) {
+        return this.width == width && this.height == height && this.format == format;
+    }
+
+    /**
+     * 因池耗尽而丢弃的帧数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 当前可立即获取的帧数
+     */
+    public int getAvailableCount() {
+        return freeFrames.size() + capacity - createdCount.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 帧数据格式，取值为{@link com.camera.preview.util.ImageUtil#FORMAT_NV21}等
+     */
+    public int getFormat() {
+        return format;
+    }
+}
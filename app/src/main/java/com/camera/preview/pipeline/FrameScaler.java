@@ -0,0 +1,44 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvScaler;
+
+/**
+ * 将帧缩小到帧池指定的尺寸和格式，用于给检测等分析算法提供低分辨率的帧
+ */
+public class FrameScaler {
+
+    /**
+     * 从帧池中获取一帧并写入缩小后的数据，能整数倍抽取时使用盒式抽取，否则使用双线性插值；
+     * 尺寸相同时只做格式转换。灰度帧只能输出灰度帧
+     *
+     * @param src  原始帧
+     * @param pool 目标帧池，决定缩小后的尺寸和格式
+     * @return 缩小后的帧，引用计数为1，使用完毕后需要释放；帧池耗尽时返回null
+     */
+    public static YuvFrame scale(YuvFrame src, FramePool pool) {
+        if (src.getFormat() == ImageUtil.FORMAT_GRAY && pool.getFormat() != ImageUtil.FORMAT_GRAY) {
+            throw new IllegalArgumentException("gray frame can only be scaled to FORMAT_GRAY, now " + pool.getFormat());
+        }
+        YuvFrame dst = pool.acquire();
+        if (dst == null) {
+            return null;
+        }
+        try {
+            if (src.getWidth() != dst.getWidth() || src.getHeight() != dst.getHeight()) {
+                YuvScaler.scale(src.getData(), src.getFormat(), src.getWidth(), src.getHeight(),
+                        dst.getData(), dst.getFormat(), dst.getWidth(), dst.getHeight());
+            } else if (dst.getFormat() == ImageUtil.FORMAT_GRAY) {
+                System.arraycopy(src.getData(), 0, dst.getData(), 0, src.getWidth() * src.getHeight());
+            } else {
+                ImageUtil.convertYuv420(src.getData(), src.getFormat(), dst.getData(), dst.getFormat(),
+                        src.getWidth(), src.getHeight());
+            }
+        } catch (RuntimeException e) {
+            dst.release();
+            throw e;
+        }
+        dst.copyFrameInfo(src);
+        return dst;
+    }
+}
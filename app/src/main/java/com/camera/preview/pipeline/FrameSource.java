@@ -0,0 +1,43 @@
+package com.camera.preview.pipeline;
+
+/**
+ * 预览帧的来源。
+ * 相机（{@link com.camera.preview.camera2.Camera2Helper}）、合成图案（{@link SyntheticFrameSource}）
+ * 和文件回放（{@link FileFrameSource}）都实现该接口，消费者代码不依赖具体来源，可以脱离设备进行压测。
+ */
+public interface FrameSource {
+
+    /**
+     * 帧回调
+     */
+    interface FrameListener {
+        /**
+         * 在帧源的生产线程中执行。
+         * frame只在回调期间有效，若需要在回调结束后继续使用，需先调用{@link YuvFrame#retain()}，
+         * 使用完毕后调用{@link YuvFrame#release()}
+         *
+         * @param frame 预览帧
+         */
+        void onFrame(YuvFrame frame);
+    }
+
+    /**
+     * 设置帧回调，需在{@link #start()}之前设置
+     */
+    void setFrameListener(FrameListener listener);
+
+    /**
+     * 开始产生帧
+     */
+    void start();
+
+    /**
+     * 停止产生帧
+     */
+    void stop();
+
+    /**
+     * 因帧池耗尽而丢弃的帧数
+     */
+    long getDroppedFrameCount();
+}
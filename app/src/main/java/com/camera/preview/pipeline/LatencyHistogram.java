@@ -0,0 +1,151 @@
+package com.camera.preview.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁、记录时不分配内存的耗时直方图。
+ * 桶按微秒划分，8微秒以内每微秒一个桶，之后每个2的幂区间再均分为8个桶，相对误差不超过12.5%，
+ * 最大可记录约71分钟，更大的值计入最后一个桶。
+ * 可在多个线程中同时调用{@link #record(long)}，快照时允许与记录并发，并发记录的值可能计入本次或下一次快照。
+ */
+public class LatencyHistogram {
+    /**
+     * 每个2的幂区间再细分的桶数为1 << SUB_BUCKET_BITS
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * 可区分的最大值为2 ^ (MAX_EXPONENT + 1)微秒
+     */
+    private static final int MAX_EXPONENT = 31;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 快照，可重复使用
+     */
+    public static class Snapshot {
+        public long count;
+        public long p50Nanos;
+        public long p90Nanos;
+        public long p99Nanos;
+        public long maxNanos;
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + " p50=" + p50Nanos / 1000 + "us"
+                    + " p90=" + p90Nanos / 1000 + "us"
+                    + " p99=" + p99Nanos / 1000 + "us"
+                    + " max=" + maxNanos / 1000 + "us";
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，单位纳秒，负数按0记录
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(getBucketIndex(nanos / 1000));
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    static int getBucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * 桶的上界（不含），单位微秒
+     */
+    static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index + 1;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1)) << shift;
+    }
+
+    /**
+     * 生成快照，分位数取所在桶的上界，且不超过最大值
+     *
+     * @param out   输出的快照
+     * @param reset 是否同时清空已记录的数据
+     * @return out
+     */
+    public Snapshot snapshot(Snapshot out, boolean reset) {
+        // 第一次遍历求总数以确定各分位数的排名，第二次遍历累加定位所在的桶
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        long maxNanos = reset ? max.getAndSet(0) : max.get();
+        long p50Rank = rank(count, 50);
+        long p90Rank = rank(count, 90);
+        long p99Rank = rank(count, 99);
+        long p50 = 0;
+        long p90 = 0;
+        long p99 = 0;
+        long cumulative = 0;
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucketCount = reset ? buckets.getAndSet(i, 0) : buckets.get(i);
+            if (bucketCount == 0) {
+                continue;
+            }
+            total += bucketCount;
+            cumulative += bucketCount;
+            long upperNanos = getBucketUpperBound(i) * 1000;
+            if (p50 == 0 && cumulative >= p50Rank) {
+                p50 = upperNanos;
+            }
+            if (p90 == 0 && cumulative >= p90Rank) {
+                p90 = upperNanos;
+            }
+            if (p99 == 0 && cumulative >= p99Rank) {
+                p99 = upperNanos;
+            }
+        }
+        // 并发记录时第二次遍历可能多出少量计数，以实际取出的为准
+        out.count = total;
+        out.maxNanos = maxNanos;
+        out.p50Nanos = Math.min(p50, maxNanos);
+        out.p90Nanos = Math.min(p90, maxNanos);
+        out.p99Nanos = Math.min(p99, maxNanos);
+        return out;
+    }
+
+    private static long rank(long count, int percentile) {
+        long rank = (count * percentile + 99) / 100;
+        return rank < 1 ? 1 : rank;
+    }
+
+    /**
+     * 清空已记录的数据
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        max.set(0);
+    }
+}
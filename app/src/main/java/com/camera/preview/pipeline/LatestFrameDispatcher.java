@@ -0,0 +1,260 @@
+package com.camera.preview.pipeline;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 只保留最新一帧的分发器。
+ * 每个消费者对应一个信箱，处理不过来时新帧会替换信箱中尚未处理的旧帧，而不是排队，
+ * 因此无论处理多慢，待处理的帧最多只有一个。
+ * 采样间隔取目标间隔和平滑后的处理耗时中的较大者，处理变慢时自动降低采样率。
+ * {@link #offer(YuvFrame)}需要在同一个生产者线程中调用。
+ */
+public class LatestFrameDispatcher {
+
+    /**
+     * 帧消费者
+     */
+    public interface FrameConsumer {
+        /**
+         * 在分发器的executor中执行，返回后帧会被释放，需要继续持有时调用{@link YuvFrame#retain()}
+         *
+         * @param frame 信箱中最新的帧
+         */
+        void onFrame(YuvFrame frame);
+    }
+
+    /**
+     * 处理耗时平滑系数为1/(1 << SMOOTHING_SHIFT)
+     */
+    private static final int SMOOTHING_SHIFT = 3;
+
+    private final Executor executor;
+    private final FrameConsumer consumer;
+    private final AtomicReference<YuvFrame> mailbox = new AtomicReference<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    private volatile long targetIntervalNanos;
+    private volatile PipelineMetrics metrics;
+    /**
+     * 最近一次放入信箱的时间，用于统计排队耗时。
+     * 取帧和读取时间之间可能恰好有新帧替换，此时统计值有一帧之内的误差
+     */
+    private volatile long mailboxNanos;
+    private volatile long smoothedProcessingNanos;
+    private long lastAcceptedNanos;
+    private boolean hasAccepted;
+
+    private final AtomicLong offeredCount = new AtomicLong();
+    private final AtomicLong sampledOutCount = new AtomicLong();
+    private final AtomicLong replacedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param executor 执行消费者的线程池
+     * @param consumer 消费者
+     */
+    public LatestFrameDispatcher(Executor executor, FrameConsumer consumer) {
+        if (executor == null || consumer == null) {
+            throw new NullPointerException("executor and consumer must not be null");
+        }
+        this.executor = executor;
+        this.consumer = consumer;
+    }
+
+    /**
+     * 设置目标处理间隔，0表示不限制，只受处理耗时约束
+     *
+     * @param intervalMs 目标间隔，单位毫秒
+     */
+    public void setTargetIntervalMs(long intervalMs) {
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("interval must not be negative");
+        }
+        targetIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    /**
+     * 设置目标处理帧率，0表示不限制，只受处理耗时约束
+     *
+     * @param fps 目标帧率
+     */
+    public void setTargetFps(float fps) {
+        if (fps < 0) {
+            throw new IllegalArgumentException("fps must not be negative");
+        }
+        targetIntervalNanos = fps == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+    }
+
+    /**
+     * 设置耗时统计，记录帧在信箱中的等待时间
+     *
+     * @param metrics 耗时统计，为null时不统计
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 投递一帧，在生产者线程中调用，不会阻塞。
+     * 被采样选中的帧会增加一次引用，由分发器在处理后或被替换时释放
+     *
+     * @param frame 预览帧
+     * @return 是否被放入信箱
+     */
+    public boolean offer(YuvFrame frame) {
+        return offer(frame, System.nanoTime());
+    }
+
+    /**
+     * 在nowNanos投递的帧是否会被采样选中，不改变任何状态，在生产者线程中调用。
+     * 用于在投递前判断是否需要为该消费者准备帧
+     */
+    boolean isDue(long nowNanos) {
+        return !hasAccepted || nowNanos - lastAcceptedNanos >= getEffectiveIntervalNanos();
+    }
+
+    boolean offer(YuvFrame frame, long nowNanos) {
+        offeredCount.incrementAndGet();
+        if (!isDue(nowNanos)) {
+            sampledOutCount.incrementAndGet();
+            return false;
+        }
+        hasAccepted = true;
+        lastAcceptedNanos = nowNanos;
+        mailboxNanos = nowNanos;
+        YuvFrame stale = mailbox.getAndSet(frame.retain());
+        if (stale != null) {
+            replacedCount.incrementAndGet();
+            stale.release();
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            drainScheduled.set(false);
+            YuvFrame frame = mailbox.getAndSet(null);
+            if (frame != null) {
+                rejectedCount.incrementAndGet();
+                frame.release();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            long queuedNanos = mailboxNanos;
+            YuvFrame frame = mailbox.getAndSet(null);
+            if (frame == null) {
+                drainScheduled.set(false);
+                // 清除标记和投递之间可能有新帧进入信箱，此时由当前线程继续处理
+                if (mailbox.get() != null && drainScheduled.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            PipelineMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.record(PipelineMetrics.STAGE_QUEUE_WAIT, start - queuedNanos);
+            }
+            try {
+                consumer.onFrame(frame);
+            } finally {
+                frame.release();
+                deliveredCount.incrementAndGet();
+                updateProcessingTime(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void updateProcessingTime(long costNanos) {
+        long smoothed = smoothedProcessingNanos;
+        smoothedProcessingNanos = smoothed == 0 ? costNanos : smoothed + ((costNanos - smoothed) >> SMOOTHING_SHIFT);
+    }
+
+    /**
+     * 当前实际生效的采样间隔，单位纳秒
+     */
+    public long getEffectiveIntervalNanos() {
+        return Math.max(targetIntervalNanos, smoothedProcessingNanos);
+    }
+
+    /**
+     * 平滑后的单帧处理耗时，单位纳秒
+     */
+    public long getSmoothedProcessingNanos() {
+        return smoothedProcessingNanos;
+    }
+
+    /**
+     * 释放信箱中尚未处理的帧，关闭executor后调用
+     */
+    public void clear() {
+        YuvFrame frame = mailbox.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * 投递的总帧数
+     */
+    public long getOfferedCount() {
+        return offeredCount.get();
+    }
+
+    /**
+     * 因采样间隔未到而丢弃的帧数
+     */
+    public long getSampledOutCount() {
+        return sampledOutCount.get();
+    }
+
+    /**
+     * 在信箱中未被处理就被新帧替换的帧数
+     */
+    public long getReplacedCount() {
+        return replacedCount.get();
+    }
+
+    /**
+     * 因executor拒绝执行而丢弃的帧数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 丢弃的总帧数，包括采样丢弃、被替换和被拒绝的帧
+     */
+    public long getDroppedCount() {
+        return sampledOutCount.get() + replacedCount.get() + rejectedCount.get();
+    }
+
+    /**
+     * 交给消费者处理的帧数
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+}
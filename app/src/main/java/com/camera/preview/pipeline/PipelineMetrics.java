@@ -0,0 +1,129 @@
+package com.camera.preview.pipeline;
+
+/**
+ * 相机到UI各阶段的耗时统计，每个阶段一个{@link LatencyHistogram}。
+ * 记录只有一次原子自增和一次最大值比较，可在正式版本中常开。
+ */
+public class PipelineMetrics {
+    /**
+     * 从ImageReader获取Image
+     */
+    public static final int STAGE_ACQUIRE = 0;
+    /**
+     * 将Image的平面拷贝到帧池
+     */
+    public static final int STAGE_PLANE_COPY = 1;
+    /**
+     * 帧在分发器信箱中等待处理
+     */
+    public static final int STAGE_QUEUE_WAIT = 2;
+    /**
+     * 缩放、旋转和YUV转RGB
+     */
+    public static final int STAGE_CONVERT = 3;
+    /**
+     * 由ARGB像素创建Bitmap
+     */
+    public static final int STAGE_BITMAP = 4;
+    /**
+     * 从投递到UI线程到开始执行
+     */
+    public static final int STAGE_UI_POST = 5;
+    /**
+     * 从切换摄像头到收到新摄像头的第一帧
+     */
+    public static final int STAGE_CAMERA_SWITCH = 6;
+    /**
+     * 从传感器曝光到消费者处理完成，时间戳需换算到{@link System#nanoTime()}的时基
+     */
+    public static final int STAGE_END_TO_END = 7;
+    public static final int STAGE_COUNT = 8;
+
+    private static final String[] STAGE_NAMES = {
+            "acquire", "planeCopy", "queueWait", "convert", "bitmap", "uiPost", "cameraSwitch", "endToEnd"
+    };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+
+    public PipelineMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * 记录某个阶段的一次耗时
+     *
+     * @param stage 阶段，取值为{@link #STAGE_ACQUIRE}等
+     * @param nanos 耗时，单位纳秒
+     */
+    public void record(int stage, long nanos) {
+        histograms[stage].record(nanos);
+    }
+
+    /**
+     * 记录某个阶段从startNanos到当前的耗时
+     *
+     * @param stage      阶段
+     * @param startNanos 阶段开始时的{@link System#nanoTime()}
+     * @return 当前的{@link System#nanoTime()}，可作为下一阶段的开始时间
+     */
+    public long recordSince(int stage, long startNanos) {
+        long now = System.nanoTime();
+        histograms[stage].record(now - startNanos);
+        return now;
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * 生成所有阶段的快照
+     *
+     * @param out   输出的快照，长度至少为{@link #STAGE_COUNT}，元素为null时会创建
+     * @param reset 是否同时清空已记录的数据
+     */
+    public void snapshot(LatencyHistogram.Snapshot[] out, boolean reset) {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            if (out[i] == null) {
+                out[i] = new LatencyHistogram.Snapshot();
+            }
+            histograms[i].snapshot(out[i], reset);
+        }
+    }
+
+    /**
+     * 生成便于打印的统计信息，会分配内存，不要在每帧调用
+     *
+     * @param reset 是否同时清空已记录的数据
+     */
+    public String dump(boolean reset) {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[STAGE_COUNT];
+        snapshot(snapshots, reset);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            if (snapshots[i].count == 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(STAGE_NAMES[i]).append(": ").append(snapshots[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 清空所有阶段的数据
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.FrameTransform;
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvCropper;
+
+/**
+ * 从帧中提取多个感兴趣区域（ROI），每个区域只处理自身范围内的像素。
+ * 矩形以left、top、right、bottom四个int为一组连续存放，可以是帧坐标，
+ * 也可以是预览坐标（如ShowRectView中绘制的矩形），后者需要先设置{@link FrameTransform}。
+ * 提取时矩形会被限制在帧范围内并按色度对齐，对齐后为空的矩形会被跳过。
+ * 非线程安全，每个处理线程使用各自的实例。
+ */
+public class RoiExtractor {
+    /**
+     * 帧坐标，即传感器输出的原始图像坐标
+     */
+    public static final int COORDINATE_IMAGE = 0;
+    /**
+     * 预览坐标，即view中显示的坐标
+     */
+    public static final int COORDINATE_VIEW = 1;
+
+    private final int maxRoiCount;
+    private final int[] alignedRects;
+    private FrameTransform transform;
+
+    /**
+     * @param maxRoiCount 单帧最多提取的区域数
+     */
+    public RoiExtractor(int maxRoiCount) {
+        if (maxRoiCount <= 0) {
+            throw new IllegalArgumentException("maxRoiCount must be positive");
+        }
+        this.maxRoiCount = maxRoiCount;
+        alignedRects = new int[maxRoiCount * 4];
+    }
+
+    /**
+     * 设置预览坐标到帧坐标的变换，使用{@link #COORDINATE_VIEW}时需要设置
+     */
+    public void setTransform(FrameTransform transform) {
+        this.transform = transform;
+    }
+
+    /**
+     * 将各区域裁剪到紧凑的缓冲区中，缓冲区不够大时会重新分配并放回buffers，之后可重复使用
+     *
+     * @param frame       帧
+     * @param rects       矩形
+     * @param count       矩形个数
+     * @param coordinates 矩形的坐标系，{@link #COORDINATE_IMAGE}或{@link #COORDINATE_VIEW}
+     * @param dstFormat   目标格式，取值为{@link ImageUtil#FORMAT_NV21}、{@link ImageUtil#FORMAT_I420}、{@link ImageUtil#FORMAT_GRAY}等
+     * @param buffers     输出缓冲区，长度至少为maxRoiCount，第i个非空区域写入buffers[i]
+     * @return 提取的区域数，各区域在帧坐标中的位置通过{@link #getRects()}获取
+     */
+    public int extract(YuvFrame frame, int[] rects, int count, int coordinates, int dstFormat, byte[][] buffers) {
+        int roiCount = prepare(frame, rects, count, coordinates);
+        for (int i = 0; i < roiCount; i++) {
+            int offset = i * 4;
+            int cropWidth = alignedRects[offset + 2] - alignedRects[offset];
+            int cropHeight = alignedRects[offset + 3] - alignedRects[offset + 1];
+            int size = ImageUtil.getBufferSize(dstFormat, cropWidth, cropHeight);
+            if (buffers[i] == null || buffers[i].length < size) {
+                buffers[i] = new byte[size];
+            }
+            YuvCropper.crop(frame.getData(), frame.getFormat(), frame.getWidth(), frame.getHeight(),
+                    alignedRects[offset], alignedRects[offset + 1], cropWidth, cropHeight, buffers[i], dstFormat);
+        }
+        return roiCount;
+    }
+
+    /**
+     * 将各区域裁剪并缩放到帧池指定的固定尺寸和格式
+     *
+     * @param frame       帧
+     * @param rects       矩形
+     * @param count       矩形个数
+     * @param coordinates 矩形的坐标系，{@link #COORDINATE_IMAGE}或{@link #COORDINATE_VIEW}
+     * @param pool        目标帧池
+     * @param out         输出的帧，引用计数为1，使用完毕后需要释放
+     * @return 提取的区域数，帧池耗尽时会少于非空区域数
+     */
+    public int extractScaled(YuvFrame frame, int[] rects, int count, int coordinates, FramePool pool, YuvFrame[] out) {
+        int roiCount = prepare(frame, rects, count, coordinates);
+        for (int i = 0; i < roiCount; i++) {
+            YuvFrame roi = pool.acquire();
+            if (roi == null) {
+                return i;
+            }
+            int offset = i * 4;
+            YuvCropper.cropAndScale(frame.getData(), frame.getFormat(), frame.getWidth(), frame.getHeight(),
+                    alignedRects[offset], alignedRects[offset + 1],
+                    alignedRects[offset + 2] - alignedRects[offset], alignedRects[offset + 3] - alignedRects[offset + 1],
+                    roi.getData(), roi.getFormat(), roi.getWidth(), roi.getHeight());
+            roi.copyFrameInfo(frame);
+            out[i] = roi;
+        }
+        return roiCount;
+    }
+
+    /**
+     * 最近一次提取的各区域在帧坐标中对齐后的矩形
+     */
+    public int[] getRects() {
+        return alignedRects;
+    }
+
+    private int prepare(YuvFrame frame, int[] rects, int count, int coordinates) {
+        if (count > maxRoiCount) {
+            throw new IllegalArgumentException("at most " + maxRoiCount + " rects are supported, now " + count);
+        }
+        if (coordinates == COORDINATE_VIEW) {
+            if (transform == null) {
+                throw new IllegalStateException("transform must be set for view coordinates");
+            }
+            transform.mapViewRectsToImage(rects, alignedRects, count);
+        } else {
+            System.arraycopy(rects, 0, alignedRects, 0, count * 4);
+        }
+        int roiCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (YuvCropper.alignRect(alignedRects, i, frame.getWidth(), frame.getHeight())) {
+                if (roiCount != i) {
+                    System.arraycopy(alignedRects, i * 4, alignedRects, roiCount * 4, 4);
+                }
+                roiCount++;
+            }
+        }
+        return roiCount;
+    }
+}
@@ -0,0 +1,342 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 将连续的预览帧写入Y4M或裸I420文件，用于离线分析。
+ * 帧先被转换到预先分配的缓冲区，再由独立的I/O线程通过FileChannel的聚集写入一次写出所有待写的帧。
+ * 缓冲区数量固定（默认双缓冲），全部被占用时丢弃新帧并计数，{@link #write(YuvFrame)}永远不会阻塞相机线程。
+ * 缓冲区为直接内存，FileChannel写入时不需要再拷贝到临时的直接缓冲区；
+ * 帧先转换到复用的暂存数组，再一次性放入缓冲区，因此write需要在同一个线程中调用。
+ */
+public class SequenceWriter {
+    /**
+     * Y4M格式，包含文件头和每帧的帧头
+     */
+    public static final int CONTAINER_Y4M = 0;
+    /**
+     * 无文件头的裸I420数据
+     */
+    public static final int CONTAINER_RAW = 1;
+
+    private static final byte[] Y4M_FRAME_HEADER = {'F', 'R', 'A', 'M', 'E', '\n'};
+
+    /**
+     * 一帧的缓冲区
+     */
+    private static class Slot {
+        final ByteBuffer dataBuffer;
+        final ByteBuffer headerBuffer;
+
+        Slot(int frameSize, boolean y4m) {
+            dataBuffer = ByteBuffer.allocateDirect(frameSize);
+            if (y4m) {
+                headerBuffer = ByteBuffer.allocateDirect(Y4M_FRAME_HEADER.length);
+                headerBuffer.put(Y4M_FRAME_HEADER);
+                headerBuffer.clear();
+            } else {
+                headerBuffer = null;
+            }
+        }
+
+        void fill(byte[] data) {
+            dataBuffer.clear();
+            dataBuffer.put(data);
+            dataBuffer.flip();
+        }
+
+        void rewind() {
+            dataBuffer.clear();
+            if (headerBuffer != null) {
+                headerBuffer.clear();
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final boolean y4m;
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    /**
+     * 转换帧的暂存数组，只在调用write的线程中使用
+     */
+    private final byte[] staging;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private final ArrayBlockingQueue<Slot> filledSlots;
+    /**
+     * 只在I/O线程中使用，预先分配避免每次写入分配内存
+     */
+    private final ArrayList<Slot> writingSlots;
+    private final ByteBuffer[] gatherBuffers;
+    private final Slot closeSignal = new Slot(0, false);
+    private final Thread ioThread;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private volatile IOException error;
+    private volatile boolean closed;
+
+    private SequenceWriter(Builder builder) throws IOException {
+        width = builder.width;
+        height = builder.height;
+        y4m = builder.container == CONTAINER_Y4M;
+        int frameSize = ImageUtil.getYuv420Size(width, height);
+        staging = new byte[frameSize];
+        freeSlots = new ArrayBlockingQueue<>(builder.bufferCount);
+        filledSlots = new ArrayBlockingQueue<>(builder.bufferCount + 1);
+        writingSlots = new ArrayList<>(builder.bufferCount + 1);
+        gatherBuffers = new ByteBuffer[builder.bufferCount * 2];
+        for (int i = 0; i < builder.bufferCount; i++) {
+            freeSlots.add(new Slot(frameSize, y4m));
+        }
+        output = new FileOutputStream(builder.file);
+        channel = output.getChannel();
+        if (y4m) {
+            int fpsMillis = Math.round(builder.fps * 1000);
+            String header = "YUV4MPEG2 W" + width + " H" + height + " F" + fpsMillis + ":1000 Ip A1:1 C420jpeg\n";
+            try {
+                writeFully(new ByteBuffer[]{ByteBuffer.wrap(header.getBytes("US-ASCII"))}, 1);
+            } catch (IOException e) {
+                output.close();
+                throw e;
+            }
+        }
+        ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ioLoop();
+            }
+        }, "SequenceWriter");
+        ioThread.start();
+    }
+
+    /**
+     * 写入一帧紧凑排列的帧，转换为I420后交给I/O线程，不会阻塞
+     *
+     * @return 是否被接收，缓冲区已满、已关闭或发生I/O错误时返回false并计为丢帧
+     * @throws IllegalArgumentException 帧尺寸不一致，或帧为没有色度的{@link ImageUtil#FORMAT_GRAY}
+     */
+    public boolean write(YuvFrame frame) {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IllegalArgumentException("frame size " + frame.getWidth() + "x" + frame.getHeight()
+                    + " does not match " + width + "x" + height);
+        }
+        if (frame.getFormat() == ImageUtil.FORMAT_GRAY) {
+            throw new IllegalArgumentException("gray frames have no chroma and can not be written as I420");
+        }
+        Slot slot = acquireSlot();
+        if (slot == null) {
+            return false;
+        }
+        ImageUtil.convertYuv420(frame.getData(), frame.getFormat(), staging, ImageUtil.FORMAT_I420, width, height);
+        slot.fill(staging);
+        filledSlots.offer(slot);
+        return true;
+    }
+
+    /**
+     * 写入一帧YUV_420_888平面，在回调期间调用
+     *
+     * @see #write(YuvFrame)
+     */
+    public boolean write(YuvPlanes planes) {
+        if (planes.getWidth() != width || planes.getHeight() != height) {
+            throw new IllegalArgumentException("frame size " + planes.getWidth() + "x" + planes.getHeight()
+                    + " does not match " + width + "x" + height);
+        }
+        Slot slot = acquireSlot();
+        if (slot == null) {
+            return false;
+        }
+        planes.copyTo(staging, ImageUtil.FORMAT_I420);
+        slot.fill(staging);
+        filledSlots.offer(slot);
+        return true;
+    }
+
+    private Slot acquireSlot() {
+        Slot slot = closed || error != null ? null : freeSlots.poll();
+        if (slot == null) {
+            droppedCount.incrementAndGet();
+        }
+        return slot;
+    }
+
+    private void ioLoop() {
+        try {
+            while (true) {
+                Slot first = filledSlots.take();
+                if (first == closeSignal) {
+                    return;
+                }
+                writingSlots.add(first);
+                filledSlots.drainTo(writingSlots);
+                boolean closing = writingSlots.remove(closeSignal);
+                int count = 0;
+                for (int i = 0; i < writingSlots.size(); i++) {
+                    Slot slot = writingSlots.get(i);
+                    if (slot.headerBuffer != null) {
+                        gatherBuffers[count++] = slot.headerBuffer;
+                    }
+                    gatherBuffers[count++] = slot.dataBuffer;
+                }
+                try {
+                    if (error == null) {
+                        writeFully(gatherBuffers, count);
+                        writtenCount.addAndGet(writingSlots.size());
+                    }
+                } catch (IOException e) {
+                    error = e;
+                }
+                for (int i = 0; i < writingSlots.size(); i++) {
+                    Slot slot = writingSlots.get(i);
+                    slot.rewind();
+                    freeSlots.offer(slot);
+                }
+                writingSlots.clear();
+                if (closing) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeFully(ByteBuffer[] buffers, int count) throws IOException {
+        long remaining = 0;
+        for (int i = 0; i < count; i++) {
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            long written = channel.write(buffers, 0, count);
+            remaining -= written;
+            writtenBytes.addAndGet(written);
+        }
+    }
+
+    /**
+     * 写完已接收的帧后关闭文件
+     *
+     * @throws IOException I/O线程写入时发生的错误
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            filledSlots.put(closeSignal);
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+            output.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 已写入文件的帧数
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * 因缓冲区已满等原因丢弃的帧数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 已写入文件的字节数，包括文件头和帧头
+     */
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public static final class Builder {
+        private File file;
+        private int width;
+        private int height;
+        /**
+         * 文件格式，默认为Y4M
+         */
+        private int container = CONTAINER_Y4M;
+        /**
+         * 写入Y4M文件头的帧率
+         */
+        private float fps = 30;
+        /**
+         * 缓冲区数量，默认双缓冲
+         */
+        private int bufferCount = 2;
+
+        public Builder() {
+        }
+
+        public Builder file(File val) {
+            file = val;
+            return this;
+        }
+
+        public Builder size(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder container(int val) {
+            container = val;
+            return this;
+        }
+
+        public Builder fps(float val) {
+            fps = val;
+            return this;
+        }
+
+        public Builder bufferCount(int val) {
+            bufferCount = val;
+            return this;
+        }
+
+        /**
+         * 创建文件并启动I/O线程
+         */
+        public SequenceWriter build() throws IOException {
+            if (file == null) {
+                throw new NullPointerException("file must be set");
+            }
+            if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+                throw new IllegalArgumentException("size must be positive and even, now " + width + "x" + height);
+            }
+            if (bufferCount <= 0) {
+                throw new IllegalArgumentException("bufferCount must be positive");
+            }
+            if (container != CONTAINER_Y4M && container != CONTAINER_RAW) {
+                throw new IllegalArgumentException("unsupported container " + container);
+            }
+            if (fps <= 0) {
+                throw new IllegalArgumentException("fps must be positive");
+            }
+            return new SequenceWriter(this);
+        }
+    }
+}
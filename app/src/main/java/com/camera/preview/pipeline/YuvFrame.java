@@ -0,0 +1,177 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 池化的预览帧，数据为紧凑排列（无padding）的YUV420或灰度数据。
+ * 帧通过引用计数管理生命周期：从{@link FramePool#acquire()}获取时计数为1，
+ * 需要跨线程持有时调用{@link #retain()}，用完后调用{@link #release()}，计数归零时自动回到帧池。
+ * 计数归零后不能再访问数据，否则可能读到下一帧的内容。
+ */
+public class YuvFrame {
+    private final FramePool pool;
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final int format;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private long timestamp;
+    private long sequence;
+    private boolean hasCaptureInfo;
+    private long exposureTime;
+    private int sensitivity;
+    private long frameDuration;
+
+    YuvFrame(FramePool pool, int width, int height, int format) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.data = new byte[ImageUtil.getBufferSize(format, width, height)];
+    }
+
+    /**
+     * 帧数据，格式见{@link #getFormat()}
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 数据格式，取值为{@link ImageUtil#FORMAT_NV21}等
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * 传感器时间戳，单位纳秒
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 帧序号，由生产者递增
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 由生产者在填充数据后设置帧信息
+     */
+    public void setFrameInfo(long timestamp, long sequence) {
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+    }
+
+    /**
+     * 是否已附加拍摄参数，对应的拍摄结果未及时到达时为false
+     */
+    public boolean hasCaptureInfo() {
+        return hasCaptureInfo;
+    }
+
+    /**
+     * 曝光时间，单位纳秒，未知时为0
+     */
+    public long getExposureTime() {
+        return exposureTime;
+    }
+
+    /**
+     * 感光度（ISO），未知时为0
+     */
+    public int getSensitivity() {
+        return sensitivity;
+    }
+
+    /**
+     * 帧间隔，单位纳秒，未知时为0
+     */
+    public long getFrameDuration() {
+        return frameDuration;
+    }
+
+    /**
+     * 由生产者附加与该帧对应的拍摄参数
+     *
+     * @param exposureTime  曝光时间，单位纳秒
+     * @param sensitivity   感光度
+     * @param frameDuration 帧间隔，单位纳秒
+     */
+    public void setCaptureInfo(long exposureTime, int sensitivity, long frameDuration) {
+        this.exposureTime = exposureTime;
+        this.sensitivity = sensitivity;
+        this.frameDuration = frameDuration;
+        hasCaptureInfo = true;
+    }
+
+    /**
+     * 拷贝src的时间戳、序号和拍摄参数，用于由src派生出的帧
+     */
+    void copyFrameInfo(YuvFrame src) {
+        timestamp = src.timestamp;
+        sequence = src.sequence;
+        hasCaptureInfo = src.hasCaptureInfo;
+        exposureTime = src.exposureTime;
+        sensitivity = src.sensitivity;
+        frameDuration = src.frameDuration;
+    }
+
+    /**
+     * 增加一次引用，需要与{@link #release()}成对调用
+     *
+     * @return 当前帧
+     */
+    public YuvFrame retain() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("frame has already been released");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 释放一次引用，计数归零时回到帧池
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("frame has already been released");
+        }
+    }
+
+    /**
+     * 当前引用计数
+     */
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    void onAcquire() {
+        hasCaptureInfo = false;
+        exposureTime = 0;
+        sensitivity = 0;
+        frameDuration = 0;
+        refCount.set(1);
+    }
+}
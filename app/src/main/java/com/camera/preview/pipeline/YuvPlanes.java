@@ -0,0 +1,140 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888三个平面，不拷贝数据。
+ * 由生产者复用同一个实例，只在回调期间有效，回调结束后buffer会被清空，
+ * 需要保留数据时调用{@link #copyTo(byte[], int)}或使用{@link YuvFrame}。
+ * <p>
+ * 为了每帧不分配内存，{@link #getY()}等直接返回相机的平面buffer而不是只读视图：使用者不能写入数据；
+ * 可以移动position和limit，{@link #clear()}和{@link #copyTo(byte[], int)}会恢复为设置时的读取范围
+ */
+public class YuvPlanes {
+    private ByteBuffer y;
+    private ByteBuffer u;
+    private ByteBuffer v;
+    /**
+     * 设置时各平面的读取范围
+     */
+    private int yPosition;
+    private int yLimit;
+    private int uPosition;
+    private int uLimit;
+    private int vPosition;
+    private int vLimit;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+    private int width;
+    private int height;
+    private long timestamp;
+
+    /**
+     * 由生产者设置当前帧的平面
+     */
+    public void set(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                    int width, int height, long timestamp) {
+        this.y = y;
+        this.u = u;
+        this.v = v;
+        yPosition = y.position();
+        yLimit = y.limit();
+        uPosition = u.position();
+        uLimit = u.limit();
+        vPosition = v.position();
+        vLimit = v.limit();
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 按设置时的范围恢复平面的读取范围，先放开limit再设置position
+     */
+    private void restore() {
+        y.limit(yLimit);
+        y.position(yPosition);
+        u.limit(uLimit);
+        u.position(uPosition);
+        v.limit(vLimit);
+        v.position(vPosition);
+    }
+
+    /**
+     * 回调结束后由生产者调用，恢复平面的读取范围，供生产者继续拷贝，并避免继续访问已被回收的平面
+     */
+    public void clear() {
+        if (y != null) {
+            restore();
+        }
+        y = u = v = null;
+    }
+
+    /**
+     * 将平面数据转换为紧凑排列的YUV420，按设置时的读取范围转换
+     *
+     * @param dst    生成的数据，长度至少为{@link ImageUtil#getYuv420Size(int, int)}
+     * @param format 目标格式，取值为{@link ImageUtil#FORMAT_NV21}等
+     */
+    public void copyTo(byte[] dst, int format) {
+        if (y == null) {
+            throw new IllegalStateException("planes are only valid during the callback");
+        }
+        restore();
+        ImageUtil.yuv420888ToYuv420(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, dst, format);
+    }
+
+    /**
+     * Y平面，不能写入
+     */
+    public ByteBuffer getY() {
+        return y;
+    }
+
+    /**
+     * U平面，不能写入
+     */
+    public ByteBuffer getU() {
+        return u;
+    }
+
+    /**
+     * V平面，不能写入
+     */
+    public ByteBuffer getV() {
+        return v;
+    }
+
+    public int getYRowStride() {
+        return yRowStride;
+    }
+
+    public int getUvRowStride() {
+        return uvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return uvPixelStride;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 传感器时间戳，单位纳秒
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
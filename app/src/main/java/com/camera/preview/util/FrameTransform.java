@@ -0,0 +1,194 @@
+package com.camera.preview.util;
+
+/**
+ * 帧坐标（传感器输出的原始图像坐标）与预览坐标（view中显示的坐标）之间的变换。
+ * 原始图像先顺时针旋转，再水平镜像，最后缩放到view，缩放方式与Camera2Helper.configureTransform一致：
+ * 屏幕旋转90或270度时等比缩放并居中裁剪铺满view，否则按TextureView的默认行为拉伸铺满view。
+ * 变换在构造时预先计算，映射时不分配内存。
+ * 矩形以left、top、right、bottom四个int为一组连续存放。
+ */
+public class FrameTransform {
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int viewWidth;
+    private final int viewHeight;
+    /**
+     * 帧坐标到预览坐标：viewX = a * x + b * y + tx，viewY = c * x + d * y + ty
+     */
+    private final float a;
+    private final float b;
+    private final float c;
+    private final float d;
+    private final float tx;
+    private final float ty;
+    /**
+     * 预览坐标到帧坐标的逆变换
+     */
+    private final float ia;
+    private final float ib;
+    private final float ic;
+    private final float id;
+    private final float itx;
+    private final float ity;
+
+    /**
+     * @param imageWidth  帧宽度
+     * @param imageHeight 帧高度
+     * @param viewWidth   预览view宽度
+     * @param viewHeight  预览view高度
+     * @param degrees     帧显示时需要顺时针旋转的角度，取值为0、90、180、270
+     * @param mirror      旋转后是否水平镜像
+     * @param displayDegrees 屏幕相对自然方向的旋转角度，取值为0、90、180、270
+     */
+    public FrameTransform(int imageWidth, int imageHeight, int viewWidth, int viewHeight, int degrees, boolean mirror,
+                          int displayDegrees) {
+        if (degrees != 0 && degrees != 90 && degrees != 180 && degrees != 270) {
+            throw new IllegalArgumentException("degrees must be 0, 90, 180 or 270, now " + degrees);
+        }
+        if (displayDegrees != 0 && displayDegrees != 90 && displayDegrees != 180 && displayDegrees != 270) {
+            throw new IllegalArgumentException("displayDegrees must be 0, 90, 180 or 270, now " + displayDegrees);
+        }
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        boolean swap = degrees % 180 != 0;
+        int rotatedWidth = swap ? imageHeight : imageWidth;
+        int rotatedHeight = swap ? imageWidth : imageHeight;
+        // 旋转：rx = ra * x + rb * y + rtx，ry = rc * x + rd * y + rty
+        float ra;
+        float rb;
+        float rc;
+        float rd;
+        float rtx;
+        float rty;
+        switch (degrees) {
+            case 90:
+                ra = 0;
+                rb = -1;
+                rtx = imageHeight;
+                rc = 1;
+                rd = 0;
+                rty = 0;
+                break;
+            case 180:
+                ra = -1;
+                rb = 0;
+                rtx = imageWidth;
+                rc = 0;
+                rd = -1;
+                rty = imageHeight;
+                break;
+            case 270:
+                ra = 0;
+                rb = 1;
+                rtx = 0;
+                rc = -1;
+                rd = 0;
+                rty = imageWidth;
+                break;
+            default:
+                ra = 1;
+                rb = 0;
+                rtx = 0;
+                rc = 0;
+                rd = 1;
+                rty = 0;
+                break;
+        }
+        if (mirror) {
+            ra = -ra;
+            rb = -rb;
+            rtx = rotatedWidth - rtx;
+        }
+        float scaleX = (float) viewWidth / rotatedWidth;
+        float scaleY = (float) viewHeight / rotatedHeight;
+        if (displayDegrees % 180 != 0) {
+            // 横屏时configureTransform先抵消拉伸，再按较大的比例等比缩放
+            scaleX = scaleY = Math.max(scaleX, scaleY);
+        }
+        float offsetX = (viewWidth - rotatedWidth * scaleX) / 2;
+        float offsetY = (viewHeight - rotatedHeight * scaleY) / 2;
+        a = ra * scaleX;
+        b = rb * scaleX;
+        c = rc * scaleY;
+        d = rd * scaleY;
+        tx = rtx * scaleX + offsetX;
+        ty = rty * scaleY + offsetY;
+
+        float det = a * d - b * c;
+        ia = d / det;
+        ib = -b / det;
+        ic = -c / det;
+        id = a / det;
+        itx = -(ia * tx + ib * ty);
+        ity = -(ic * tx + id * ty);
+    }
+
+    /**
+     * 将帧坐标中的矩形映射到预览坐标
+     *
+     * @param src   帧坐标中的矩形
+     * @param dst   预览坐标中的矩形，可以与src为同一数组
+     * @param count 矩形个数
+     */
+    public void mapImageRectsToView(int[] src, int[] dst, int count) {
+        mapRects(src, dst, count, a, b, c, d, tx, ty);
+    }
+
+    /**
+     * 将预览坐标中的矩形映射到帧坐标，结果会被限制在帧范围内
+     *
+     * @param src   预览坐标中的矩形
+     * @param dst   帧坐标中的矩形，可以与src为同一数组
+     * @param count 矩形个数
+     */
+    public void mapViewRectsToImage(int[] src, int[] dst, int count) {
+        mapRects(src, dst, count, ia, ib, ic, id, itx, ity);
+        for (int i = 0; i < count * 4; i += 4) {
+            dst[i] = clamp(dst[i], imageWidth);
+            dst[i + 1] = clamp(dst[i + 1], imageHeight);
+            dst[i + 2] = clamp(dst[i + 2], imageWidth);
+            dst[i + 3] = clamp(dst[i + 3], imageHeight);
+        }
+    }
+
+    private static void mapRects(int[] src, int[] dst, int count,
+                                 float a, float b, float c, float d, float tx, float ty) {
+        for (int i = 0; i < count * 4; i += 4) {
+            int left = src[i];
+            int top = src[i + 1];
+            int right = src[i + 2];
+            int bottom = src[i + 3];
+            // 旋转90度的整数倍后，对角的两个点仍然是矩形的对角
+            float x0 = a * left + b * top + tx;
+            float y0 = c * left + d * top + ty;
+            float x1 = a * right + b * bottom + tx;
+            float y1 = c * right + d * bottom + ty;
+            dst[i] = Math.round(Math.min(x0, x1));
+            dst[i + 1] = Math.round(Math.min(y0, y1));
+            dst[i + 2] = Math.round(Math.max(x0, x1));
+            dst[i + 3] = Math.round(Math.max(y0, y1));
+        }
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public int getViewWidth() {
+        return viewWidth;
+    }
+
+    public int getViewHeight() {
+        return viewHeight;
+    }
+}
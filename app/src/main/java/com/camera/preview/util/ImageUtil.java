@@ -1,6 +1,519 @@
 package com.camera.preview.util;
 
+import java.nio.ByteBuffer;
+
 public class ImageUtil {
+    /**
+     * NV21：Y平面 + VU交错平面
+     */
+    public static final int FORMAT_NV21 = 0;
+    /**
+     * NV12：Y平面 + UV交错平面
+     */
+    public static final int FORMAT_NV12 = 1;
+    /**
+     * I420：Y平面 + U平面 + V平面
+     */
+    public static final int FORMAT_I420 = 2;
+    /**
+     * YV12：Y平面 + V平面 + U平面
+     */
+    public static final int FORMAT_YV12 = 3;
+    /**
+     * 只有Y平面的灰度数据
+     */
+    public static final int FORMAT_GRAY = 4;
+
+    /**
+     * 获取紧凑排列（无padding）的YUV420数据长度
+     *
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @return 数据长度
+     */
+    public static int getYuv420Size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 获取指定格式紧凑排列数据的长度
+     *
+     * @param format 数据格式，取值为{@link #FORMAT_NV21}等
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @return 数据长度
+     */
+    public static int getBufferSize(int format, int width, int height) {
+        return format == FORMAT_GRAY ? width * height : getYuv420Size(width, height);
+    }
+
+    /**
+     * 将YUV_420_888的三个平面转换为nv21
+     *
+     * @see #yuv420888ToYuv420(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[], int)
+     */
+    public static void yuv420888ToNv21(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                                       int width, int height, byte[] nv21) {
+        yuv420888ToYuv420(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, nv21, FORMAT_NV21);
+    }
+
+    /**
+     * 将YUV_420_888的三个平面转换为nv12
+     *
+     * @see #yuv420888ToYuv420(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[], int)
+     */
+    public static void yuv420888ToNv12(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                                       int width, int height, byte[] nv12) {
+        yuv420888ToYuv420(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, nv12, FORMAT_NV12);
+    }
+
+    /**
+     * 将YUV_420_888的三个平面转换为i420
+     *
+     * @see #yuv420888ToYuv420(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[], int)
+     */
+    public static void yuv420888ToI420(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                                       int width, int height, byte[] i420) {
+        yuv420888ToYuv420(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, i420, FORMAT_I420);
+    }
+
+    /**
+     * 将YUV_420_888的三个平面转换为yv12
+     *
+     * @see #yuv420888ToYuv420(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[], int)
+     */
+    public static void yuv420888ToYv12(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                                       int width, int height, byte[] yv12) {
+        yuv420888ToYuv420(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, yv12, FORMAT_YV12);
+    }
+
+    /**
+     * 将YUV_420_888的三个平面转换为紧凑排列的YUV420数据，会跳过每行stride和width之间的padding。
+     * 若U、V平面是同一块交错内存（pixelStride为2的常见半平面布局），且目标格式与内存顺序一致，则按块整体拷贝。
+     * 各buffer的position会被用作平面起点，调用结束后position保持不变。
+     *
+     * @param y             Y 平面
+     * @param yRowStride    Y 平面的行步长
+     * @param u             U 平面
+     * @param v             V 平面
+     * @param uvRowStride   U、V 平面的行步长
+     * @param uvPixelStride U、V 平面的像素步长
+     * @param width         图像宽度，需为偶数
+     * @param height        图像高度，需为偶数
+     * @param dst           生成的数据，需要预先分配内存，长度至少为{@link #getBufferSize(int, int, int)}
+     * @param dstFormat     目标格式，{@link #FORMAT_NV21}、{@link #FORMAT_NV12}、{@link #FORMAT_I420}、{@link #FORMAT_YV12}，
+     *                      或只拷贝Y平面的{@link #FORMAT_GRAY}
+     */
+    public static void yuv420888ToYuv420(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                                         int width, int height, byte[] dst, int dstFormat) {
+        if (dstFormat == FORMAT_GRAY) {
+            if (width <= 0 || height <= 0 || dst.length < width * height) {
+                throw new IllegalArgumentException("invalid size " + width + "x" + height + " or buffer is too small");
+            }
+            copyPlane(y, yRowStride, width, height, dst, 0);
+            return;
+        }
+        checkSize(width, height, dst);
+        copyPlane(y, yRowStride, width, height, dst, 0);
+
+        int frameSize = width * height;
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        if (uvPixelStride == 2 && (dstFormat == FORMAT_NV21 || dstFormat == FORMAT_NV12)) {
+            // 常见的半平面布局，U、V两个buffer指向同一块交错内存，只是起点相差一个字节。
+            // 只需确认目标顺序下first之后的字节就是second，另一顺序是否也成立（如色度整行相同时）不影响结果
+            if (dstFormat == FORMAT_NV21 && isInterleaved(v, u, uvRowStride, chromaWidth, chromaHeight)) {
+                copyInterleaved(v, u, uvRowStride, width, chromaHeight, dst, frameSize);
+                return;
+            }
+            if (dstFormat == FORMAT_NV12 && isInterleaved(u, v, uvRowStride, chromaWidth, chromaHeight)) {
+                copyInterleaved(u, v, uvRowStride, width, chromaHeight, dst, frameSize);
+                return;
+            }
+        }
+        copyChroma(u, uvRowStride, uvPixelStride, chromaWidth, chromaHeight,
+                dst, getUOffset(dstFormat, width, height), getChromaPixelStride(dstFormat));
+        copyChroma(v, uvRowStride, uvPixelStride, chromaWidth, chromaHeight,
+                dst, getVOffset(dstFormat, width, height), getChromaPixelStride(dstFormat));
+    }
+
+    /**
+     * 将YUV_420_888三个平面的拷贝数据转换为紧凑排列的YUV420数据
+     *
+     * @see #yuv420888ToYuv420(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[], int)
+     */
+    public static void yuv420888ToYuv420(byte[] y, int yRowStride, byte[] u, byte[] v, int uvRowStride, int uvPixelStride,
+                                         int width, int height, byte[] dst, int dstFormat) {
+        yuv420888ToYuv420(ByteBuffer.wrap(y), yRowStride, ByteBuffer.wrap(u), ByteBuffer.wrap(v), uvRowStride, uvPixelStride,
+                width, height, dst, dstFormat);
+    }
+
+    /**
+     * 在紧凑排列的YUV420格式之间转换，除NV21和NV12互转外src和dst不能为同一数组
+     *
+     * @param src       原数据
+     * @param srcFormat 原格式
+     * @param dst       生成的数据，需要预先分配内存
+     * @param dstFormat 目标格式
+     * @param width     图像宽度，需为偶数
+     * @param height    图像高度，需为偶数
+     */
+    public static void convertYuv420(byte[] src, int srcFormat, byte[] dst, int dstFormat, int width, int height) {
+        checkSize(width, height, src);
+        checkSize(width, height, dst);
+        int frameSize = width * height;
+        int chromaSize = frameSize / 4;
+        boolean srcPlanar = isPlanar(srcFormat);
+        boolean dstPlanar = isPlanar(dstFormat);
+        if (src == dst && srcFormat != dstFormat && (srcPlanar || dstPlanar)) {
+            throw new IllegalArgumentException("in-place conversion is only supported between NV21 and NV12");
+        }
+        if (src != dst) {
+            System.arraycopy(src, 0, dst, 0, frameSize);
+        }
+        if (srcFormat == dstFormat) {
+            if (src != dst) {
+                System.arraycopy(src, frameSize, dst, frameSize, chromaSize * 2);
+            }
+            return;
+        }
+        int srcU = getUOffset(srcFormat, width, height);
+        int srcV = getVOffset(srcFormat, width, height);
+        int dstU = getUOffset(dstFormat, width, height);
+        int dstV = getVOffset(dstFormat, width, height);
+        if (srcPlanar && dstPlanar) {
+            System.arraycopy(src, srcU, dst, dstU, chromaSize);
+            System.arraycopy(src, srcV, dst, dstV, chromaSize);
+            return;
+        }
+        if (!srcPlanar && !dstPlanar) {
+            // NV21和NV12互转，交换相邻的两个字节，支持原地转换
+            int end = frameSize + chromaSize * 2;
+            for (int i = frameSize; i < end; i += 2) {
+                byte first = src[i];
+                dst[i] = src[i + 1];
+                dst[i + 1] = first;
+            }
+            return;
+        }
+        int srcPixelStride = getChromaPixelStride(srcFormat);
+        int dstPixelStride = getChromaPixelStride(dstFormat);
+        for (int i = 0; i < chromaSize; i++) {
+            dst[dstU + i * dstPixelStride] = src[srcU + i * srcPixelStride];
+            dst[dstV + i * dstPixelStride] = src[srcV + i * srcPixelStride];
+        }
+    }
+
+    /**
+     * nv21转换为i420
+     */
+    public static void nv21ToI420(byte[] nv21, byte[] i420, int width, int height) {
+        convertYuv420(nv21, FORMAT_NV21, i420, FORMAT_I420, width, height);
+    }
+
+    /**
+     * i420转换为nv21
+     */
+    public static void i420ToNv21(byte[] i420, byte[] nv21, int width, int height) {
+        convertYuv420(i420, FORMAT_I420, nv21, FORMAT_NV21, width, height);
+    }
+
+    /**
+     * nv21转换为nv12，可原地转换
+     */
+    public static void nv21ToNv12(byte[] nv21, byte[] nv12, int width, int height) {
+        convertYuv420(nv21, FORMAT_NV21, nv12, FORMAT_NV12, width, height);
+    }
+
+    /**
+     * nv12转换为nv21，可原地转换
+     */
+    public static void nv12ToNv21(byte[] nv12, byte[] nv21, int width, int height) {
+        convertYuv420(nv12, FORMAT_NV12, nv21, FORMAT_NV21, width, height);
+    }
+
+    /**
+     * 旋转时分块的边长，使读写都尽量落在缓存中
+     */
+    private static final int ROTATE_BLOCK_SIZE = 32;
+
+    /**
+     * 将紧凑排列的YUV420数据顺时针旋转并可选水平镜像，旋转和镜像在一次分块遍历中完成。
+     * 镜像在旋转之后进行，与Matrix先postRotate再postScale(-1, 1)的效果一致。
+     * 旋转90或270度时，生成数据的宽高互换
+     *
+     * @param src     原数据
+     * @param dst     生成的数据，需要预先分配内存，不能与src为同一数组
+     * @param format  数据格式，src和dst相同，取值为{@link #FORMAT_NV21}等
+     * @param width   原图像宽度，需为偶数
+     * @param height  原图像高度，需为偶数
+     * @param degrees 顺时针旋转角度，取值为0、90、180、270
+     * @param mirror  是否水平镜像
+     */
+    public static void rotateYuv420(byte[] src, byte[] dst, int format, int width, int height, int degrees, boolean mirror) {
+        checkSize(width, height, src);
+        checkSize(width, height, dst);
+        if (src == dst) {
+            throw new IllegalArgumentException("in-place rotation is not supported");
+        }
+        if (degrees != 0 && degrees != 90 && degrees != 180 && degrees != 270) {
+            throw new IllegalArgumentException("degrees must be 0, 90, 180 or 270, now " + degrees);
+        }
+        int frameSize = width * height;
+        rotatePlane(src, 0, width, height, 1, dst, 0, degrees, mirror);
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        if (isPlanar(format)) {
+            boolean swap = degrees % 180 != 0;
+            int dstWidth = swap ? height : width;
+            int dstHeight = swap ? width : height;
+            rotatePlane(src, getUOffset(format, width, height), chromaWidth, chromaHeight, 1,
+                    dst, getUOffset(format, dstWidth, dstHeight), degrees, mirror);
+            rotatePlane(src, getVOffset(format, width, height), chromaWidth, chromaHeight, 1,
+                    dst, getVOffset(format, dstWidth, dstHeight), degrees, mirror);
+        } else {
+            // 半平面格式中相邻的VU（或UV）作为一个整体移动
+            rotatePlane(src, frameSize, chromaWidth, chromaHeight, 2, dst, frameSize, degrees, mirror);
+        }
+    }
+
+    /**
+     * 旋转一个平面，elementSize为每个元素的字节数
+     */
+    private static void rotatePlane(byte[] src, int srcOffset, int width, int height, int elementSize,
+                                    byte[] dst, int dstOffset, int degrees, boolean mirror) {
+        int rowBytes = width * elementSize;
+        if (degrees == 0 && !mirror) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, rowBytes * height);
+            return;
+        }
+        boolean swap = degrees % 180 != 0;
+        int dstWidth = swap ? height : width;
+        int dstHeight = swap ? width : height;
+        // 目标图像的(0, 0)对应的原图像位置，以及目标图像向右、向下移动一个元素时原图像中的偏移量
+        int originX;
+        int originY;
+        int stepX;
+        int stepY;
+        switch (degrees) {
+            case 90:
+                originX = 0;
+                originY = mirror ? 0 : height - 1;
+                stepX = mirror ? rowBytes : -rowBytes;
+                stepY = elementSize;
+                break;
+            case 180:
+                originX = mirror ? 0 : width - 1;
+                originY = height - 1;
+                stepX = mirror ? elementSize : -elementSize;
+                stepY = -rowBytes;
+                break;
+            case 270:
+                originX = width - 1;
+                originY = mirror ? height - 1 : 0;
+                stepX = mirror ? -rowBytes : rowBytes;
+                stepY = -elementSize;
+                break;
+            default:
+                originX = width - 1;
+                originY = 0;
+                stepX = -elementSize;
+                stepY = rowBytes;
+                break;
+        }
+        int origin = srcOffset + originY * rowBytes + originX * elementSize;
+        for (int blockY = 0; blockY < dstHeight; blockY += ROTATE_BLOCK_SIZE) {
+            int endY = Math.min(blockY + ROTATE_BLOCK_SIZE, dstHeight);
+            for (int blockX = 0; blockX < dstWidth; blockX += ROTATE_BLOCK_SIZE) {
+                int endX = Math.min(blockX + ROTATE_BLOCK_SIZE, dstWidth);
+                for (int y = blockY; y < endY; y++) {
+                    int srcIndex = origin + y * stepY + blockX * stepX;
+                    int dstIndex = dstOffset + (y * dstWidth + blockX) * elementSize;
+                    if (elementSize == 1) {
+                        for (int x = blockX; x < endX; x++) {
+                            dst[dstIndex++] = src[srcIndex];
+                            srcIndex += stepX;
+                        }
+                    } else {
+                        for (int x = blockX; x < endX; x++) {
+                            dst[dstIndex] = src[srcIndex];
+                            dst[dstIndex + 1] = src[srcIndex + 1];
+                            dstIndex += 2;
+                            srcIndex += stepX;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取紧凑排列数据中U分量的起始位置
+     *
+     * @param format 数据格式
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @return U分量的起始位置
+     */
+    public static int getUOffset(int format, int width, int height) {
+        int frameSize = width * height;
+        switch (format) {
+            case FORMAT_NV21:
+                return frameSize + 1;
+            case FORMAT_NV12:
+            case FORMAT_I420:
+                return frameSize;
+            case FORMAT_YV12:
+                return frameSize + frameSize / 4;
+            default:
+                throw new IllegalArgumentException("unsupported format " + format);
+        }
+    }
+
+    /**
+     * 获取紧凑排列数据中V分量的起始位置
+     *
+     * @param format 数据格式
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @return V分量的起始位置
+     */
+    public static int getVOffset(int format, int width, int height) {
+        int frameSize = width * height;
+        switch (format) {
+            case FORMAT_NV21:
+            case FORMAT_YV12:
+                return frameSize;
+            case FORMAT_NV12:
+                return frameSize + 1;
+            case FORMAT_I420:
+                return frameSize + frameSize / 4;
+            default:
+                throw new IllegalArgumentException("unsupported format " + format);
+        }
+    }
+
+    /**
+     * 获取紧凑排列数据中U、V分量的像素步长
+     *
+     * @param format 数据格式
+     * @return 半平面格式为2，平面格式为1
+     */
+    public static int getChromaPixelStride(int format) {
+        return isPlanar(format) ? 1 : 2;
+    }
+
+    private static boolean isPlanar(int format) {
+        switch (format) {
+            case FORMAT_NV21:
+            case FORMAT_NV12:
+                return false;
+            case FORMAT_I420:
+            case FORMAT_YV12:
+                return true;
+            default:
+                throw new IllegalArgumentException("unsupported format " + format);
+        }
+    }
+
+    private static void checkSize(int width, int height, byte[] data) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("width and height must be positive and even, now " + width + "x" + height);
+        }
+        if (data.length < getYuv420Size(width, height)) {
+            throw new IllegalArgumentException("buffer is too small for " + width + "x" + height);
+        }
+    }
+
+    /**
+     * 判断像素步长为2时，first中每个像素之后的字节是否就是second中对应的像素，即可以从first按块拷贝出交错数据。
+     * 只读取不写入，不会修改相机的缓冲区，也适用于只读buffer。
+     * 这是启发式判断：只比较首行和末行，不逐字节检查整个平面。同一块交错内存时必然相同；
+     * 两个独立平面时，只有padding在首行和末行都恰好等于另一平面的数据才会误判，实际的相机buffer中可以忽略
+     */
+    private static boolean isInterleaved(ByteBuffer first, ByteBuffer second, int rowStride, int chromaWidth, int chromaHeight) {
+        if (first.remaining() < 2 || second.remaining() < 1) {
+            return false;
+        }
+        return matchesShifted(first, second, 0, chromaWidth)
+                && matchesShifted(first, second, (chromaHeight - 1) * rowStride, chromaWidth);
+    }
+
+    /**
+     * 比较一行中first[2 * i + 1]与second[2 * i]，超出first范围的最后一个字节不比较
+     */
+    private static boolean matchesShifted(ByteBuffer first, ByteBuffer second, int rowOffset, int chromaWidth) {
+        int firstBase = first.position() + rowOffset;
+        int secondBase = second.position() + rowOffset;
+        for (int i = 0; i < chromaWidth; i++) {
+            int firstIndex = firstBase + 2 * i + 1;
+            int secondIndex = secondBase + 2 * i;
+            if (firstIndex >= first.limit() || secondIndex >= second.limit()) {
+                break;
+            }
+            if (first.get(firstIndex) != second.get(secondIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按行整体拷贝交错内存，跳过行尾padding。
+     * first的最后一个交错字节不在first的范围内，需要从second中读取
+     */
+    private static void copyInterleaved(ByteBuffer first, ByteBuffer second, int rowStride, int rowBytes, int rows,
+                                        byte[] dst, int dstOffset) {
+        if (rowStride == rowBytes) {
+            rowBytes *= rows;
+            rows = 1;
+        }
+        int base = first.position();
+        int available = first.remaining();
+        for (int row = 0; row < rows; row++) {
+            int srcOffset = row * rowStride;
+            int dstRowOffset = dstOffset + row * rowBytes;
+            int length = Math.min(rowBytes, available - srcOffset);
+            first.position(base + srcOffset);
+            first.get(dst, dstRowOffset, length);
+            if (length < rowBytes) {
+                dst[dstRowOffset + rowBytes - 1] = second.get(second.position() + srcOffset + rowBytes - 2);
+            }
+        }
+        first.position(base);
+    }
+
+    private static void copyPlane(ByteBuffer src, int rowStride, int width, int height, byte[] dst, int dstOffset) {
+        int base = src.position();
+        if (rowStride == width) {
+            src.get(dst, dstOffset, width * height);
+        } else {
+            for (int row = 0; row < height; row++) {
+                src.position(base + row * rowStride);
+                src.get(dst, dstOffset + row * width, width);
+            }
+        }
+        src.position(base);
+    }
+
+    private static void copyChroma(ByteBuffer src, int rowStride, int pixelStride, int chromaWidth, int chromaHeight,
+                                   byte[] dst, int dstOffset, int dstPixelStride) {
+        if (pixelStride == 1 && dstPixelStride == 1) {
+            copyPlane(src, rowStride, chromaWidth, chromaHeight, dst, dstOffset);
+            return;
+        }
+        int base = src.position();
+        int index = dstOffset;
+        for (int row = 0; row < chromaHeight; row++) {
+            int srcIndex = base + row * rowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                dst[index] = src.get(srcIndex);
+                srcIndex += pixelStride;
+                index += dstPixelStride;
+            }
+        }
+    }
+
     /**
      * 将Y:U:V == 4:2:2的数据转换为nv21
      *
@@ -10,7 +523,9 @@ public class ImageUtil {
      * @param nv21   生成的nv21，需要预先分配内存
      * @param stride 步长
      * @param height 图像高度
+     * @deprecated 根据数组长度推测数据排列且会拷贝padding，使用{@link #yuv420888ToNv21(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[])}
      */
+    @Deprecated
     public static void yuv422ToYuv420sp(byte[] y, byte[] u, byte[] v, byte[] nv21, int stride, int height) {
         System.arraycopy(y, 0, nv21, 0, y.length);
         // 注意，若length值为 y.length * 3 / 2 会有数组越界的风险，需使用真实数据长度计算
@@ -33,7 +548,9 @@ public class ImageUtil {
      * @param nv21   生成的nv21，需要预先分配内存
      * @param stride 步长
      * @param height 图像高度
+     * @deprecated 根据数组长度推测数据排列且会拷贝padding，使用{@link #yuv420888ToNv21(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[])}
      */
+    @Deprecated
     public static void yuv420ToYuv420sp(byte[] y, byte[] u, byte[] v, byte[] nv21, int stride, int height) {
         System.arraycopy(y, 0, nv21, 0, y.length);
         // 注意，若length值为 y.length * 3 / 2 会有数组越界的风险，需使用真实数据长度计算
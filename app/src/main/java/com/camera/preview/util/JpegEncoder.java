@@ -0,0 +1,666 @@
+package com.camera.preview.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 纯Java实现的基线JPEG编码器，直接读取带行跨度的Y、U、V平面，可以只编码其中的一个矩形区域，
+ * 输出4:2:0采样的JFIF数据。用于代替每次都要分配NV21数组和ByteArrayOutputStream的YuvImage.compressToJpeg。
+ * <p>
+ * 量化表在设置质量时计算一次并与DCT的缩放系数合并，Huffman表使用标准表并在类加载时展开；
+ * DCT使用AAN快速整数算法。编码结果写入复用的输出缓冲区，只有在缓冲区不足时才会扩容，
+ * 稳定后编码过程不分配内存。非线程安全，每个线程使用各自的实例。
+ */
+public class JpegEncoder {
+    /**
+     * 之字形扫描顺序，第k个系数在8x8块中的位置
+     */
+    private static final int[] NATURAL_ORDER = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    /**
+     * 标准亮度量化表（ITU-T T.81 附录K），按行排列
+     */
+    private static final int[] LUMA_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    /**
+     * 标准色度量化表，按行排列
+     */
+    private static final int[] CHROMA_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    private static final int[] LUMA_DC_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] LUMA_DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] CHROMA_DC_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] CHROMA_DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] LUMA_AC_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] LUMA_AC_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+    private static final int[] CHROMA_AC_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] CHROMA_AC_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    /**
+     * 由符号值索引的Huffman码字和码长
+     */
+    private static final int[] LUMA_DC_CODES = new int[12];
+    private static final int[] LUMA_DC_SIZES = new int[12];
+    private static final int[] CHROMA_DC_CODES = new int[12];
+    private static final int[] CHROMA_DC_SIZES = new int[12];
+    private static final int[] LUMA_AC_CODES = new int[256];
+    private static final int[] LUMA_AC_SIZES = new int[256];
+    private static final int[] CHROMA_AC_CODES = new int[256];
+    private static final int[] CHROMA_AC_SIZES = new int[256];
+
+    static {
+        buildHuffmanCodes(LUMA_DC_BITS, LUMA_DC_VALUES, LUMA_DC_CODES, LUMA_DC_SIZES);
+        buildHuffmanCodes(CHROMA_DC_BITS, CHROMA_DC_VALUES, CHROMA_DC_CODES, CHROMA_DC_SIZES);
+        buildHuffmanCodes(LUMA_AC_BITS, LUMA_AC_VALUES, LUMA_AC_CODES, LUMA_AC_SIZES);
+        buildHuffmanCodes(CHROMA_AC_BITS, CHROMA_AC_VALUES, CHROMA_AC_CODES, CHROMA_AC_SIZES);
+    }
+
+    /**
+     * AAN算法中的常量，8位定点
+     */
+    private static final int FIX_0_382683433 = 98;
+    private static final int FIX_0_541196100 = 139;
+    private static final int FIX_0_707106781 = 181;
+    private static final int FIX_1_306562965 = 334;
+    private static final int CONST_BITS = 8;
+
+    private static final int MCU_SIZE = 16;
+    private static final int DEFAULT_QUALITY = 90;
+
+    private int quality = -1;
+    /**
+     * 写入文件头的量化表，之字形顺序
+     */
+    private final int[] lumaQuant = new int[64];
+    private final int[] chromaQuant = new int[64];
+    /**
+     * 量化除数，已乘以AAN的输出缩放系数，按行排列
+     */
+    private final int[] lumaDivisors = new int[64];
+    private final int[] chromaDivisors = new int[64];
+
+    private final int[] block = new int[64];
+    /**
+     * 16行亮度和8行色度的条带，宽度补齐到MCU的整数倍
+     */
+    private byte[] yStripe = new byte[0];
+    private byte[] uStripe = new byte[0];
+    private byte[] vStripe = new byte[0];
+
+    private byte[] buffer;
+    private int length;
+    private int bitBuffer;
+    private int bitCount;
+    private int lastDcY;
+    private int lastDcCb;
+    private int lastDcCr;
+
+    public JpegEncoder() {
+        this(DEFAULT_QUALITY);
+    }
+
+    /**
+     * @param quality 编码质量，1~100，与libjpeg的质量参数含义相同
+     */
+    public JpegEncoder(int quality) {
+        setQuality(quality);
+        buffer = new byte[64 * 1024];
+    }
+
+    /**
+     * 设置编码质量，质量不变时不重新计算量化表
+     *
+     * @param quality 1~100
+     */
+    public void setQuality(int quality) {
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("quality must be in [1, 100], now " + quality);
+        }
+        if (quality == this.quality) {
+            return;
+        }
+        this.quality = quality;
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        buildQuantTable(LUMA_QUANT, scale, lumaQuant, lumaDivisors);
+        buildQuantTable(CHROMA_QUANT, scale, chromaQuant, chromaDivisors);
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    private static void buildQuantTable(int[] base, int scale, int[] zigzag, int[] divisors) {
+        for (int i = 0; i < 64; i++) {
+            int value = (base[i] * scale + 50) / 100;
+            // 基线JPEG的量化值为8位
+            value = value < 1 ? 1 : (value > 255 ? 255 : value);
+            int row = i >> 3;
+            int col = i & 7;
+            divisors[i] = (int) Math.round(value * aanScaleFactor(row) * aanScaleFactor(col) * 8);
+        }
+        for (int k = 0; k < 64; k++) {
+            int value = (base[NATURAL_ORDER[k]] * scale + 50) / 100;
+            zigzag[k] = value < 1 ? 1 : (value > 255 ? 255 : value);
+        }
+    }
+
+    /**
+     * AAN算法输出的第k个系数相对于标准DCT的缩放比例
+     */
+    private static double aanScaleFactor(int k) {
+        return k == 0 ? 1.0 : Math.cos(k * Math.PI / 16) * Math.sqrt(2);
+    }
+
+    private static void buildHuffmanCodes(int[] bits, int[] values, int[] codes, int[] sizes) {
+        int code = 0;
+        int index = 0;
+        for (int length = 1; length <= 16; length++) {
+            for (int i = 0; i < bits[length - 1]; i++) {
+                codes[values[index]] = code;
+                sizes[values[index]] = length;
+                index++;
+                code++;
+            }
+            code <<= 1;
+        }
+    }
+
+    /**
+     * 编码紧凑排列的YUV420整帧
+     *
+     * @see #encode(byte[], int, int, int, int, int, int, int)
+     */
+    public int encode(byte[] src, int format, int width, int height) {
+        return encode(src, format, width, height, 0, 0, width, height);
+    }
+
+    /**
+     * 编码紧凑排列的YUV420中的矩形区域
+     *
+     * @param src        原数据
+     * @param format     原格式，取值为{@link ImageUtil#FORMAT_NV21}等，不支持灰度
+     * @param width      帧宽度
+     * @param height     帧高度
+     * @param left       编码区域左边界，需为偶数
+     * @param top        编码区域上边界，需为偶数
+     * @param cropWidth  编码区域宽度
+     * @param cropHeight 编码区域高度
+     * @return JPEG数据的长度，数据位于{@link #getBuffer()}的开头
+     */
+    public int encode(byte[] src, int format, int width, int height, int left, int top, int cropWidth, int cropHeight) {
+        checkCrop(width, height, left, top, cropWidth, cropHeight);
+        if (src.length < ImageUtil.getYuv420Size(width, height)) {
+            throw new IllegalArgumentException("src is too small for " + width + "x" + height);
+        }
+        int pixelStride = ImageUtil.getChromaPixelStride(format);
+        int uvRowStride = width / 2 * pixelStride;
+        int uOffset = ImageUtil.getUOffset(format, width, height);
+        int vOffset = ImageUtil.getVOffset(format, width, height);
+        int stripeWidth = prepare(cropWidth, cropHeight);
+        int chromaWidth = (cropWidth + 1) >> 1;
+        int chromaHeight = (cropHeight + 1) >> 1;
+        for (int mcuY = 0; mcuY < cropHeight; mcuY += MCU_SIZE) {
+            for (int row = 0; row < MCU_SIZE; row++) {
+                int srcRow = top + Math.min(mcuY + row, cropHeight - 1);
+                int dstOffset = row * stripeWidth;
+                System.arraycopy(src, srcRow * width + left, yStripe, dstOffset, cropWidth);
+                padRow(yStripe, dstOffset, cropWidth, stripeWidth);
+            }
+            int chromaStripeWidth = stripeWidth >> 1;
+            for (int row = 0; row < MCU_SIZE / 2; row++) {
+                int srcRow = (top >> 1) + Math.min((mcuY >> 1) + row, chromaHeight - 1);
+                int srcOffset = srcRow * uvRowStride + (left >> 1) * pixelStride;
+                int dstOffset = row * chromaStripeWidth;
+                for (int col = 0; col < chromaWidth; col++) {
+                    int index = srcOffset + col * pixelStride;
+                    uStripe[dstOffset + col] = src[uOffset + index];
+                    vStripe[dstOffset + col] = src[vOffset + index];
+                }
+                padRow(uStripe, dstOffset, chromaWidth, chromaStripeWidth);
+                padRow(vStripe, dstOffset, chromaWidth, chromaStripeWidth);
+            }
+            encodeStripe(stripeWidth);
+        }
+        return finish();
+    }
+
+    /**
+     * 编码YUV_420_888平面中的矩形区域，Y平面的读取位置在编码结束后恢复
+     *
+     * @param y             Y平面
+     * @param yRowStride    Y平面行跨度
+     * @param u             U平面
+     * @param v             V平面
+     * @param uvRowStride   U、V平面行跨度
+     * @param uvPixelStride U、V平面像素跨度
+     * @param width         帧宽度
+     * @param height        帧高度
+     * @param left          编码区域左边界，需为偶数
+     * @param top           编码区域上边界，需为偶数
+     * @param cropWidth     编码区域宽度
+     * @param cropHeight    编码区域高度
+     * @return JPEG数据的长度，数据位于{@link #getBuffer()}的开头
+     */
+    public int encode(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                      int width, int height, int left, int top, int cropWidth, int cropHeight) {
+        checkCrop(width, height, left, top, cropWidth, cropHeight);
+        int stripeWidth = prepare(cropWidth, cropHeight);
+        int chromaWidth = (cropWidth + 1) >> 1;
+        int chromaHeight = (cropHeight + 1) >> 1;
+        int yPosition = y.position();
+        try {
+            for (int mcuY = 0; mcuY < cropHeight; mcuY += MCU_SIZE) {
+                for (int row = 0; row < MCU_SIZE; row++) {
+                    int srcRow = top + Math.min(mcuY + row, cropHeight - 1);
+                    int dstOffset = row * stripeWidth;
+                    y.position(srcRow * yRowStride + left);
+                    y.get(yStripe, dstOffset, cropWidth);
+                    padRow(yStripe, dstOffset, cropWidth, stripeWidth);
+                }
+                int chromaStripeWidth = stripeWidth >> 1;
+                for (int row = 0; row < MCU_SIZE / 2; row++) {
+                    int srcRow = (top >> 1) + Math.min((mcuY >> 1) + row, chromaHeight - 1);
+                    int srcOffset = srcRow * uvRowStride + (left >> 1) * uvPixelStride;
+                    int dstOffset = row * chromaStripeWidth;
+                    for (int col = 0; col < chromaWidth; col++) {
+                        int index = srcOffset + col * uvPixelStride;
+                        uStripe[dstOffset + col] = u.get(index);
+                        vStripe[dstOffset + col] = v.get(index);
+                    }
+                    padRow(uStripe, dstOffset, chromaWidth, chromaStripeWidth);
+                    padRow(vStripe, dstOffset, chromaWidth, chromaStripeWidth);
+                }
+                encodeStripe(stripeWidth);
+            }
+        } finally {
+            y.position(yPosition);
+        }
+        return finish();
+    }
+
+    /**
+     * 编码结果，有效长度为最近一次encode的返回值。缓冲区被复用，下次编码会覆盖其内容
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * 最近一次编码结果的长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    private static void checkCrop(int width, int height, int left, int top, int cropWidth, int cropHeight) {
+        if (cropWidth <= 0 || cropHeight <= 0 || cropWidth > 65535 || cropHeight > 65535) {
+            throw new IllegalArgumentException("invalid crop size " + cropWidth + "x" + cropHeight);
+        }
+        if ((left & 1) != 0 || (top & 1) != 0) {
+            throw new IllegalArgumentException("crop origin must be even, now " + left + "," + top);
+        }
+        if (left < 0 || top < 0 || left + cropWidth > width || top + cropHeight > height) {
+            throw new IllegalArgumentException("crop " + left + "," + top + " " + cropWidth + "x" + cropHeight
+                    + " is out of " + width + "x" + height);
+        }
+    }
+
+    /**
+     * 复制行末像素，补齐到条带宽度
+     */
+    private static void padRow(byte[] stripe, int offset, int width, int stripeWidth) {
+        byte last = stripe[offset + width - 1];
+        for (int i = width; i < stripeWidth; i++) {
+            stripe[offset + i] = last;
+        }
+    }
+
+    /**
+     * 分配条带，重置编码状态并写入文件头
+     *
+     * @return 亮度条带宽度
+     */
+    private int prepare(int cropWidth, int cropHeight) {
+        int stripeWidth = (cropWidth + MCU_SIZE - 1) / MCU_SIZE * MCU_SIZE;
+        if (yStripe.length < stripeWidth * MCU_SIZE) {
+            yStripe = new byte[stripeWidth * MCU_SIZE];
+            uStripe = new byte[stripeWidth * MCU_SIZE / 4];
+            vStripe = new byte[stripeWidth * MCU_SIZE / 4];
+        }
+        length = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        lastDcY = lastDcCb = lastDcCr = 0;
+        writeHeaders(cropWidth, cropHeight);
+        return stripeWidth;
+    }
+
+    private int finish() {
+        if (bitCount > 0) {
+            // 用1填充最后不满一个字节的位
+            putBits(0x7f, 7);
+        }
+        bitCount = 0;
+        putMarker(0xd9);
+        return length;
+    }
+
+    private void encodeStripe(int stripeWidth) {
+        int chromaStripeWidth = stripeWidth >> 1;
+        for (int x = 0; x < stripeWidth; x += MCU_SIZE) {
+            lastDcY = encodeBlock(yStripe, x, stripeWidth, lumaDivisors, lastDcY,
+                    LUMA_DC_CODES, LUMA_DC_SIZES, LUMA_AC_CODES, LUMA_AC_SIZES);
+            lastDcY = encodeBlock(yStripe, x + 8, stripeWidth, lumaDivisors, lastDcY,
+                    LUMA_DC_CODES, LUMA_DC_SIZES, LUMA_AC_CODES, LUMA_AC_SIZES);
+            lastDcY = encodeBlock(yStripe, 8 * stripeWidth + x, stripeWidth, lumaDivisors, lastDcY,
+                    LUMA_DC_CODES, LUMA_DC_SIZES, LUMA_AC_CODES, LUMA_AC_SIZES);
+            lastDcY = encodeBlock(yStripe, 8 * stripeWidth + x + 8, stripeWidth, lumaDivisors, lastDcY,
+                    LUMA_DC_CODES, LUMA_DC_SIZES, LUMA_AC_CODES, LUMA_AC_SIZES);
+            lastDcCb = encodeBlock(uStripe, x >> 1, chromaStripeWidth, chromaDivisors, lastDcCb,
+                    CHROMA_DC_CODES, CHROMA_DC_SIZES, CHROMA_AC_CODES, CHROMA_AC_SIZES);
+            lastDcCr = encodeBlock(vStripe, x >> 1, chromaStripeWidth, chromaDivisors, lastDcCr,
+                    CHROMA_DC_CODES, CHROMA_DC_SIZES, CHROMA_AC_CODES, CHROMA_AC_SIZES);
+        }
+    }
+
+    /**
+     * 对一个8x8块做DCT、量化和Huffman编码
+     *
+     * @return 本块的DC值，作为下一块的预测值
+     */
+    private int encodeBlock(byte[] stripe, int offset, int stride, int[] divisors, int lastDc,
+                            int[] dcCodes, int[] dcSizes, int[] acCodes, int[] acSizes) {
+        int[] data = block;
+        for (int row = 0; row < 8; row++) {
+            int src = offset + row * stride;
+            int dst = row * 8;
+            for (int col = 0; col < 8; col++) {
+                data[dst + col] = (stripe[src + col] & 0xff) - 128;
+            }
+        }
+        forwardDct(data);
+        for (int i = 0; i < 64; i++) {
+            data[i] = quantize(data[i], divisors[i]);
+        }
+
+        int diff = data[0] - lastDc;
+        int bits = diff;
+        if (diff < 0) {
+            diff = -diff;
+            bits--;
+        }
+        int size = diff == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(diff);
+        putBits(dcCodes[size], dcSizes[size]);
+        if (size != 0) {
+            putBits(bits & ((1 << size) - 1), size);
+        }
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = data[NATURAL_ORDER[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                putBits(acCodes[0xf0], acSizes[0xf0]);
+                run -= 16;
+            }
+            bits = value;
+            if (value < 0) {
+                value = -value;
+                bits--;
+            }
+            size = 32 - Integer.numberOfLeadingZeros(value);
+            int symbol = (run << 4) + size;
+            putBits(acCodes[symbol], acSizes[symbol]);
+            putBits(bits & ((1 << size) - 1), size);
+            run = 0;
+        }
+        if (run > 0) {
+            putBits(acCodes[0], acSizes[0]);
+        }
+        return data[0];
+    }
+
+    private static int quantize(int value, int divisor) {
+        if (value < 0) {
+            return -((-value + (divisor >> 1)) / divisor);
+        }
+        return (value + (divisor >> 1)) / divisor;
+    }
+
+    /**
+     * AAN快速整数DCT，与libjpeg的jfdctfst相同，输出按{@link #aanScaleFactor(int)}缩放，在量化时一并除去
+     */
+    private static void forwardDct(int[] data) {
+        for (int i = 0; i < 64; i += 8) {
+            int tmp0 = data[i] + data[i + 7];
+            int tmp7 = data[i] - data[i + 7];
+            int tmp1 = data[i + 1] + data[i + 6];
+            int tmp6 = data[i + 1] - data[i + 6];
+            int tmp2 = data[i + 2] + data[i + 5];
+            int tmp5 = data[i + 2] - data[i + 5];
+            int tmp3 = data[i + 3] + data[i + 4];
+            int tmp4 = data[i + 3] - data[i + 4];
+
+            int tmp10 = tmp0 + tmp3;
+            int tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2;
+            int tmp12 = tmp1 - tmp2;
+            data[i] = tmp10 + tmp11;
+            data[i + 4] = tmp10 - tmp11;
+            int z1 = ((tmp12 + tmp13) * FIX_0_707106781) >> CONST_BITS;
+            data[i + 2] = tmp13 + z1;
+            data[i + 6] = tmp13 - z1;
+
+            tmp10 = tmp4 + tmp5;
+            tmp11 = tmp5 + tmp6;
+            tmp12 = tmp6 + tmp7;
+            int z5 = ((tmp10 - tmp12) * FIX_0_382683433) >> CONST_BITS;
+            int z2 = ((tmp10 * FIX_0_541196100) >> CONST_BITS) + z5;
+            int z4 = ((tmp12 * FIX_1_306562965) >> CONST_BITS) + z5;
+            int z3 = (tmp11 * FIX_0_707106781) >> CONST_BITS;
+            int z11 = tmp7 + z3;
+            int z13 = tmp7 - z3;
+            data[i + 5] = z13 + z2;
+            data[i + 3] = z13 - z2;
+            data[i + 1] = z11 + z4;
+            data[i + 7] = z11 - z4;
+        }
+        for (int i = 0; i < 8; i++) {
+            int tmp0 = data[i] + data[i + 56];
+            int tmp7 = data[i] - data[i + 56];
+            int tmp1 = data[i + 8] + data[i + 48];
+            int tmp6 = data[i + 8] - data[i + 48];
+            int tmp2 = data[i + 16] + data[i + 40];
+            int tmp5 = data[i + 16] - data[i + 40];
+            int tmp3 = data[i + 24] + data[i + 32];
+            int tmp4 = data[i + 24] - data[i + 32];
+
+            int tmp10 = tmp0 + tmp3;
+            int tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2;
+            int tmp12 = tmp1 - tmp2;
+            data[i] = tmp10 + tmp11;
+            data[i + 32] = tmp10 - tmp11;
+            int z1 = ((tmp12 + tmp13) * FIX_0_707106781) >> CONST_BITS;
+            data[i + 16] = tmp13 + z1;
+            data[i + 48] = tmp13 - z1;
+
+            tmp10 = tmp4 + tmp5;
+            tmp11 = tmp5 + tmp6;
+            tmp12 = tmp6 + tmp7;
+            int z5 = ((tmp10 - tmp12) * FIX_0_382683433) >> CONST_BITS;
+            int z2 = ((tmp10 * FIX_0_541196100) >> CONST_BITS) + z5;
+            int z4 = ((tmp12 * FIX_1_306562965) >> CONST_BITS) + z5;
+            int z3 = (tmp11 * FIX_0_707106781) >> CONST_BITS;
+            int z11 = tmp7 + z3;
+            int z13 = tmp7 - z3;
+            data[i + 40] = z13 + z2;
+            data[i + 24] = z13 - z2;
+            data[i + 8] = z11 + z4;
+            data[i + 56] = z11 - z4;
+        }
+    }
+
+    private void writeHeaders(int width, int height) {
+        putMarker(0xd8);
+        // APP0 JFIF
+        putMarker(0xe0);
+        putShort(16);
+        putByte('J');
+        putByte('F');
+        putByte('I');
+        putByte('F');
+        putByte(0);
+        putShort(0x0101);
+        putByte(0);
+        putShort(1);
+        putShort(1);
+        putByte(0);
+        putByte(0);
+        // DQT
+        putMarker(0xdb);
+        putShort(2 + 2 * 65);
+        putByte(0);
+        for (int i = 0; i < 64; i++) {
+            putByte(lumaQuant[i]);
+        }
+        putByte(1);
+        for (int i = 0; i < 64; i++) {
+            putByte(chromaQuant[i]);
+        }
+        // SOF0，Y为2x2采样，Cb、Cr为1x1
+        putMarker(0xc0);
+        putShort(17);
+        putByte(8);
+        putShort(height);
+        putShort(width);
+        putByte(3);
+        putByte(1);
+        putByte(0x22);
+        putByte(0);
+        putByte(2);
+        putByte(0x11);
+        putByte(1);
+        putByte(3);
+        putByte(0x11);
+        putByte(1);
+        // DHT
+        putMarker(0xc4);
+        putShort(2 + 4 * 17 + LUMA_DC_VALUES.length + LUMA_AC_VALUES.length
+                + CHROMA_DC_VALUES.length + CHROMA_AC_VALUES.length);
+        putHuffmanTable(0x00, LUMA_DC_BITS, LUMA_DC_VALUES);
+        putHuffmanTable(0x10, LUMA_AC_BITS, LUMA_AC_VALUES);
+        putHuffmanTable(0x01, CHROMA_DC_BITS, CHROMA_DC_VALUES);
+        putHuffmanTable(0x11, CHROMA_AC_BITS, CHROMA_AC_VALUES);
+        // SOS
+        putMarker(0xda);
+        putShort(12);
+        putByte(3);
+        putByte(1);
+        putByte(0x00);
+        putByte(2);
+        putByte(0x11);
+        putByte(3);
+        putByte(0x11);
+        putByte(0);
+        putByte(63);
+        putByte(0);
+    }
+
+    private void putHuffmanTable(int classAndId, int[] bits, int[] values) {
+        putByte(classAndId);
+        for (int i = 0; i < 16; i++) {
+            putByte(bits[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            putByte(values[i]);
+        }
+    }
+
+    private void putMarker(int marker) {
+        putByte(0xff);
+        putByte(marker);
+    }
+
+    private void putShort(int value) {
+        putByte(value >> 8);
+        putByte(value);
+    }
+
+    private void putByte(int value) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * 写入熵编码数据，0xFF后插入0x00
+     */
+    private void putBits(int code, int size) {
+        bitBuffer = (bitBuffer << size) | code;
+        bitCount += size;
+        while (bitCount >= 8) {
+            int value = (bitBuffer >> (bitCount - 8)) & 0xff;
+            putByte(value);
+            if (value == 0xff) {
+                putByte(0);
+            }
+            bitCount -= 8;
+        }
+    }
+}
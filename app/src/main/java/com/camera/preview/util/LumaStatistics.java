@@ -0,0 +1,276 @@
+package com.camera.preview.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 在稀疏采样网格上统计Y平面的亮度直方图和曝光指标。
+ * 每帧只读取columns * rows个采样点，耗时与分辨率无关；
+ * 256级直方图按帧统计，再以指数加权滑动平均累积到平滑直方图，
+ * 平滑后的均值、标准差（对比度）、百分位和过暗、过亮比例都由平滑直方图计算。
+ * 所有数组在构造时分配，统计和查询都不分配内存。非线程安全，需在同一线程中调用。
+ */
+public class LumaStatistics {
+    private static final int BINS = 256;
+    /**
+     * 默认的平滑系数，即新一帧所占的权重
+     */
+    private static final float DEFAULT_SMOOTHING = 0.2f;
+    /**
+     * 默认的过暗阈值，不大于该值的像素视为欠曝截断
+     */
+    private static final int DEFAULT_LOW_CLIP = 8;
+    /**
+     * 默认的过亮阈值，不小于该值的像素视为过曝截断
+     */
+    private static final int DEFAULT_HIGH_CLIP = 247;
+
+    private final int columns;
+    private final int rows;
+    /**
+     * 采样点的列坐标和行坐标，尺寸变化时重新计算
+     */
+    private final int[] sampleX;
+    private final int[] sampleY;
+    private int width;
+    private int height;
+
+    private final int[] frameHistogram = new int[BINS];
+    private final float[] smoothedHistogram = new float[BINS];
+    private int frameSamples;
+    private float frameMean;
+    private boolean hasSmoothed;
+
+    private float smoothing = DEFAULT_SMOOTHING;
+    private int lowClip = DEFAULT_LOW_CLIP;
+    private int highClip = DEFAULT_HIGH_CLIP;
+
+    private float mean;
+    private float stdDev;
+    private float underExposedFraction;
+    private float overExposedFraction;
+
+    /**
+     * @param columns 水平方向的采样点数
+     * @param rows    垂直方向的采样点数
+     */
+    public LumaStatistics(int columns, int rows) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("columns and rows must be positive");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        sampleX = new int[columns];
+        sampleY = new int[rows];
+    }
+
+    /**
+     * 设置平滑系数
+     *
+     * @param smoothing 新一帧所占的权重，取值(0, 1]，1表示不平滑
+     */
+    public void setSmoothing(float smoothing) {
+        if (!(smoothing > 0 && smoothing <= 1)) {
+            throw new IllegalArgumentException("smoothing must be in (0, 1], now " + smoothing);
+        }
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * 设置截断阈值
+     *
+     * @param low  不大于该值的像素计入欠曝比例
+     * @param high 不小于该值的像素计入过曝比例
+     */
+    public void setClipThresholds(int low, int high) {
+        if (low < 0 || high > 255 || low >= high) {
+            throw new IllegalArgumentException("invalid clip thresholds " + low + ", " + high);
+        }
+        lowClip = low;
+        highClip = high;
+    }
+
+    /**
+     * 统计一帧紧凑排列或带行跨度的Y平面
+     *
+     * @param y         Y平面数据，紧凑排列的YUV420数据可直接传入
+     * @param rowStride 行跨度
+     * @param width     宽度
+     * @param height    高度
+     */
+    public void update(byte[] y, int rowStride, int width, int height) {
+        prepareGrid(width, height);
+        int[] histogram = frameHistogram;
+        for (int row = 0; row < rows; row++) {
+            int offset = sampleY[row] * rowStride;
+            for (int col = 0; col < columns; col++) {
+                histogram[y[offset + sampleX[col]] & 0xff]++;
+            }
+        }
+        accumulate();
+    }
+
+    /**
+     * 统计一帧YUV_420_888的Y平面，不改变buffer的读取位置
+     *
+     * @see #update(byte[], int, int, int)
+     */
+    public void update(ByteBuffer y, int rowStride, int width, int height) {
+        prepareGrid(width, height);
+        int[] histogram = frameHistogram;
+        for (int row = 0; row < rows; row++) {
+            int offset = sampleY[row] * rowStride;
+            for (int col = 0; col < columns; col++) {
+                histogram[y.get(offset + sampleX[col]) & 0xff]++;
+            }
+        }
+        accumulate();
+    }
+
+    /**
+     * 清空本帧直方图，尺寸变化时重新计算采样坐标，采样点位于网格单元的中心
+     */
+    private void prepareGrid(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid size " + width + "x" + height);
+        }
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            for (int col = 0; col < columns; col++) {
+                sampleX[col] = (int) ((2L * col + 1) * width / (2L * columns));
+            }
+            for (int row = 0; row < rows; row++) {
+                sampleY[row] = (int) ((2L * row + 1) * height / (2L * rows));
+            }
+        }
+        Arrays.fill(frameHistogram, 0);
+    }
+
+    private void accumulate() {
+        int samples = columns * rows;
+        frameSamples = samples;
+        float scale = 1f / samples;
+        float weight = hasSmoothed ? smoothing : 1f;
+        float keep = 1f - weight;
+        long frameSum = 0;
+        double sum = 0;
+        double squareSum = 0;
+        float under = 0;
+        float over = 0;
+        for (int i = 0; i < BINS; i++) {
+            int count = frameHistogram[i];
+            frameSum += (long) count * i;
+            float value = smoothedHistogram[i] * keep + count * scale * weight;
+            smoothedHistogram[i] = value;
+            sum += value * i;
+            squareSum += value * i * i;
+            if (i <= lowClip) {
+                under += value;
+            } else if (i >= highClip) {
+                over += value;
+            }
+        }
+        hasSmoothed = true;
+        frameMean = (float) frameSum / samples;
+        mean = (float) sum;
+        stdDev = (float) Math.sqrt(Math.max(0, squareSum - sum * sum));
+        underExposedFraction = under;
+        overExposedFraction = over;
+    }
+
+    /**
+     * 平滑直方图的百分位
+     *
+     * @param percentile 取值[0, 100]
+     * @return 累计比例首次达到percentile的亮度值
+     */
+    public int getPercentile(float percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in [0, 100], now " + percentile);
+        }
+        float target = percentile / 100f;
+        float cumulative = 0;
+        for (int i = 0; i < BINS; i++) {
+            cumulative += smoothedHistogram[i];
+            // 浮点累加存在误差，留出很小的余量
+            if (cumulative >= target - 1e-6f) {
+                return i;
+            }
+        }
+        return BINS - 1;
+    }
+
+    /**
+     * 最近一帧直方图的百分位
+     *
+     * @see #getPercentile(float)
+     */
+    public int getFramePercentile(float percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in [0, 100], now " + percentile);
+        }
+        long target = (long) Math.ceil(frameSamples * percentile / 100.0);
+        long cumulative = 0;
+        for (int i = 0; i < BINS; i++) {
+            cumulative += frameHistogram[i];
+            if (cumulative >= target && cumulative > 0) {
+                return i;
+            }
+        }
+        return BINS - 1;
+    }
+
+    /**
+     * 平滑后的平均亮度
+     */
+    public float getMean() {
+        return mean;
+    }
+
+    /**
+     * 平滑后的亮度标准差，用作对比度
+     */
+    public float getStdDev() {
+        return stdDev;
+    }
+
+    /**
+     * 平滑后欠曝截断像素的比例
+     */
+    public float getUnderExposedFraction() {
+        return underExposedFraction;
+    }
+
+    /**
+     * 平滑后过曝截断像素的比例
+     */
+    public float getOverExposedFraction() {
+        return overExposedFraction;
+    }
+
+    /**
+     * 最近一帧的平均亮度，未经平滑
+     */
+    public float getFrameMean() {
+        return frameMean;
+    }
+
+    /**
+     * 将最近一帧的直方图拷贝到dst
+     *
+     * @param dst 长度至少为256
+     */
+    public void getFrameHistogram(int[] dst) {
+        System.arraycopy(frameHistogram, 0, dst, 0, BINS);
+    }
+
+    /**
+     * 清空平滑状态，下一帧的统计直接作为平滑值，例如切换摄像头后调用
+     */
+    public void reset() {
+        hasSmoothed = false;
+        Arrays.fill(smoothedHistogram, 0);
+        mean = stdDev = underExposedFraction = overExposedFraction = 0;
+    }
+}
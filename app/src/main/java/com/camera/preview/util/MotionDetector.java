@@ -0,0 +1,226 @@
+package com.camera.preview.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 基于亮度块平均值差分的运动检测。
+ * 将Y平面划分为columns * rows个块，每块按sampleStep间隔采样求平均亮度，与上一帧对应块比较，
+ * 差值超过阈值的块记为变化块。比较前先减去所有块的平均差值，自动曝光引起的整体亮度变化不会被当作运动。
+ * 所有状态在构造时分配，检测过程不分配内存。非线程安全，需在同一线程中调用。
+ */
+public class MotionDetector {
+    /**
+     * 默认的块亮度差阈值
+     */
+    private static final int DEFAULT_BLOCK_THRESHOLD = 12;
+
+    private final int columns;
+    private final int rows;
+    private final int sampleStep;
+    private int[] previous;
+    private int[] current;
+    private final boolean[] changed;
+
+    private int blockThreshold = DEFAULT_BLOCK_THRESHOLD;
+    private int minChangedBlocks = 1;
+    private boolean hasPrevious;
+    private int width;
+    private int height;
+    private int changedCount;
+    private float score;
+
+    /**
+     * @param columns    水平方向的块数
+     * @param rows       垂直方向的块数
+     * @param sampleStep 块内的采样间隔，1表示使用每个像素
+     */
+    public MotionDetector(int columns, int rows, int sampleStep) {
+        if (columns <= 0 || rows <= 0 || sampleStep <= 0) {
+            throw new IllegalArgumentException("columns, rows and sampleStep must be positive");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.sampleStep = sampleStep;
+        previous = new int[columns * rows];
+        current = new int[columns * rows];
+        changed = new boolean[columns * rows];
+    }
+
+    /**
+     * 设置块亮度差阈值，平均亮度之差超过该值的块记为变化块
+     */
+    public void setBlockThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+        blockThreshold = threshold;
+    }
+
+    /**
+     * 设置判定为运动所需的最少变化块数
+     */
+    public void setMinChangedBlocks(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        minChangedBlocks = count;
+    }
+
+    /**
+     * 检测紧凑排列或带行跨度的Y平面
+     *
+     * @param y         Y平面数据，紧凑排列的YUV420数据可直接传入
+     * @param rowStride 行跨度
+     * @param width     宽度，不小于水平块数
+     * @param height    高度，不小于垂直块数
+     * @return 运动分数，即变化块占全部块的比例；第一帧或尺寸变化后返回1
+     */
+    public float detect(byte[] y, int rowStride, int width, int height) {
+        checkSize(width, height);
+        int[] averages = current;
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int bottom = (row + 1) * height / rows;
+            for (int col = 0; col < columns; col++) {
+                int left = col * width / columns;
+                int right = (col + 1) * width / columns;
+                int sum = 0;
+                int count = 0;
+                for (int py = top; py < bottom; py += sampleStep) {
+                    int offset = py * rowStride;
+                    for (int px = left; px < right; px += sampleStep) {
+                        sum += y[offset + px] & 0xff;
+                        count++;
+                    }
+                }
+                averages[row * columns + col] = sum / count;
+            }
+        }
+        return compare(width, height);
+    }
+
+    /**
+     * 检测YUV_420_888的Y平面，不改变buffer的读取位置
+     *
+     * @see #detect(byte[], int, int, int)
+     */
+    public float detect(ByteBuffer y, int rowStride, int width, int height) {
+        checkSize(width, height);
+        int[] averages = current;
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int bottom = (row + 1) * height / rows;
+            for (int col = 0; col < columns; col++) {
+                int left = col * width / columns;
+                int right = (col + 1) * width / columns;
+                int sum = 0;
+                int count = 0;
+                for (int py = top; py < bottom; py += sampleStep) {
+                    int offset = py * rowStride;
+                    for (int px = left; px < right; px += sampleStep) {
+                        sum += y.get(offset + px) & 0xff;
+                        count++;
+                    }
+                }
+                averages[row * columns + col] = sum / count;
+            }
+        }
+        return compare(width, height);
+    }
+
+    private void checkSize(int width, int height) {
+        if (width < columns || height < rows) {
+            throw new IllegalArgumentException("frame " + width + "x" + height + " is smaller than grid "
+                    + columns + "x" + rows);
+        }
+    }
+
+    private float compare(int width, int height) {
+        int blockCount = columns * rows;
+        if (!hasPrevious || width != this.width || height != this.height) {
+            hasPrevious = true;
+            this.width = width;
+            this.height = height;
+            Arrays.fill(changed, true);
+            changedCount = blockCount;
+        } else {
+            int totalDelta = 0;
+            for (int i = 0; i < blockCount; i++) {
+                totalDelta += current[i] - previous[i];
+            }
+            // 整体亮度变化，由曝光调整引起时不算作运动
+            int meanDelta = totalDelta / blockCount;
+            int count = 0;
+            for (int i = 0; i < blockCount; i++) {
+                int delta = current[i] - previous[i] - meanDelta;
+                boolean blockChanged = delta > blockThreshold || delta < -blockThreshold;
+                changed[i] = blockChanged;
+                if (blockChanged) {
+                    count++;
+                }
+            }
+            changedCount = count;
+        }
+        score = (float) changedCount / blockCount;
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        return score;
+    }
+
+    /**
+     * 最近一次检测的变化块数是否达到{@link #setMinChangedBlocks(int)}设置的数量
+     */
+    public boolean hasMotion() {
+        return changedCount >= minChangedBlocks;
+    }
+
+    /**
+     * 最近一次检测的运动分数
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * 最近一次检测的变化块数
+     */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * 第column列、第row行的块在最近一次检测中是否变化
+     */
+    public boolean isBlockChanged(int column, int row) {
+        return changed[row * columns + column];
+    }
+
+    /**
+     * 将最近一次检测的变化块按行优先顺序写入mask
+     *
+     * @param mask 长度至少为columns * rows
+     */
+    public void getChangedBlocks(boolean[] mask) {
+        System.arraycopy(changed, 0, mask, 0, changed.length);
+    }
+
+    /**
+     * 丢弃上一帧的状态，下一帧视为第一帧
+     */
+    public void reset() {
+        hasPrevious = false;
+        Arrays.fill(changed, false);
+        changedCount = 0;
+        score = 0;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
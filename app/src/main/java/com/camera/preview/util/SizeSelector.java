@@ -0,0 +1,139 @@
+package com.camera.preview.util;
+
+/**
+ * 按目标帧率和像素吞吐预算选择输出尺寸和自动曝光帧率范围。
+ * 只依赖整型数组，摄像头的能力表（输出尺寸、每个尺寸的最小帧间隔、AE目标帧率范围）由调用者从
+ * StreamConfigurationMap和CameraCharacteristics中读出后传入，便于用记录下来的能力表做单元测试。
+ * 尺寸以宽、高为一组，帧率范围以下限、上限为一组，紧凑地存放在int数组中。
+ */
+public class SizeSelector {
+    /**
+     * 判断宽高比一致时允许的误差
+     */
+    private static final float RATIO_TOLERANCE = 0.02f;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * 选择能维持目标帧率的最大尺寸：
+     * 最小帧间隔不超过1 / targetFps，且宽 * 高 * targetFps不超过像素吞吐预算的尺寸中，
+     * 宽高比与view一致的尺寸优先，其次面积最大，面积相同时宽高比更接近view的优先
+     *
+     * @param sizes             候选尺寸，宽、高为一组
+     * @param minFrameDurations 每个尺寸的最小帧间隔，单位纳秒，0表示未知，视为可以维持
+     * @param minWidth          最小宽度，0表示不限制
+     * @param minHeight         最小高度，0表示不限制
+     * @param maxWidth          最大宽度，0表示不限制
+     * @param maxHeight         最大高度，0表示不限制
+     * @param viewRatio         view的宽高比，长边比短边，0表示不考虑宽高比
+     * @param targetFps         目标帧率
+     * @param pixelBudget       每秒最多处理的像素数，0表示不限制
+     * @return 选中尺寸的下标，即宽在sizes中的位置为2 * index；没有满足条件的尺寸时返回-1
+     */
+    public static int selectSize(int[] sizes, long[] minFrameDurations, int minWidth, int minHeight,
+                                 int maxWidth, int maxHeight, float viewRatio, float targetFps, long pixelBudget) {
+        return selectSize(sizes, minFrameDurations, null, minWidth, minHeight, maxWidth, maxHeight,
+                viewRatio, targetFps, pixelBudget);
+    }
+
+    /**
+     * 与{@link #selectSize(int[], long[], int, int, int, int, float, float, long)}相同，
+     * 但每个尺寸计入像素吞吐预算的像素数由调用者给出，用于预览尺寸决定了另一路需要处理的流（如分析流）的尺寸时
+     *
+     * @param budgetPixels 每个尺寸每帧计入预算的像素数，null表示按尺寸本身的面积计算
+     */
+    public static int selectSize(int[] sizes, long[] minFrameDurations, long[] budgetPixels, int minWidth, int minHeight,
+                                 int maxWidth, int maxHeight, float viewRatio, float targetFps, long pixelBudget) {
+        if (targetFps <= 0) {
+            throw new IllegalArgumentException("targetFps must be positive, now " + targetFps);
+        }
+        if (sizes.length / 2 != minFrameDurations.length) {
+            throw new IllegalArgumentException("sizes and minFrameDurations do not match");
+        }
+        if (budgetPixels != null && budgetPixels.length != minFrameDurations.length) {
+            throw new IllegalArgumentException("sizes and budgetPixels do not match");
+        }
+        long maxFrameDuration = (long) (NANOS_PER_SECOND / targetFps);
+        int best = -1;
+        boolean bestMatchesRatio = false;
+        long bestArea = 0;
+        float bestRatioDiff = 0;
+        for (int i = 0; i < minFrameDurations.length; i++) {
+            int width = sizes[2 * i];
+            int height = sizes[2 * i + 1];
+            if (width < minWidth || height < minHeight
+                    || (maxWidth > 0 && width > maxWidth) || (maxHeight > 0 && height > maxHeight)) {
+                continue;
+            }
+            if (minFrameDurations[i] > maxFrameDuration) {
+                continue;
+            }
+            long area = (long) width * height;
+            long pixels = budgetPixels == null ? area : budgetPixels[i];
+            if (pixelBudget > 0 && pixels * targetFps > pixelBudget) {
+                continue;
+            }
+            float ratioDiff = viewRatio > 0 ? Math.abs(longSideRatio(width, height) - viewRatio) : 0;
+            boolean matchesRatio = ratioDiff < RATIO_TOLERANCE;
+            boolean better;
+            if (best < 0 || matchesRatio != bestMatchesRatio) {
+                better = best < 0 || matchesRatio;
+            } else if (area != bestArea) {
+                better = area > bestArea;
+            } else {
+                better = ratioDiff < bestRatioDiff;
+            }
+            if (better) {
+                best = i;
+                bestMatchesRatio = matchesRatio;
+                bestArea = area;
+                bestRatioDiff = ratioDiff;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 选择自动曝光的目标帧率范围：上限不低于目标帧率的范围中上限最小的，
+     * 上限相同时下限更高的优先，帧率更稳定；没有能达到目标帧率的范围时选择上限最大的
+     *
+     * @param fpsRanges 候选范围，下限、上限为一组
+     * @param targetFps 目标帧率
+     * @return 选中范围的下标，即下限在fpsRanges中的位置为2 * index；没有候选范围时返回-1
+     */
+    public static int selectFpsRange(int[] fpsRanges, float targetFps) {
+        int best = -1;
+        boolean bestReaches = false;
+        for (int i = 0; i < fpsRanges.length / 2; i++) {
+            int lower = fpsRanges[2 * i];
+            int upper = fpsRanges[2 * i + 1];
+            boolean reaches = upper >= targetFps;
+            if (best < 0) {
+                best = i;
+                bestReaches = reaches;
+                continue;
+            }
+            int bestLower = fpsRanges[2 * best];
+            int bestUpper = fpsRanges[2 * best + 1];
+            boolean better;
+            if (reaches != bestReaches) {
+                better = reaches;
+            } else if (upper != bestUpper) {
+                better = reaches ? upper < bestUpper : upper > bestUpper;
+            } else {
+                better = lower > bestLower;
+            }
+            if (better) {
+                best = i;
+                bestReaches = reaches;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 长边与短边之比
+     */
+    public static float longSideRatio(int width, int height) {
+        return width > height ? (float) width / height : (float) height / width;
+    }
+}
@@ -0,0 +1,146 @@
+package com.camera.preview.util;
+
+/**
+ * 直接从紧凑排列的YUV420或灰度数据中裁剪矩形区域，输出紧凑的YUV420或灰度数据，
+ * 灰度数据只能输出灰度数据，处理耗时只与裁剪区域大小相关，与整帧大小无关。
+ * 矩形以left、top、right、bottom四个int为一组连续存放。
+ */
+public class YuvCropper {
+
+    /**
+     * 将矩形限制在帧范围内，并按色度对齐：left、top向下取偶数，right、bottom向上取偶数
+     *
+     * @param rects  矩形数组
+     * @param index  矩形序号
+     * @param width  帧宽度，需为偶数
+     * @param height 帧高度，需为偶数
+     * @return 对齐后的矩形是否非空
+     */
+    public static boolean alignRect(int[] rects, int index, int width, int height) {
+        int offset = index * 4;
+        int left = clamp(rects[offset], width) & ~1;
+        int top = clamp(rects[offset + 1], height) & ~1;
+        int right = clamp(rects[offset + 2] + 1, width) & ~1;
+        int bottom = clamp(rects[offset + 3] + 1, height) & ~1;
+        rects[offset] = left;
+        rects[offset + 1] = top;
+        rects[offset + 2] = Math.max(left, right);
+        rects[offset + 3] = Math.max(top, bottom);
+        return right > left && bottom > top;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    /**
+     * 裁剪出矩形区域
+     *
+     * @param src        原数据
+     * @param srcFormat  原格式，取值为{@link ImageUtil#FORMAT_NV21}等，可以为{@link ImageUtil#FORMAT_GRAY}
+     * @param width      帧宽度
+     * @param height     帧高度
+     * @param left       裁剪区域左边界，非灰度输出时需为偶数
+     * @param top        裁剪区域上边界，非灰度输出时需为偶数
+     * @param cropWidth  裁剪宽度，非灰度输出时需为偶数
+     * @param cropHeight 裁剪高度，非灰度输出时需为偶数
+     * @param dst        生成的数据，长度至少为{@link ImageUtil#getBufferSize(int, int, int)}
+     * @param dstFormat  目标格式，可以为{@link ImageUtil#FORMAT_GRAY}，原格式为灰度时只能为灰度
+     */
+    public static void crop(byte[] src, int srcFormat, int width, int height, int left, int top, int cropWidth, int cropHeight,
+                            byte[] dst, int dstFormat) {
+        checkCrop(src, srcFormat, width, height, left, top, cropWidth, cropHeight, dstFormat);
+        if (dst.length < ImageUtil.getBufferSize(dstFormat, cropWidth, cropHeight)) {
+            throw new IllegalArgumentException("dst is too small for " + cropWidth + "x" + cropHeight);
+        }
+        for (int row = 0; row < cropHeight; row++) {
+            System.arraycopy(src, (top + row) * width + left, dst, row * cropWidth, cropWidth);
+        }
+        if (dstFormat == ImageUtil.FORMAT_GRAY) {
+            return;
+        }
+        int chromaWidth = cropWidth / 2;
+        int chromaHeight = cropHeight / 2;
+        int srcPixelStride = ImageUtil.getChromaPixelStride(srcFormat);
+        int dstPixelStride = ImageUtil.getChromaPixelStride(dstFormat);
+        int srcRowStride = width / 2 * srcPixelStride;
+        int dstRowStride = chromaWidth * dstPixelStride;
+        int srcStart = (top / 2) * srcRowStride + (left / 2) * srcPixelStride;
+        int srcU = ImageUtil.getUOffset(srcFormat, width, height) + srcStart;
+        int srcV = ImageUtil.getVOffset(srcFormat, width, height) + srcStart;
+        int dstU = ImageUtil.getUOffset(dstFormat, cropWidth, cropHeight);
+        int dstV = ImageUtil.getVOffset(dstFormat, cropWidth, cropHeight);
+        if (srcFormat == dstFormat && srcPixelStride == 2) {
+            // 相同的半平面格式，交错的色度按行整体拷贝
+            int dstStart = Math.min(dstU, dstV);
+            int srcChromaStart = Math.min(srcU, srcV);
+            for (int row = 0; row < chromaHeight; row++) {
+                System.arraycopy(src, srcChromaStart + row * srcRowStride, dst, dstStart + row * dstRowStride, dstRowStride);
+            }
+            return;
+        }
+        for (int row = 0; row < chromaHeight; row++) {
+            int srcRow = row * srcRowStride;
+            int dstRow = row * dstRowStride;
+            if (srcPixelStride == 1 && dstPixelStride == 1) {
+                System.arraycopy(src, srcU + srcRow, dst, dstU + dstRow, chromaWidth);
+                System.arraycopy(src, srcV + srcRow, dst, dstV + dstRow, chromaWidth);
+            } else {
+                for (int col = 0; col < chromaWidth; col++) {
+                    dst[dstU + dstRow + col * dstPixelStride] = src[srcU + srcRow + col * srcPixelStride];
+                    dst[dstV + dstRow + col * dstPixelStride] = src[srcV + srcRow + col * srcPixelStride];
+                }
+            }
+        }
+    }
+
+    /**
+     * 裁剪出矩形区域并用双线性插值缩放到固定尺寸
+     *
+     * @param src        原数据
+     * @param srcFormat  原格式，取值为{@link ImageUtil#FORMAT_NV21}等，可以为{@link ImageUtil#FORMAT_GRAY}
+     * @param width      帧宽度
+     * @param height     帧高度
+     * @param left       裁剪区域左边界，非灰度输出时需为偶数
+     * @param top        裁剪区域上边界，非灰度输出时需为偶数
+     * @param cropWidth  裁剪宽度，非灰度输出时需为偶数
+     * @param cropHeight 裁剪高度，非灰度输出时需为偶数
+     * @param dst        生成的数据
+     * @param dstFormat  目标格式，可以为{@link ImageUtil#FORMAT_GRAY}，原格式为灰度时只能为灰度
+     * @param dstWidth   目标宽度，非灰度格式需为偶数
+     * @param dstHeight  目标高度，非灰度格式需为偶数
+     */
+    public static void cropAndScale(byte[] src, int srcFormat, int width, int height, int left, int top, int cropWidth, int cropHeight,
+                                    byte[] dst, int dstFormat, int dstWidth, int dstHeight) {
+        checkCrop(src, srcFormat, width, height, left, top, cropWidth, cropHeight, dstFormat);
+        YuvScaler.checkDst(dst, dstFormat, dstWidth, dstHeight);
+        YuvScaler.bilinearPlane(src, top * width + left, 1, width, cropWidth, cropHeight,
+                dst, 0, 1, dstWidth, dstWidth, dstHeight);
+        if (dstFormat == ImageUtil.FORMAT_GRAY) {
+            return;
+        }
+        int srcPixelStride = ImageUtil.getChromaPixelStride(srcFormat);
+        int dstPixelStride = ImageUtil.getChromaPixelStride(dstFormat);
+        int srcRowStride = width / 2 * srcPixelStride;
+        int dstRowStride = dstWidth / 2 * dstPixelStride;
+        int srcStart = (top / 2) * srcRowStride + (left / 2) * srcPixelStride;
+        YuvScaler.bilinearPlane(src, ImageUtil.getUOffset(srcFormat, width, height) + srcStart, srcPixelStride, srcRowStride,
+                cropWidth / 2, cropHeight / 2,
+                dst, ImageUtil.getUOffset(dstFormat, dstWidth, dstHeight), dstPixelStride, dstRowStride, dstWidth / 2, dstHeight / 2);
+        YuvScaler.bilinearPlane(src, ImageUtil.getVOffset(srcFormat, width, height) + srcStart, srcPixelStride, srcRowStride,
+                cropWidth / 2, cropHeight / 2,
+                dst, ImageUtil.getVOffset(dstFormat, dstWidth, dstHeight), dstPixelStride, dstRowStride, dstWidth / 2, dstHeight / 2);
+    }
+
+    private static void checkCrop(byte[] src, int srcFormat, int width, int height, int left, int top,
+                                  int cropWidth, int cropHeight, int dstFormat) {
+        YuvScaler.checkSrc(src, srcFormat, width, height, dstFormat);
+        if (left < 0 || top < 0 || cropWidth <= 0 || cropHeight <= 0 || left + cropWidth > width || top + cropHeight > height) {
+            throw new IllegalArgumentException("crop " + left + "," + top + " " + cropWidth + "x" + cropHeight
+                    + " is out of " + width + "x" + height);
+        }
+        if (dstFormat != ImageUtil.FORMAT_GRAY && ((left | top | cropWidth | cropHeight) & 1) != 0) {
+            throw new IllegalArgumentException("crop must be aligned to chroma, use alignRect first");
+        }
+    }
+}
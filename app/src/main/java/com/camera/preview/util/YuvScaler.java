@@ -0,0 +1,230 @@
+package com.camera.preview.util;
+
+/**
+ * 在YUV域缩小图像，直接由全分辨率的紧凑YUV420数据生成小尺寸的YUV420或灰度数据，
+ * 不经过RGB或JPEG。灰度数据只能缩放为灰度数据。提供2、4、8倍整数盒式抽取（区域平均）和任意比例的双线性插值。
+ * 生成的数据写入调用方提供的数组，不分配内存。
+ */
+public class YuvScaler {
+
+    /**
+     * 双线性插值坐标的定点小数位数
+     */
+    private static final int SHIFT = 16;
+    private static final int ONE = 1 << SHIFT;
+
+    /**
+     * 缩放到指定尺寸，宽高恰好是2、4、8倍抽取且满足对齐要求时使用盒式抽取，否则使用双线性插值
+     *
+     * @param src       原数据
+     * @param srcFormat 原格式，取值为{@link ImageUtil#FORMAT_NV21}、{@link ImageUtil#FORMAT_NV12}、
+     *                  {@link ImageUtil#FORMAT_I420}、{@link ImageUtil#FORMAT_YV12}或{@link ImageUtil#FORMAT_GRAY}
+     * @param width     原宽度
+     * @param height    原高度
+     * @param dst       生成的数据，长度至少为{@link ImageUtil#getBufferSize(int, int, int)}
+     * @param dstFormat 目标格式，可以为{@link ImageUtil#FORMAT_GRAY}，原格式为灰度时只能为灰度
+     * @param dstWidth  目标宽度，非灰度格式需为偶数
+     * @param dstHeight 目标高度，非灰度格式需为偶数
+     */
+    public static void scale(byte[] src, int srcFormat, int width, int height,
+                             byte[] dst, int dstFormat, int dstWidth, int dstHeight) {
+        int factor = getBoxFactor(width, height, dstWidth, dstHeight, dstFormat);
+        if (factor > 0) {
+            downscaleBox(src, srcFormat, width, height, factor, dst, dstFormat);
+        } else {
+            scaleBilinear(src, srcFormat, width, height, dst, dstFormat, dstWidth, dstHeight);
+        }
+    }
+
+    /**
+     * 判断能否使用盒式抽取
+     *
+     * @return 抽取倍数，不能使用时返回0
+     */
+    public static int getBoxFactor(int width, int height, int dstWidth, int dstHeight, int dstFormat) {
+        for (int factor = 2; factor <= 8; factor <<= 1) {
+            int alignment = dstFormat == ImageUtil.FORMAT_GRAY ? factor : factor * 2;
+            if (dstWidth * factor == width && dstHeight * factor == height
+                    && width % alignment == 0 && height % alignment == 0) {
+                return factor;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 整数倍盒式抽取，每个目标像素取对应factor * factor区域的平均值
+     *
+     * @param src       原数据
+     * @param srcFormat 原格式
+     * @param width     原宽度，需为factor * 2的整数倍，灰度输出时为factor的整数倍即可
+     * @param height    原高度，需为factor * 2的整数倍，灰度输出时为factor的整数倍即可
+     * @param factor    抽取倍数，取值为2、4、8
+     * @param dst       生成的数据，尺寸为width / factor * height / factor
+     * @param dstFormat 目标格式，可以为{@link ImageUtil#FORMAT_GRAY}
+     */
+    public static void downscaleBox(byte[] src, int srcFormat, int width, int height, int factor,
+                                    byte[] dst, int dstFormat) {
+        if (factor != 2 && factor != 4 && factor != 8) {
+            throw new IllegalArgumentException("factor must be 2, 4 or 8, now " + factor);
+        }
+        // 输出色度平面时原色度平面的宽高也需要能被factor整除
+        int alignment = dstFormat == ImageUtil.FORMAT_GRAY ? factor : factor * 2;
+        if (width % alignment != 0 || height % alignment != 0) {
+            throw new IllegalArgumentException(width + "x" + height + " can not be divided by " + alignment);
+        }
+        int dstWidth = width / factor;
+        int dstHeight = height / factor;
+        checkBuffers(src, srcFormat, width, height, dst, dstFormat, dstWidth, dstHeight);
+        int shift = Integer.numberOfTrailingZeros(factor) * 2;
+        boxPlane(src, 0, 1, width, dstWidth, dstHeight, factor, shift, dst, 0, 1, dstWidth);
+        if (dstFormat == ImageUtil.FORMAT_GRAY) {
+            return;
+        }
+        int srcPixelStride = ImageUtil.getChromaPixelStride(srcFormat);
+        int dstPixelStride = ImageUtil.getChromaPixelStride(dstFormat);
+        int srcChromaRowStride = width / 2 * srcPixelStride;
+        int dstChromaRowStride = dstWidth / 2 * dstPixelStride;
+        boxPlane(src, ImageUtil.getUOffset(srcFormat, width, height), srcPixelStride, srcChromaRowStride,
+                dstWidth / 2, dstHeight / 2, factor, shift,
+                dst, ImageUtil.getUOffset(dstFormat, dstWidth, dstHeight), dstPixelStride, dstChromaRowStride);
+        boxPlane(src, ImageUtil.getVOffset(srcFormat, width, height), srcPixelStride, srcChromaRowStride,
+                dstWidth / 2, dstHeight / 2, factor, shift,
+                dst, ImageUtil.getVOffset(dstFormat, dstWidth, dstHeight), dstPixelStride, dstChromaRowStride);
+    }
+
+    private static void boxPlane(byte[] src, int srcOffset, int srcPixelStride, int srcRowStride,
+                                 int dstWidth, int dstHeight, int factor, int shift,
+                                 byte[] dst, int dstOffset, int dstPixelStride, int dstRowStride) {
+        int round = 1 << (shift - 1);
+        int blockStep = factor * srcPixelStride;
+        for (int y = 0; y < dstHeight; y++) {
+            int srcRow = srcOffset + y * factor * srcRowStride;
+            int dstIndex = dstOffset + y * dstRowStride;
+            if (factor == 2) {
+                int top = srcRow;
+                int bottom = srcRow + srcRowStride;
+                for (int x = 0; x < dstWidth; x++) {
+                    int sum = (src[top] & 0xff) + (src[top + srcPixelStride] & 0xff)
+                            + (src[bottom] & 0xff) + (src[bottom + srcPixelStride] & 0xff);
+                    dst[dstIndex] = (byte) ((sum + round) >> shift);
+                    top += blockStep;
+                    bottom += blockStep;
+                    dstIndex += dstPixelStride;
+                }
+            } else {
+                int blockStart = srcRow;
+                for (int x = 0; x < dstWidth; x++) {
+                    int sum = 0;
+                    int rowStart = blockStart;
+                    for (int j = 0; j < factor; j++) {
+                        int index = rowStart;
+                        for (int i = 0; i < factor; i++) {
+                            sum += src[index] & 0xff;
+                            index += srcPixelStride;
+                        }
+                        rowStart += srcRowStride;
+                    }
+                    dst[dstIndex] = (byte) ((sum + round) >> shift);
+                    blockStart += blockStep;
+                    dstIndex += dstPixelStride;
+                }
+            }
+        }
+    }
+
+    /**
+     * 任意比例的双线性插值，像素中心对齐。
+     * 缩小超过2倍时每个目标像素只参考4个原像素，会有混叠，整数倍缩小优先使用{@link #downscaleBox}
+     *
+     * @param src       原数据
+     * @param srcFormat 原格式
+     * @param width     原宽度
+     * @param height    原高度
+     * @param dst       生成的数据
+     * @param dstFormat 目标格式，可以为{@link ImageUtil#FORMAT_GRAY}
+     * @param dstWidth  目标宽度，非灰度格式需为偶数
+     * @param dstHeight 目标高度，非灰度格式需为偶数
+     */
+    public static void scaleBilinear(byte[] src, int srcFormat, int width, int height,
+                                     byte[] dst, int dstFormat, int dstWidth, int dstHeight) {
+        checkBuffers(src, srcFormat, width, height, dst, dstFormat, dstWidth, dstHeight);
+        bilinearPlane(src, 0, 1, width, width, height, dst, 0, 1, dstWidth, dstWidth, dstHeight);
+        if (dstFormat == ImageUtil.FORMAT_GRAY) {
+            return;
+        }
+        int srcPixelStride = ImageUtil.getChromaPixelStride(srcFormat);
+        int dstPixelStride = ImageUtil.getChromaPixelStride(dstFormat);
+        int srcChromaRowStride = width / 2 * srcPixelStride;
+        int dstChromaRowStride = dstWidth / 2 * dstPixelStride;
+        bilinearPlane(src, ImageUtil.getUOffset(srcFormat, width, height), srcPixelStride, srcChromaRowStride, width / 2, height / 2,
+                dst, ImageUtil.getUOffset(dstFormat, dstWidth, dstHeight), dstPixelStride, dstChromaRowStride, dstWidth / 2, dstHeight / 2);
+        bilinearPlane(src, ImageUtil.getVOffset(srcFormat, width, height), srcPixelStride, srcChromaRowStride, width / 2, height / 2,
+                dst, ImageUtil.getVOffset(dstFormat, dstWidth, dstHeight), dstPixelStride, dstChromaRowStride, dstWidth / 2, dstHeight / 2);
+    }
+
+    static void bilinearPlane(byte[] src, int srcOffset, int srcPixelStride, int srcRowStride, int srcWidth, int srcHeight,
+                              byte[] dst, int dstOffset, int dstPixelStride, int dstRowStride, int dstWidth, int dstHeight) {
+        // 定点数表示的步长和起点，(dst + 0.5) * scale - 0.5
+        long scaleX = ((long) srcWidth << SHIFT) / dstWidth;
+        long scaleY = ((long) srcHeight << SHIFT) / dstHeight;
+        int startX = (int) ((scaleX >> 1) - (ONE >> 1));
+        int startY = (int) ((scaleY >> 1) - (ONE >> 1));
+        int maxX = srcWidth - 1;
+        int maxY = srcHeight - 1;
+        for (int y = 0; y < dstHeight; y++) {
+            int fy = (int) (startY + y * scaleY);
+            if (fy < 0) {
+                fy = 0;
+            }
+            int y0 = fy >> SHIFT;
+            int y1 = y0 < maxY ? y0 + 1 : maxY;
+            int wy = (fy >> 8) & 0xff;
+            int row0 = srcOffset + y0 * srcRowStride;
+            int row1 = srcOffset + y1 * srcRowStride;
+            int dstIndex = dstOffset + y * dstRowStride;
+            long fx = startX;
+            for (int x = 0; x < dstWidth; x++) {
+                int clampedX = fx < 0 ? 0 : (int) fx;
+                int x0 = clampedX >> SHIFT;
+                int x1 = x0 < maxX ? x0 + 1 : maxX;
+                int wx = (clampedX >> 8) & 0xff;
+                int i0 = x0 * srcPixelStride;
+                int i1 = x1 * srcPixelStride;
+                int top = ((src[row0 + i0] & 0xff) << 8) + ((src[row0 + i1] & 0xff) - (src[row0 + i0] & 0xff)) * wx;
+                int bottom = ((src[row1 + i0] & 0xff) << 8) + ((src[row1 + i1] & 0xff) - (src[row1 + i0] & 0xff)) * wx;
+                int value = (top << 8) + (bottom - top) * wy;
+                dst[dstIndex] = (byte) ((value + (1 << 15)) >> 16);
+                dstIndex += dstPixelStride;
+                fx += scaleX;
+            }
+        }
+    }
+
+    private static void checkBuffers(byte[] src, int srcFormat, int width, int height,
+                                     byte[] dst, int dstFormat, int dstWidth, int dstHeight) {
+        checkSrc(src, srcFormat, width, height, dstFormat);
+        checkDst(dst, dstFormat, dstWidth, dstHeight);
+    }
+
+    static void checkSrc(byte[] src, int srcFormat, int width, int height, int dstFormat) {
+        if (srcFormat == ImageUtil.FORMAT_GRAY && dstFormat != ImageUtil.FORMAT_GRAY) {
+            throw new IllegalArgumentException("gray source has no chroma, dstFormat must be FORMAT_GRAY, now " + dstFormat);
+        }
+        if (src.length < ImageUtil.getBufferSize(srcFormat, width, height)) {
+            throw new IllegalArgumentException("src is too small for " + width + "x" + height);
+        }
+    }
+
+    static void checkDst(byte[] dst, int dstFormat, int dstWidth, int dstHeight) {
+        if (dstWidth <= 0 || dstHeight <= 0) {
+            throw new IllegalArgumentException("dst size must be positive, now " + dstWidth + "x" + dstHeight);
+        }
+        if (dstFormat != ImageUtil.FORMAT_GRAY && ((dstWidth & 1) != 0 || (dstHeight & 1) != 0)) {
+            throw new IllegalArgumentException("dst size must be even, now " + dstWidth + "x" + dstHeight);
+        }
+        if (dst.length < ImageUtil.getBufferSize(dstFormat, dstWidth, dstHeight)) {
+            throw new IllegalArgumentException("dst is too small for " + dstWidth + "x" + dstHeight);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.camera.preview.util;
+
+/**
+ * 使用整数定点运算将紧凑排列的YUV420（nv21、nv12、i420、yv12）转换为ARGB_8888或RGB565，
+ * 可在转换的同时按采样率缩小，输出到调用方提供的数组中，不分配内存。
+ * 系数为BT.601，支持全范围（JFIF，相机输出一般为此范围）和有限范围（Y为16~235）。
+ */
+public class YuvToRgbConverter {
+    /**
+     * 定点小数位数
+     */
+    private static final int SHIFT = 14;
+    private static final int HALF = 1 << (SHIFT - 1);
+
+    // 全范围：R = Y + 1.402V'，G = Y - 0.344U' - 0.714V'，B = Y + 1.772U'
+    private static final int FULL_Y = 1 << SHIFT;
+    private static final int FULL_RV = 22970;
+    private static final int FULL_GU = 5638;
+    private static final int FULL_GV = 11700;
+    private static final int FULL_BU = 29032;
+
+    // 有限范围：R = 1.164(Y-16) + 1.596V'，G = 1.164(Y-16) - 0.391U' - 0.813V'，B = 1.164(Y-16) + 2.018U'
+    private static final int LIMITED_Y = 19077;
+    private static final int LIMITED_RV = 26149;
+    private static final int LIMITED_GU = 6419;
+    private static final int LIMITED_GV = 13320;
+    private static final int LIMITED_BU = 33050;
+
+    /**
+     * 获取按采样率缩小后的尺寸
+     *
+     * @param size       原尺寸
+     * @param sampleSize 采样率
+     * @return 缩小后的尺寸
+     */
+    public static int getSampledSize(int size, int sampleSize) {
+        return size / sampleSize;
+    }
+
+    /**
+     * 转换为ARGB_8888，输出可直接用于Bitmap.createBitmap或Bitmap.setPixels
+     *
+     * @param src        原数据
+     * @param format     原数据格式，取值为{@link ImageUtil#FORMAT_NV21}等，不支持没有色度的{@link ImageUtil#FORMAT_GRAY}
+     * @param width      图像宽度
+     * @param height     图像高度
+     * @param argb       输出数据，长度至少为缩小后的宽 * 高
+     * @param sampleSize 采样率，1为不缩小，4为宽高各缩小为1/4
+     * @param fullRange  是否为全范围数据
+     */
+    public static void yuv420ToArgb(byte[] src, int format, int width, int height, int[] argb, int sampleSize, boolean fullRange) {
+        int outWidth = checkArgs(src, format, width, height, argb.length, sampleSize);
+        int outHeight = getSampledSize(height, sampleSize);
+        int yScale = fullRange ? FULL_Y : LIMITED_Y;
+        int yOffset = fullRange ? 0 : 16;
+        int rv = fullRange ? FULL_RV : LIMITED_RV;
+        int gu = fullRange ? FULL_GU : LIMITED_GU;
+        int gv = fullRange ? FULL_GV : LIMITED_GV;
+        int bu = fullRange ? FULL_BU : LIMITED_BU;
+        int uOffset = ImageUtil.getUOffset(format, width, height);
+        int vOffset = ImageUtil.getVOffset(format, width, height);
+        int pixelStride = ImageUtil.getChromaPixelStride(format);
+        int chromaRowStride = width / 2 * pixelStride;
+
+        int index = 0;
+        for (int row = 0; row < outHeight; row++) {
+            int srcRow = row * sampleSize;
+            int yRowOffset = srcRow * width;
+            int chromaRowOffset = (srcRow >> 1) * chromaRowStride;
+            for (int col = 0; col < outWidth; col++) {
+                int srcCol = col * sampleSize;
+                int chromaIndex = chromaRowOffset + (srcCol >> 1) * pixelStride;
+                int y = ((src[yRowOffset + srcCol] & 0xff) - yOffset) * yScale + HALF;
+                int u = (src[uOffset + chromaIndex] & 0xff) - 128;
+                int v = (src[vOffset + chromaIndex] & 0xff) - 128;
+                int r = clamp((y + rv * v) >> SHIFT);
+                int g = clamp((y - gu * u - gv * v) >> SHIFT);
+                int b = clamp((y + bu * u) >> SHIFT);
+                argb[index++] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * 转换为RGB565，输出可用于Bitmap.Config.RGB_565的Bitmap.copyPixelsFromBuffer
+     *
+     * @param src        原数据
+     * @param format     原数据格式，取值为{@link ImageUtil#FORMAT_NV21}等，不支持没有色度的{@link ImageUtil#FORMAT_GRAY}
+     * @param width      图像宽度
+     * @param height     图像高度
+     * @param rgb565     输出数据，长度至少为缩小后的宽 * 高
+     * @param sampleSize 采样率，1为不缩小，4为宽高各缩小为1/4
+     * @param fullRange  是否为全范围数据
+     */
+    public static void yuv420ToRgb565(byte[] src, int format, int width, int height, short[] rgb565, int sampleSize, boolean fullRange) {
+        int outWidth = checkArgs(src, format, width, height, rgb565.length, sampleSize);
+        int outHeight = getSampledSize(height, sampleSize);
+        int yScale = fullRange ? FULL_Y : LIMITED_Y;
+        int yOffset = fullRange ? 0 : 16;
+        int rv = fullRange ? FULL_RV : LIMITED_RV;
+        int gu = fullRange ? FULL_GU : LIMITED_GU;
+        int gv = fullRange ? FULL_GV : LIMITED_GV;
+        int bu = fullRange ? FULL_BU : LIMITED_BU;
+        int uOffset = ImageUtil.getUOffset(format, width, height);
+        int vOffset = ImageUtil.getVOffset(format, width, height);
+        int pixelStride = ImageUtil.getChromaPixelStride(format);
+        int chromaRowStride = width / 2 * pixelStride;
+
+        int index = 0;
+        for (int row = 0; row < outHeight; row++) {
+            int srcRow = row * sampleSize;
+            int yRowOffset = srcRow * width;
+            int chromaRowOffset = (srcRow >> 1) * chromaRowStride;
+            for (int col = 0; col < outWidth; col++) {
+                int srcCol = col * sampleSize;
+                int chromaIndex = chromaRowOffset + (srcCol >> 1) * pixelStride;
+                int y = ((src[yRowOffset + srcCol] & 0xff) - yOffset) * yScale + HALF;
+                int u = (src[uOffset + chromaIndex] & 0xff) - 128;
+                int v = (src[vOffset + chromaIndex] & 0xff) - 128;
+                int r = clamp((y + rv * v) >> SHIFT);
+                int g = clamp((y - gu * u - gv * v) >> SHIFT);
+                int b = clamp((y + bu * u) >> SHIFT);
+                rgb565[index++] = (short) (((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3));
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int checkArgs(byte[] src, int format, int width, int height, int dstLength, int sampleSize) {
+        if (format == ImageUtil.FORMAT_GRAY) {
+            throw new IllegalArgumentException("gray data has no chroma and can not be converted to RGB");
+        }
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be at least 1");
+        }
+        if (src.length < ImageUtil.getYuv420Size(width, height)) {
+            throw new IllegalArgumentException("src is too small for " + width + "x" + height);
+        }
+        int outWidth = getSampledSize(width, sampleSize);
+        if (dstLength < outWidth * getSampledSize(height, sampleSize)) {
+            throw new IllegalArgumentException("dst is too small for sampleSize " + sampleSize);
+        }
+        return outWidth;
+    }
+}
@@ -4,18 +4,63 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.view.View;
 
 import androidx.annotation.Nullable;
 
-import java.util.List;
+import com.camera.preview.util.FrameTransform;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在预览画面上绘制矩形框。
+ * 矩形以left、top、right、bottom四个int为一组存放在三个缓冲区中：生产者写入后台缓冲区，onDraw只读取前台缓冲区，
+ * 第三个缓冲区用于交接，生产者写完后用原子操作把后台缓冲区与交接缓冲区交换，onDraw发现有新数据时再把前台缓冲区与交接缓冲区交换。
+ * 两边都不会等待对方，也不会读到写了一半的数据。
+ * 帧坐标到view坐标的变换在尺寸或方向变化时预先计算，推送和绘制过程都不分配内存，可以按相机帧率推送。
+ */
 public class ShowRectView extends View {
+    /**
+     * 缓冲区初始能容纳的矩形个数，超出时扩容
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * swapState中交接缓冲区下标以外的标志位，表示交接缓冲区中有onDraw尚未取走的数据
+     */
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
 
     private Paint mpaint;
-    private List<Rect> rect;
+
+    /**
+     * 三个缓冲区，每个缓冲区同一时刻只属于生产者、onDraw或交接位置之一
+     */
+    private final int[][] rects = new int[3][];
+    private final int[] counts = new int[3];
+    /**
+     * 交接缓冲区的下标，有新数据时带有{@link #FRESH}标志
+     */
+    private final AtomicInteger swapState = new AtomicInteger(1);
+    /**
+     * onDraw使用的缓冲区下标，只在UI线程访问
+     */
+    private int frontIndex = 0;
+    /**
+     * 生产者写入的缓冲区下标，只在持有writeLock时访问，writeLock只在生产者之间互斥
+     */
+    private int backIndex = 2;
+    private final Object writeLock = new Object();
+
+    private int imageWidth;
+    private int imageHeight;
+    private int degrees;
+    private boolean mirror;
+    private int displayDegrees;
+    /**
+     * 帧坐标到view坐标的变换，view尺寸或帧的方向变化时重新计算
+     */
+    private volatile FrameTransform transform;
 
     public ShowRectView(Context context) {
         this(context, null);
@@ -34,20 +79,119 @@ public class ShowRectView extends View {
         mpaint.setStyle(Paint.Style.STROKE);//空心
         // 设置paint的外框宽度
         mpaint.setStrokeWidth(6f);
+        for (int i = 0; i < rects.length; i++) {
+            rects[i] = new int[INITIAL_CAPACITY * 4];
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (rect != null && rect.size() > 0) {
-            for (int i = 0; i < rect.size(); i++) {
-                canvas.drawRect(rect.get(i), mpaint);
+        if ((swapState.get() & FRESH) != 0) {
+            frontIndex = swapState.getAndSet(frontIndex) & INDEX_MASK;
+        }
+        int[] front = rects[frontIndex];
+        int count = counts[frontIndex];
+        for (int i = 0; i < count * 4; i += 4) {
+            canvas.drawRect(front[i], front[i + 1], front[i + 2], front[i + 3], mpaint);
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateTransform();
+    }
+
+    /**
+     * 设置帧的尺寸和显示方向，与预览画面的变换一致，之后可通过{@link #setImageRects(int[], int)}推送帧坐标中的矩形
+     *
+     * @param imageWidth  帧宽度
+     * @param imageHeight 帧高度
+     * @param degrees     帧显示时需要顺时针旋转的角度，取值为0、90、180、270
+     * @param mirror      旋转后是否水平镜像
+     * @param displayDegrees 屏幕相对自然方向的旋转角度，取值为0、90、180、270，决定预览画面是拉伸还是裁剪
+     */
+    public void setImageGeometry(int imageWidth, int imageHeight, int degrees, boolean mirror, int displayDegrees) {
+        synchronized (writeLock) {
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.degrees = degrees;
+            this.mirror = mirror;
+            this.displayDegrees = displayDegrees;
+        }
+        updateTransform();
+    }
+
+    private void updateTransform() {
+        synchronized (writeLock) {
+            int viewWidth = getWidth();
+            int viewHeight = getHeight();
+            if (imageWidth <= 0 || imageHeight <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+                transform = null;
+                return;
             }
+            transform = new FrameTransform(imageWidth, imageHeight, viewWidth, viewHeight, degrees, mirror,
+                    displayDegrees);
+        }
+    }
+
+    /**
+     * 推送帧坐标中的矩形，可以在任意线程中调用
+     *
+     * @param rects 帧坐标中的矩形
+     * @param count 矩形个数
+     * @return 尚未设置帧的尺寸或view尚未布局时返回false，矩形不会被显示
+     */
+    public boolean setImageRects(int[] rects, int count) {
+        synchronized (writeLock) {
+            FrameTransform transform = this.transform;
+            if (transform == null) {
+                return false;
+            }
+            ensureBackCapacity(count);
+            transform.mapImageRectsToView(rects, this.rects[backIndex], count);
+            publish(count);
+        }
+        return true;
+    }
+
+    /**
+     * 推送view坐标中的矩形，可以在任意线程中调用
+     *
+     * @param rects view坐标中的矩形
+     * @param count 矩形个数
+     */
+    public void setViewRects(int[] rects, int count) {
+        synchronized (writeLock) {
+            ensureBackCapacity(count);
+            System.arraycopy(rects, 0, this.rects[backIndex], 0, count * 4);
+            publish(count);
+        }
+    }
+
+    /**
+     * 清除所有矩形
+     */
+    public void clearRects() {
+        synchronized (writeLock) {
+            publish(0);
+        }
+    }
+
+    private void ensureBackCapacity(int count) {
+        if (rects[backIndex].length < count * 4) {
+            rects[backIndex] = new int[count * 4];
         }
     }
 
-    public void setRect(List<Rect> rect) {
-        this.rect = rect;
-        invalidate();
+    /**
+     * 把写好的后台缓冲区放到交接位置并请求重绘，换回的缓冲区作为新的后台缓冲区，调用时需持有writeLock。
+     * 原子交换保证onDraw取到缓冲区时能看到写入的内容
+     */
+    private void publish(int count) {
+        counts[backIndex] = count;
+        backIndex = swapState.getAndSet(backIndex | FRESH) & INDEX_MASK;
+        postInvalidateOnAnimation();
     }
 }
@@ -0,0 +1,139 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureResultTableTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void attachesResultWithMatchingTimestamp() {
+        CaptureResultTable table = new CaptureResultTable(4);
+        for (int i = 0; i < 4; i++) {
+            table.put(i, 1000 + i, 10000 + i, 100 + i, 33000000);
+        }
+        FramePool pool = new FramePool(1, 4, 4, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        frame.setFrameInfo(1002, 0);
+        assertTrue(table.attachTo(frame));
+        assertTrue(frame.hasCaptureInfo());
+        assertEquals(10002, frame.getExposureTime());
+        assertEquals(102, frame.getSensitivity());
+        assertEquals(33000000, frame.getFrameDuration());
+        frame.release();
+
+        // 重新从帧池取出时清空上一帧的拍摄参数
+        frame = pool.acquire();
+        assertFalse(frame.hasCaptureInfo());
+        assertEquals(0, frame.getSensitivity());
+        frame.release();
+        assertEquals(1, table.getMatchedCount());
+    }
+
+    @Test
+    public void missesOverwrittenAndUnknownResults() {
+        CaptureResultTable table = new CaptureResultTable(3);
+        // 容量向上取整为4，第0帧被第4帧覆盖
+        for (int i = 0; i < 5; i++) {
+            table.put(i, 1000 + i, 1, 1, 1);
+        }
+        FramePool pool = new FramePool(1, 4, 4, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        frame.setFrameInfo(1000, 0);
+        assertFalse(table.attachTo(frame));
+        frame.setFrameInfo(2000, 1);
+        assertFalse(table.attachTo(frame));
+        assertFalse(frame.hasCaptureInfo());
+        frame.setFrameInfo(1004, 2);
+        assertTrue(table.attachTo(frame));
+        frame.release();
+        assertEquals(2, table.getMissedCount());
+        assertEquals(1, table.getMatchedCount());
+    }
+
+    @Test
+    public void holdsFrameUntilResultArrives() {
+        CaptureResultTable table = new CaptureResultTable(4);
+        final List<YuvFrame> delivered = new ArrayList<>();
+        final List<Boolean> hadInfo = new ArrayList<>();
+        table.setFrameListener(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                // 分发时参数已经就绪，之后不会再被修改
+                delivered.add(frame);
+                hadInfo.add(frame.hasCaptureInfo());
+            }
+        });
+        FramePool pool = new FramePool(3, 4, 4, ImageUtil.FORMAT_NV21);
+        YuvFrame first = pool.acquire();
+        first.setFrameInfo(1000, 0);
+        assertTrue(table.deliver(first, 0, 33 * MS));
+        assertTrue(table.hasPending());
+        assertTrue(delivered.isEmpty());
+
+        // 结果晚于图像到达，带着参数分发
+        table.put(0, 1000, 20000, 200, 33000000);
+        assertFalse(table.hasPending());
+        assertEquals(1, delivered.size());
+        assertTrue(hadInfo.get(0));
+        assertEquals(200, first.getSensitivity());
+        assertEquals(3, pool.getAvailableCount());
+
+        // 结果先于图像到达时立即分发
+        table.put(1, 1001, 20000, 201, 33000000);
+        YuvFrame second = pool.acquire();
+        second.setFrameInfo(1001, 1);
+        assertFalse(table.deliver(second, 40 * MS, 33 * MS));
+        assertEquals(2, delivered.size());
+        assertTrue(hadInfo.get(1));
+
+        // 超时或下一帧到达时不带参数分发，保持帧的顺序
+        YuvFrame third = pool.acquire();
+        third.setFrameInfo(1002, 2);
+        assertTrue(table.deliver(third, 80 * MS, 33 * MS));
+        table.flushExpired(100 * MS);
+        assertTrue(table.hasPending());
+        table.flushExpired(113 * MS);
+        assertFalse(table.hasPending());
+        YuvFrame fourth = pool.acquire();
+        fourth.setFrameInfo(1003, 3);
+        assertTrue(table.deliver(fourth, 120 * MS, 33 * MS));
+        YuvFrame fifth = pool.acquire();
+        fifth.setFrameInfo(1004, 4);
+        assertTrue(table.deliver(fifth, 150 * MS, 33 * MS));
+        assertEquals(4, delivered.size());
+        assertEquals(3, delivered.get(3).getSequence());
+        assertFalse(hadInfo.get(2));
+        assertFalse(hadInfo.get(3));
+
+        table.clearPending();
+        assertEquals(4, delivered.size());
+        assertEquals(3, pool.getAvailableCount());
+        assertEquals(2, table.getMatchedCount());
+        assertEquals(3, table.getMissedCount());
+    }
+
+    @Test
+    public void derivedFramesKeepCaptureInfo() {
+        FramePool pool = new FramePool(1, 8, 8, ImageUtil.FORMAT_NV21);
+        FramePool halfPool = new FramePool(1, 4, 4, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        frame.setFrameInfo(1000, 5);
+        frame.setCaptureInfo(20000, 400, 33000000);
+        YuvFrame half = FrameScaler.scale(frame, halfPool);
+        assertEquals(1000, half.getTimestamp());
+        assertEquals(5, half.getSequence());
+        assertTrue(half.hasCaptureInfo());
+        assertEquals(400, half.getSensitivity());
+        half.release();
+        frame.release();
+    }
+}
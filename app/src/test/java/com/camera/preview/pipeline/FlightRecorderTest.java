@@ -0,0 +1,146 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvTestFrames;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FlightRecorderTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    /**
+     * 通过回放导出的Y4M文件读取全部帧，转换为I420
+     */
+    private static List<byte[]> readY4m(File file) throws IOException {
+        FileFrameSource source = new FileFrameSource.Builder()
+                .file(file)
+                .outputFormat(ImageUtil.FORMAT_I420)
+                .fps(0)
+                .build();
+        final List<byte[]> frames = new ArrayList<>();
+        source.setFrameListener(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                frames.add(frame.getData().clone());
+            }
+        });
+        while (source.produceFrame()) {
+            // 读取到文件结束
+        }
+        return frames;
+    }
+
+    @Test
+    public void keepsLatestFramesAndExportsInOrder() throws IOException {
+        File ring = YuvTestFrames.tempFile("recorder", ".ring");
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        FlightRecorder recorder = new FlightRecorder(ring, 3, ImageUtil.getYuv420Size(WIDTH, HEIGHT));
+        for (int i = 0; i < 5; i++) {
+            YuvFrame frame = pool.acquire();
+            Arrays.fill(frame.getData(), (byte) (10 + i));
+            frame.setFrameInfo(i * 33000000L, i);
+            recorder.record(frame);
+            frame.release();
+        }
+        assertEquals(5, recorder.getWriteCount());
+        recorder.close();
+
+        // 进程重启后从遗留的记录文件导出
+        File y4m = YuvTestFrames.tempFile("recorder", ".y4m");
+        assertEquals(3, FlightRecorder.exportY4m(ring, y4m));
+        List<byte[]> frames = readY4m(y4m);
+        assertEquals(3, frames.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(12 + i, frames.get(i)[0]);
+        }
+    }
+
+    @Test
+    public void exportsInWriteOrderWhenSequenceRestarts() throws IOException {
+        File ring = YuvTestFrames.tempFile("recorder", ".ring");
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        FlightRecorder recorder = new FlightRecorder(ring, 4, ImageUtil.getYuv420Size(WIDTH, HEIGHT));
+        // 重新创建ImageReader后帧序号从0开始
+        long[] sequences = {100, 101, 0, 1};
+        for (int i = 0; i < sequences.length; i++) {
+            YuvFrame frame = pool.acquire();
+            Arrays.fill(frame.getData(), (byte) (10 + i));
+            frame.setFrameInfo(i * 33000000L, sequences[i]);
+            recorder.record(frame);
+            frame.release();
+        }
+        File y4m = YuvTestFrames.tempFile("recorder", ".y4m");
+        assertEquals(4, recorder.dumpY4m(y4m));
+        recorder.close();
+        List<byte[]> frames = readY4m(y4m);
+        for (int i = 0; i < sequences.length; i++) {
+            assertEquals(10 + i, frames.get(i)[0]);
+        }
+    }
+
+    @Test
+    public void recordsRawPlanesWithPadding() throws IOException {
+        int rowStride = WIDTH + 8;
+        byte[] nv21 = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+        for (int i = 0; i < nv21.length; i++) {
+            nv21[i] = (byte) i;
+        }
+        // 带行padding的半平面数据，U、V共享同一块内存
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        ByteBuffer vu = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT; row++) {
+            y.position(row * rowStride);
+            y.put(nv21, row * WIDTH, WIDTH);
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            vu.position(row * rowStride);
+            vu.put(nv21, WIDTH * HEIGHT + row * WIDTH, WIDTH);
+        }
+        y.clear();
+        vu.clear();
+        ByteBuffer v = vu.duplicate();
+        v.limit(rowStride * (HEIGHT / 2 - 1) + WIDTH - 1);
+        vu.position(1);
+        ByteBuffer u = vu.slice();
+        u.limit(rowStride * (HEIGHT / 2 - 1) + WIDTH - 1);
+        YuvPlanes planes = new YuvPlanes();
+        planes.set(y, rowStride, u, v.slice(), rowStride, 2, WIDTH, HEIGHT, 0);
+
+        File ring = YuvTestFrames.tempFile("recorder", ".ring");
+        FlightRecorder recorder = new FlightRecorder(ring, 2, FlightRecorder.getSlotSize(rowStride, rowStride, HEIGHT));
+        recorder.record(planes, 7);
+        // 记录不改变平面的读取位置
+        assertEquals(0, planes.getY().position());
+        File y4m = YuvTestFrames.tempFile("recorder", ".y4m");
+        assertEquals(1, recorder.dumpY4m(y4m));
+        recorder.close();
+
+        byte[] expected = new byte[nv21.length];
+        ImageUtil.convertYuv420(nv21, ImageUtil.FORMAT_NV21, expected, ImageUtil.FORMAT_I420, WIDTH, HEIGHT);
+        assertArrayEquals(expected, readY4m(y4m).get(0));
+    }
+
+    @Test
+    public void skipsFramesLargerThanSlot() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(YuvTestFrames.tempFile("recorder", ".ring"), 2, 16);
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        assertFalse(recorder.record(frame));
+        frame.release();
+        assertEquals(1, recorder.getOversizedCount());
+        assertEquals(0, recorder.dumpY4m(YuvTestFrames.tempFile("recorder", ".y4m")));
+        recorder.close();
+    }
+}
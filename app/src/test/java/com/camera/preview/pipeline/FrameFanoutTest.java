@@ -0,0 +1,212 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FrameFanoutTest {
+    private static final long MS = 1000000L;
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    /**
+     * 手动执行任务的executor
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    /**
+     * 记录收到的帧，帧在回调结束后会被释放，这里只比较引用和尺寸
+     */
+    private static class RecordingConsumer implements LatestFrameDispatcher.FrameConsumer {
+        final List<YuvFrame> frames = new ArrayList<>();
+
+        @Override
+        public void onFrame(YuvFrame frame) {
+            frames.add(frame);
+        }
+    }
+
+    private static FrameFanout.Consumer consumer(Executor executor, RecordingConsumer consumer, float fps, int scale, int format) {
+        return new FrameFanout.Consumer.Builder()
+                .executor(executor)
+                .consumer(consumer)
+                .fps(fps)
+                .scale(scale)
+                .format(format)
+                .build();
+    }
+
+    @Test
+    public void sharesDerivedFrameBetweenMatchingConsumers() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingConsumer full = new RecordingConsumer();
+        RecordingConsumer half = new RecordingConsumer();
+        RecordingConsumer halfAgain = new RecordingConsumer();
+        RecordingConsumer gray = new RecordingConsumer();
+        FrameFanout fanout = new FrameFanout();
+        fanout.addConsumer(consumer(executor, full, 0, 1, FrameFanout.FORMAT_SOURCE));
+        fanout.addConsumer(consumer(executor, half, 0, 2, FrameFanout.FORMAT_SOURCE));
+        fanout.addConsumer(consumer(executor, halfAgain, 0, 2, FrameFanout.FORMAT_SOURCE));
+        fanout.addConsumer(consumer(executor, gray, 0, 2, ImageUtil.FORMAT_GRAY));
+
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        fanout.onFrame(frame, 0);
+        frame.release();
+        executor.runAll();
+
+        // 原始尺寸和格式的消费者直接收到原始帧
+        assertSame(frame, full.frames.get(0));
+        // 相同尺寸和格式的派生帧只计算一次
+        assertSame(half.frames.get(0), halfAgain.frames.get(0));
+        assertEquals(WIDTH / 2, half.frames.get(0).getWidth());
+        assertEquals(ImageUtil.FORMAT_NV21, half.frames.get(0).getFormat());
+        assertEquals(ImageUtil.FORMAT_GRAY, gray.frames.get(0).getFormat());
+        // 所有帧处理完后都回到各自的帧池
+        assertEquals(1, pool.getAvailableCount());
+        assertEquals(0, half.frames.get(0).getRefCount());
+        assertEquals(0, gray.frames.get(0).getRefCount());
+    }
+
+    @Test
+    public void grayFramesStayGray() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingConsumer half = new RecordingConsumer();
+        RecordingConsumer nv21 = new RecordingConsumer();
+        final int[] luma = new int[2];
+        // 帧在回调结束后会被释放，在回调中读取数据
+        LatestFrameDispatcher.FrameConsumer fixed = new LatestFrameDispatcher.FrameConsumer() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                luma[0] = frame.getData()[0] & 0xff;
+                luma[1] = frame.getData().length;
+            }
+        };
+        FrameFanout fanout = new FrameFanout();
+        fanout.addConsumer(consumer(executor, half, 0, 2, FrameFanout.FORMAT_SOURCE));
+        fanout.addConsumer(consumer(executor, nv21, 0, 1, ImageUtil.FORMAT_NV21));
+        fanout.addConsumer(new FrameFanout.Consumer.Builder().executor(executor).consumer(fixed).size(5, 3).build());
+
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_GRAY);
+        YuvFrame frame = pool.acquire();
+        Arrays.fill(frame.getData(), (byte) 90);
+        fanout.onFrame(frame, 0);
+        frame.release();
+        executor.runAll();
+
+        assertEquals(ImageUtil.FORMAT_GRAY, half.frames.get(0).getFormat());
+        assertEquals(WIDTH / 2, half.frames.get(0).getWidth());
+        // 灰度帧没有色度，要求NV21的消费者也收到原始的灰度帧
+        assertSame(frame, nv21.frames.get(0));
+        assertEquals(90, luma[0]);
+        assertEquals(5 * 3, luma[1]);
+        assertEquals(1, pool.getAvailableCount());
+        assertEquals(0, fanout.getDroppedCount());
+    }
+
+    @Test
+    public void appliesRatePerConsumer() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingConsumer fast = new RecordingConsumer();
+        RecordingConsumer slow = new RecordingConsumer();
+        FrameFanout fanout = new FrameFanout();
+        FrameFanout.Consumer slowConsumer = consumer(executor, slow, 10, 2, FrameFanout.FORMAT_SOURCE);
+        fanout.addConsumer(consumer(executor, fast, 0, 2, ImageUtil.FORMAT_I420));
+        fanout.addConsumer(slowConsumer);
+
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        for (int i = 0; i < 4; i++) {
+            YuvFrame frame = pool.acquire();
+            fanout.onFrame(frame, i * 40 * MS);
+            frame.release();
+            executor.runAll();
+        }
+        assertEquals(4, fast.frames.size());
+        assertEquals(2, slow.frames.size());
+        assertEquals(2, slowConsumer.getDispatcher().getSampledOutCount());
+
+        fanout.removeConsumer(slowConsumer);
+        YuvFrame frame = pool.acquire();
+        fanout.onFrame(frame, 200 * MS);
+        frame.release();
+        executor.runAll();
+        assertEquals(5, fast.frames.size());
+        assertEquals(2, slow.frames.size());
+        assertEquals(0, fanout.getDroppedCount());
+    }
+
+    @Test
+    public void keepsPoolsAndDropCountsWhenConsumersChange() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<YuvFrame> held = new ArrayList<>();
+        // 一直持有收到的帧，使派生帧的帧池耗尽
+        LatestFrameDispatcher.FrameConsumer holding = new LatestFrameDispatcher.FrameConsumer() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                held.add(frame.retain());
+            }
+        };
+        FrameFanout fanout = new FrameFanout();
+        fanout.addConsumer(new FrameFanout.Consumer.Builder().executor(executor).consumer(holding).scale(2).build());
+
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        // 一个消费者时帧池容量为3，第4帧被丢弃
+        for (int i = 0; i < 4; i++) {
+            YuvFrame frame = pool.acquire();
+            fanout.onFrame(frame, i * MS);
+            frame.release();
+            executor.runAll();
+        }
+        assertEquals(3, held.size());
+        assertEquals(1, fanout.getDroppedCount());
+
+        // 增加消费者后帧池容量变为5，丢帧计数保留
+        RecordingConsumer other = new RecordingConsumer();
+        FrameFanout.Consumer otherConsumer = consumer(executor, other, 0, 1, FrameFanout.FORMAT_SOURCE);
+        fanout.addConsumer(otherConsumer);
+        assertEquals(1, fanout.getDroppedCount());
+        YuvFrame frame = pool.acquire();
+        fanout.onFrame(frame, 10 * MS);
+        frame.release();
+        executor.runAll();
+        assertEquals(4, held.size());
+        assertEquals(1, fanout.getDroppedCount());
+
+        // 移除消费者时沿用容量为5的帧池，还能再取出4帧
+        fanout.removeConsumer(otherConsumer);
+        assertEquals(1, fanout.getDroppedCount());
+        for (int i = 0; i < 5; i++) {
+            frame = pool.acquire();
+            fanout.onFrame(frame, (20 + i) * MS);
+            frame.release();
+            executor.runAll();
+        }
+        assertEquals(8, held.size());
+        assertEquals(2, fanout.getDroppedCount());
+
+        for (YuvFrame heldFrame : held) {
+            heldFrame.release();
+        }
+    }
+}
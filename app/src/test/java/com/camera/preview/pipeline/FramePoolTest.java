@@ -0,0 +1,47 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FramePoolTest {
+
+    @Test
+    public void dropsWhenExhaustedAndReusesReleasedFrames() {
+        FramePool pool = new FramePool(2, 4, 2, ImageUtil.FORMAT_NV21);
+        YuvFrame first = pool.acquire();
+        YuvFrame second = pool.acquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getDroppedCount());
+
+        first.release();
+        assertSame(first, pool.acquire());
+        assertEquals(0, pool.getAvailableCount());
+    }
+
+    @Test
+    public void returnsToPoolOnlyWhenLastReferenceReleased() {
+        FramePool pool = new FramePool(1, 4, 2, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        frame.retain();
+        frame.release();
+        assertEquals(0, pool.getAvailableCount());
+        frame.release();
+        assertEquals(1, pool.getAvailableCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retainAfterReleaseFails() {
+        FramePool pool = new FramePool(1, 4, 2, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        frame.release();
+        frame.retain();
+    }
+}
@@ -0,0 +1,128 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSourceTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    /**
+     * 记录每帧的序号、第一个亮度字节和第一个色度字节
+     */
+    private static class RecordingListener implements FrameSource.FrameListener {
+        final List<long[]> frames = new ArrayList<>();
+
+        @Override
+        public void onFrame(YuvFrame frame) {
+            frames.add(new long[]{frame.getSequence(), frame.getData()[0] & 0xff, frame.getData()[WIDTH * HEIGHT] & 0xff});
+        }
+    }
+
+    private static File writeY4m(int frameCount) throws IOException {
+        File file = File.createTempFile("replay", ".y4m");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(("YUV4MPEG2 W" + WIDTH + " H" + HEIGHT + " F30:1 Ip A1:1 C420jpeg\n").getBytes("US-ASCII"));
+            byte[] i420 = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+            for (int f = 0; f < frameCount; f++) {
+                out.write("FRAME\n".getBytes("US-ASCII"));
+                Arrays.fill(i420, 0, WIDTH * HEIGHT, (byte) (10 + f));
+                // U平面为100 + f，V平面为200 + f
+                Arrays.fill(i420, WIDTH * HEIGHT, WIDTH * HEIGHT * 5 / 4, (byte) (100 + f));
+                Arrays.fill(i420, WIDTH * HEIGHT * 5 / 4, i420.length, (byte) (200 + f));
+                out.write(i420);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void replaysY4mAsNv21AndLoops() throws IOException {
+        FileFrameSource source = new FileFrameSource.Builder()
+                .file(writeY4m(2))
+                .fps(0)
+                .loop(true)
+                .build();
+        assertTrue(source.isY4m());
+        assertEquals(WIDTH, source.getWidth());
+        RecordingListener listener = new RecordingListener();
+        source.setFrameListener(listener);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(source.produceFrame());
+        }
+        assertEquals(5, listener.frames.size());
+        for (int i = 0; i < 5; i++) {
+            long[] frame = listener.frames.get(i);
+            assertEquals(i, frame[0]);
+            assertEquals(10 + i % 2, frame[1]);
+            // nv21的色度平面以V开头
+            assertEquals(200 + i % 2, frame[2]);
+        }
+    }
+
+    @Test
+    public void rawReplayStopsAtEndOfFile() throws IOException {
+        File file = File.createTempFile("replay", ".yuv");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT) * 3 - 1]);
+        } finally {
+            out.close();
+        }
+        FileFrameSource source = new FileFrameSource.Builder()
+                .file(file)
+                .rawFormat(WIDTH, HEIGHT, ImageUtil.FORMAT_NV21)
+                .fps(0)
+                .build();
+        RecordingListener listener = new RecordingListener();
+        source.setFrameListener(listener);
+        assertTrue(source.produceFrame());
+        assertTrue(source.produceFrame());
+        // 第三帧不完整
+        assertFalse(source.produceFrame());
+        assertEquals(2, listener.frames.size());
+    }
+
+    @Test
+    public void syntheticSourceRunsOnItsOwnThread() throws InterruptedException {
+        SyntheticFrameSource source = new SyntheticFrameSource(64, 32, ImageUtil.FORMAT_NV21, 0, 2);
+        final int[] count = new int[1];
+        final Object lock = new Object();
+        source.setFrameListener(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                synchronized (lock) {
+                    count[0]++;
+                    lock.notifyAll();
+                }
+            }
+        });
+        source.start();
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (count[0] < 10 && System.currentTimeMillis() < deadline) {
+                lock.wait(100);
+            }
+        }
+        source.stop();
+        assertTrue(count[0] >= 10);
+        assertFalse(source.isRunning());
+    }
+}
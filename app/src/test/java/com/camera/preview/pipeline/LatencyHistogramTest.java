@@ -0,0 +1,69 @@
+package com.camera.preview.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndCoverTheirValues() {
+        long lower = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long upper = LatencyHistogram.getBucketUpperBound(i);
+            assertEquals(i, LatencyHistogram.getBucketIndex(lower));
+            assertEquals(i, LatencyHistogram.getBucketIndex(upper - 1));
+            // 相对误差不超过1/8
+            assertTrue(upper - lower <= Math.max(1, lower / 8));
+            lower = upper;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucketIndex(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void percentilesAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(new LatencyHistogram.Snapshot(), true);
+        assertEquals(100, snapshot.count);
+        assertEquals(100000000L, snapshot.maxNanos);
+        assertInBucket(50000000L, snapshot.p50Nanos);
+        assertInBucket(90000000L, snapshot.p90Nanos);
+        assertInBucket(99000000L, snapshot.p99Nanos);
+
+        histogram.snapshot(snapshot, false);
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.maxNanos);
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i * 1000L);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(new LatencyHistogram.Snapshot(), false);
+        assertEquals(40000, snapshot.count);
+        assertEquals(9999000L, snapshot.maxNanos);
+    }
+
+    private static void assertInBucket(long expectedNanos, long actualNanos) {
+        assertTrue(actualNanos + " < " + expectedNanos, actualNanos >= expectedNanos);
+        assertTrue(actualNanos + " is too far from " + expectedNanos, actualNanos <= expectedNanos + expectedNanos / 8);
+    }
+}
@@ -0,0 +1,82 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LatestFrameDispatcherTest {
+    private static final long MS = 1000000L;
+
+    /**
+     * 手动执行任务的executor，用于模拟消费者处理不过来
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    @Test
+    public void replacesStaleFrameInsteadOfQueueing() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<YuvFrame> delivered = new ArrayList<>();
+        LatestFrameDispatcher dispatcher = new LatestFrameDispatcher(executor, new LatestFrameDispatcher.FrameConsumer() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                delivered.add(frame);
+            }
+        });
+        FramePool pool = new FramePool(3, 4, 2, ImageUtil.FORMAT_NV21);
+        YuvFrame first = pool.acquire();
+        YuvFrame second = pool.acquire();
+        assertTrue(dispatcher.offer(first, 0));
+        assertTrue(dispatcher.offer(second, MS));
+        first.release();
+        second.release();
+
+        assertEquals(1, dispatcher.getReplacedCount());
+        assertEquals(2, pool.getAvailableCount());
+        executor.runAll();
+        assertEquals(1, delivered.size());
+        assertSame(second, delivered.get(0));
+        assertEquals(3, pool.getAvailableCount());
+    }
+
+    @Test
+    public void samplesByTargetInterval() {
+        ManualExecutor executor = new ManualExecutor();
+        LatestFrameDispatcher dispatcher = new LatestFrameDispatcher(executor, new LatestFrameDispatcher.FrameConsumer() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+            }
+        });
+        dispatcher.setTargetFps(10);
+        FramePool pool = new FramePool(1, 4, 2, ImageUtil.FORMAT_NV21);
+        YuvFrame frame = pool.acquire();
+        assertTrue(dispatcher.offer(frame, 0));
+        assertFalse(dispatcher.offer(frame, 50 * MS));
+        assertTrue(dispatcher.offer(frame, 100 * MS));
+        assertEquals(1, dispatcher.getSampledOutCount());
+        executor.runAll();
+        frame.release();
+        assertEquals(1, pool.getAvailableCount());
+    }
+}
@@ -0,0 +1,87 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.FrameTransform;
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvTestFrames;
+import com.camera.preview.util.YuvTestFrames.Gradient;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RoiExtractorTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    private static YuvFrame frame(FramePool pool) {
+        YuvFrame frame = pool.acquire();
+        YuvTestFrames.fill(frame.getData(), pool.getFormat(), WIDTH, HEIGHT, new Gradient(0, 1, WIDTH),
+                Gradient.solid(128), Gradient.solid(128));
+        frame.setFrameInfo(1000, 7);
+        return frame;
+    }
+
+    @Test
+    public void cropsAlignedRectsAndSkipsEmptyOnes() {
+        YuvFrame frame = frame(new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_I420));
+        RoiExtractor extractor = new RoiExtractor(3);
+        byte[][] buffers = new byte[3][];
+        // 第二个矩形在帧外，限制到帧范围后为空
+        int count = extractor.extract(frame, new int[]{3, 1, 8, 5, 20, 20, 30, 30, 0, 0, 4, 4}, 3,
+                RoiExtractor.COORDINATE_IMAGE, ImageUtil.FORMAT_GRAY, buffers);
+        assertEquals(2, count);
+        assertArrayEquals(new int[]{2, 0, 8, 6, 0, 0, 4, 4}, Arrays.copyOf(extractor.getRects(), 8));
+        assertEquals(2, buffers[0][0]);
+        assertEquals(WIDTH + 2, buffers[0][6]);
+        assertEquals(WIDTH, buffers[1][4]);
+        assertNull(buffers[2]);
+    }
+
+    @Test
+    public void mapsViewRectsThroughTransform() {
+        YuvFrame frame = frame(new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21));
+        RoiExtractor extractor = new RoiExtractor(1);
+        // 预览放大两倍显示
+        extractor.setTransform(new FrameTransform(WIDTH, HEIGHT, WIDTH * 2, HEIGHT * 2, 0, false, 0));
+        byte[][] buffers = new byte[1][];
+        assertEquals(1, extractor.extract(frame, new int[]{8, 4, 16, 12}, 1,
+                RoiExtractor.COORDINATE_VIEW, ImageUtil.FORMAT_NV21, buffers));
+        assertArrayEquals(new int[]{4, 2, 8, 6}, extractor.getRects());
+        assertEquals(ImageUtil.getYuv420Size(4, 4), buffers[0].length);
+        assertEquals(2 * WIDTH + 4, buffers[0][0]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void viewRectsNeedTransform() {
+        YuvFrame frame = frame(new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21));
+        new RoiExtractor(1).extract(frame, new int[]{0, 0, 4, 4}, 1,
+                RoiExtractor.COORDINATE_VIEW, ImageUtil.FORMAT_NV21, new byte[1][]);
+    }
+
+    @Test
+    public void scalesToPoolSizeUntilPoolIsExhausted() {
+        YuvFrame frame = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21).acquire();
+        Arrays.fill(frame.getData(), (byte) 50);
+        frame.setFrameInfo(1000, 7);
+        FramePool pool = new FramePool(2, 4, 4, ImageUtil.FORMAT_I420);
+        YuvFrame[] out = new YuvFrame[3];
+        int count = new RoiExtractor(3).extractScaled(frame, new int[]{0, 0, 8, 8, 8, 0, 16, 8, 2, 2, 6, 6}, 3,
+                RoiExtractor.COORDINATE_IMAGE, pool, out);
+        assertEquals(2, count);
+        assertEquals(1, pool.getDroppedCount());
+        for (int i = 0; i < count; i++) {
+            assertEquals(4, out[i].getWidth());
+            assertEquals(ImageUtil.FORMAT_I420, out[i].getFormat());
+            assertEquals(50, out[i].getData()[5]);
+            assertEquals(50, out[i].getData()[ImageUtil.getUOffset(ImageUtil.FORMAT_I420, 4, 4)]);
+            assertEquals(1000, out[i].getTimestamp());
+            assertEquals(7, out[i].getSequence());
+            out[i].release();
+        }
+        assertNull(out[2]);
+    }
+}
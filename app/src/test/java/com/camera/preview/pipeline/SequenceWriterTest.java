@@ -0,0 +1,91 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvTestFrames;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SequenceWriterTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    @Test
+    public void writesY4mReadableByReplaySource() throws IOException, InterruptedException {
+        File file = YuvTestFrames.tempFile("sequence", ".y4m");
+        SequenceWriter writer = new SequenceWriter.Builder()
+                .file(file)
+                .size(WIDTH, HEIGHT)
+                .fps(30)
+                .build();
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_NV21);
+        int accepted = 0;
+        for (int i = 0; i < 20; i++) {
+            YuvFrame frame = pool.acquire();
+            Arrays.fill(frame.getData(), (byte) i);
+            if (writer.write(frame)) {
+                accepted++;
+            }
+            frame.release();
+            // 给I/O线程时间，使大部分帧能被接收
+            Thread.sleep(1);
+        }
+        writer.close();
+        assertEquals(accepted, writer.getWrittenCount());
+        assertEquals(20 - accepted, writer.getDroppedCount());
+
+        FileFrameSource source = new FileFrameSource.Builder().file(file).fps(0).build();
+        final int[] frames = new int[1];
+        source.setFrameListener(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                frames[0]++;
+            }
+        });
+        while (source.produceFrame()) {
+            // 读取到文件结束
+        }
+        assertEquals(accepted, frames[0]);
+        assertEquals(file.length(), writer.getWrittenBytes());
+    }
+
+    @Test
+    public void rawFileHasNoHeaders() throws IOException {
+        File file = YuvTestFrames.tempFile("sequence", ".yuv");
+        SequenceWriter writer = new SequenceWriter.Builder()
+                .file(file)
+                .size(WIDTH, HEIGHT)
+                .container(SequenceWriter.CONTAINER_RAW)
+                .bufferCount(1)
+                .build();
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_I420);
+        YuvFrame frame = pool.acquire();
+        writer.write(frame);
+        writer.close();
+        // 关闭后的写入被丢弃
+        assertFalse(writer.write(frame));
+        frame.release();
+        assertEquals(ImageUtil.getYuv420Size(WIDTH, HEIGHT), file.length());
+        assertEquals(1, writer.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsGrayFrames() throws IOException {
+        SequenceWriter writer = new SequenceWriter.Builder()
+                .file(YuvTestFrames.tempFile("sequence", ".y4m"))
+                .size(WIDTH, HEIGHT)
+                .build();
+        FramePool pool = new FramePool(1, WIDTH, HEIGHT, ImageUtil.FORMAT_GRAY);
+        try {
+            writer.write(pool.acquire());
+        } finally {
+            writer.close();
+        }
+    }
+}
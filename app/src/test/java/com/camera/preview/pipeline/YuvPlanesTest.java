@@ -0,0 +1,42 @@
+package com.camera.preview.pipeline;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class YuvPlanesTest {
+
+    @Test
+    public void exposesSourcePlanesAndRestoresReadRange() {
+        ByteBuffer y = ByteBuffer.allocateDirect(16);
+        ByteBuffer u = ByteBuffer.allocateDirect(4);
+        ByteBuffer v = ByteBuffer.allocateDirect(4);
+        for (int i = 0; i < 16; i++) {
+            y.put(i, (byte) i);
+        }
+        YuvPlanes planes = new YuvPlanes();
+        planes.set(y, 4, u, v, 2, 1, 4, 4, 0);
+        // 不创建视图，每帧不分配内存
+        assertSame(y, planes.getY());
+        // 使用者移动了读取范围
+        planes.getY().position(10);
+        planes.getU().limit(1);
+
+        byte[] dst = new byte[ImageUtil.getYuv420Size(4, 4)];
+        planes.copyTo(dst, ImageUtil.FORMAT_I420);
+        assertEquals(15, dst[15]);
+        planes.getY().position(12);
+        planes.clear();
+        assertNull(planes.getY());
+        // 生产者之后还要从同一个buffer拷贝
+        assertEquals(0, y.position());
+        assertEquals(16, y.limit());
+        assertEquals(4, u.limit());
+    }
+}
@@ -0,0 +1,80 @@
+package com.camera.preview.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class FrameTransformTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 20;
+    private static final int[] RECT = {2, 4, 10, 8};
+
+    private static int[] toView(FrameTransform transform, int[] rect) {
+        int[] view = new int[4];
+        transform.mapImageRectsToView(rect, view, 1);
+        return view;
+    }
+
+    private static FrameTransform unscaled(int degrees, boolean mirror) {
+        boolean swap = degrees % 180 != 0;
+        return new FrameTransform(WIDTH, HEIGHT, swap ? HEIGHT : WIDTH, swap ? WIDTH : HEIGHT, degrees, mirror, 0);
+    }
+
+    @Test
+    public void rotatesClockwise() {
+        assertArrayEquals(new int[]{2, 4, 10, 8}, toView(unscaled(0, false), RECT));
+        // (x, y) -> (HEIGHT - y, x)
+        assertArrayEquals(new int[]{12, 2, 16, 10}, toView(unscaled(90, false), RECT));
+        // (x, y) -> (WIDTH - x, HEIGHT - y)
+        assertArrayEquals(new int[]{30, 12, 38, 16}, toView(unscaled(180, false), RECT));
+        // (x, y) -> (y, WIDTH - x)
+        assertArrayEquals(new int[]{4, 30, 8, 38}, toView(unscaled(270, false), RECT));
+    }
+
+    @Test
+    public void mirrorsAfterRotation() {
+        assertArrayEquals(new int[]{30, 4, 38, 8}, toView(unscaled(0, true), RECT));
+        // 旋转90度后再水平镜像，x坐标等于原图的y坐标
+        assertArrayEquals(new int[]{4, 2, 8, 10}, toView(unscaled(90, true), RECT));
+    }
+
+    @Test
+    public void stretchesInPortraitAndCropsInLandscape() {
+        // 竖屏与TextureView默认行为一致，宽高分别拉伸
+        FrameTransform portrait = new FrameTransform(WIDTH, HEIGHT, 80, 80, 0, false, 0);
+        assertArrayEquals(new int[]{4, 16, 20, 32}, toView(portrait, RECT));
+        // 横屏与configureTransform一致，按较大的比例等比缩放后居中裁剪
+        FrameTransform landscape = new FrameTransform(WIDTH, HEIGHT, 80, 80, 0, false, 90);
+        assertArrayEquals(new int[]{-32, 16, 0, 32}, toView(landscape, RECT));
+    }
+
+    @Test
+    public void viewRectsMapBackToImageForEveryOrientation() {
+        int[] degreesList = {0, 90, 180, 270};
+        for (int degrees : degreesList) {
+            for (int mirror = 0; mirror < 2; mirror++) {
+                boolean swap = degrees % 180 != 0;
+                int viewWidth = (swap ? HEIGHT : WIDTH) * 2;
+                int viewHeight = (swap ? WIDTH : HEIGHT) * 2;
+                FrameTransform transform = new FrameTransform(WIDTH, HEIGHT, viewWidth, viewHeight,
+                        degrees, mirror == 1, 0);
+                int[] back = new int[4];
+                transform.mapViewRectsToImage(toView(transform, RECT), back, 1);
+                assertArrayEquals(degrees + " " + mirror, RECT, back);
+            }
+        }
+    }
+
+    @Test
+    public void viewRectsAreClampedToImage() {
+        FrameTransform transform = unscaled(90, false);
+        int[] image = new int[4];
+        transform.mapViewRectsToImage(new int[]{-10, -10, 100, 100}, image, 1);
+        assertArrayEquals(new int[]{0, 0, WIDTH, HEIGHT}, image);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnalignedDegrees() {
+        new FrameTransform(WIDTH, HEIGHT, WIDTH, HEIGHT, 45, false, 0);
+    }
+}
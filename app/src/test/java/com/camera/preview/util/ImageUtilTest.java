@@ -0,0 +1,261 @@
+package com.camera.preview.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ImageUtilTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+    private static final int Y_ROW_STRIDE = 8;
+
+    private static byte yAt(int x, int y) {
+        return (byte) (y * WIDTH + x);
+    }
+
+    private static byte uAt(int x, int y) {
+        return (byte) (100 + y * WIDTH + x);
+    }
+
+    private static byte vAt(int x, int y) {
+        return (byte) (200 + y * WIDTH + x);
+    }
+
+    private static ByteBuffer yPlane() {
+        ByteBuffer y = ByteBuffer.allocateDirect(Y_ROW_STRIDE * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y.put(row * Y_ROW_STRIDE + col, yAt(col, row));
+            }
+        }
+        return y;
+    }
+
+    /**
+     * 构造VU交错的半平面内存，U、V两个buffer起点相差一个字节，和大多数设备的YUV_420_888一致
+     */
+    private static ByteBuffer[] semiPlanarChroma() {
+        ByteBuffer chroma = ByteBuffer.allocateDirect(Y_ROW_STRIDE * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                chroma.put(row * Y_ROW_STRIDE + col * 2, vAt(col, row));
+                chroma.put(row * Y_ROW_STRIDE + col * 2 + 1, uAt(col, row));
+            }
+        }
+        int length = Y_ROW_STRIDE * (HEIGHT / 2 - 1) + WIDTH - 1;
+        chroma.limit(length);
+        ByteBuffer v = chroma.slice();
+        chroma.limit(length + 1).position(1);
+        ByteBuffer u = chroma.slice();
+        return new ByteBuffer[]{u, v};
+    }
+
+    private static byte[] expected(int format) {
+        byte[] data = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+        int uOffset = ImageUtil.getUOffset(format, WIDTH, HEIGHT);
+        int vOffset = ImageUtil.getVOffset(format, WIDTH, HEIGHT);
+        int pixelStride = ImageUtil.getChromaPixelStride(format);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                data[row * WIDTH + col] = yAt(col, row);
+            }
+        }
+        int index = 0;
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                data[uOffset + index * pixelStride] = uAt(col, row);
+                data[vOffset + index * pixelStride] = vAt(col, row);
+                index++;
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void semiPlanarToAllFormats() {
+        int[] formats = {ImageUtil.FORMAT_NV21, ImageUtil.FORMAT_NV12, ImageUtil.FORMAT_I420, ImageUtil.FORMAT_YV12};
+        for (int format : formats) {
+            ByteBuffer[] chroma = semiPlanarChroma();
+            byte[] dst = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+            ImageUtil.yuv420888ToYuv420(yPlane(), Y_ROW_STRIDE, chroma[0], chroma[1], Y_ROW_STRIDE, 2, WIDTH, HEIGHT, dst, format);
+            assertArrayEquals("format " + format, expected(format), dst);
+            assertEquals(0, chroma[0].position());
+            assertEquals(0, chroma[1].position());
+        }
+    }
+
+    @Test
+    public void yPlaneToGray() {
+        ByteBuffer[] chroma = semiPlanarChroma();
+        byte[] dst = new byte[WIDTH * HEIGHT];
+        ImageUtil.yuv420888ToYuv420(yPlane(), Y_ROW_STRIDE, chroma[0], chroma[1], Y_ROW_STRIDE, 2, WIDTH, HEIGHT, dst, ImageUtil.FORMAT_GRAY);
+        byte[] expected = new byte[WIDTH * HEIGHT];
+        System.arraycopy(expected(ImageUtil.FORMAT_NV21), 0, expected, 0, expected.length);
+        assertArrayEquals(expected, dst);
+    }
+
+    @Test
+    public void readOnlySemiPlanarIsCopiedWithoutWriting() {
+        ByteBuffer[] chroma = semiPlanarChroma();
+        ByteBuffer u = chroma[0].asReadOnlyBuffer();
+        ByteBuffer v = chroma[1].asReadOnlyBuffer();
+        byte[] before = new byte[chroma[1].remaining()];
+        chroma[1].duplicate().get(before);
+        int[] formats = {ImageUtil.FORMAT_NV21, ImageUtil.FORMAT_NV12, ImageUtil.FORMAT_I420};
+        for (int format : formats) {
+            byte[] dst = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+            ImageUtil.yuv420888ToYuv420(yPlane(), Y_ROW_STRIDE, u, v, Y_ROW_STRIDE, 2, WIDTH, HEIGHT, dst, format);
+            assertArrayEquals("format " + format, expected(format), dst);
+        }
+        byte[] after = new byte[chroma[1].remaining()];
+        chroma[1].duplicate().get(after);
+        assertArrayEquals(before, after);
+    }
+
+    @Test
+    public void flatSemiPlanarChroma() {
+        // 色度整行相同（如黑屏、中性灰）时两种交错顺序都成立，仍按目标顺序输出
+        ByteBuffer chroma = ByteBuffer.allocateDirect(Y_ROW_STRIDE * HEIGHT / 2);
+        for (int i = 0; i < chroma.capacity(); i++) {
+            chroma.put(i, (byte) (i % 2 == 0 ? 120 : 130));
+        }
+        chroma.limit(Y_ROW_STRIDE * (HEIGHT / 2 - 1) + WIDTH - 1);
+        ByteBuffer v = chroma.slice();
+        chroma.limit(chroma.capacity());
+        chroma.position(1);
+        ByteBuffer u = chroma.slice();
+        byte[] nv21 = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+        ImageUtil.yuv420888ToYuv420(yPlane(), Y_ROW_STRIDE, u, v, Y_ROW_STRIDE, 2, WIDTH, HEIGHT, nv21, ImageUtil.FORMAT_NV21);
+        byte[] nv12 = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+        ImageUtil.yuv420888ToYuv420(yPlane(), Y_ROW_STRIDE, u, v, Y_ROW_STRIDE, 2, WIDTH, HEIGHT, nv12, ImageUtil.FORMAT_NV12);
+        for (int i = WIDTH * HEIGHT; i < nv21.length; i += 2) {
+            assertEquals(120, nv21[i] & 0xff);
+            assertEquals(130, nv21[i + 1] & 0xff);
+            assertEquals(130, nv12[i] & 0xff);
+            assertEquals(120, nv12[i + 1] & 0xff);
+        }
+    }
+
+    @Test
+    public void separatePlanesWithPixelStrideTwo() {
+        // U、V为两块独立内存，像素之间是padding，不能按交错内存整体拷贝
+        ByteBuffer u = ByteBuffer.allocate(Y_ROW_STRIDE * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocate(Y_ROW_STRIDE * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u.put(row * Y_ROW_STRIDE + col * 2, uAt(col, row));
+                v.put(row * Y_ROW_STRIDE + col * 2, vAt(col, row));
+            }
+        }
+        byte[] dst = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+        ImageUtil.yuv420888ToYuv420(yPlane(), Y_ROW_STRIDE, u, v, Y_ROW_STRIDE, 2, WIDTH, HEIGHT, dst, ImageUtil.FORMAT_NV21);
+        assertArrayEquals(expected(ImageUtil.FORMAT_NV21), dst);
+    }
+
+    @Test
+    public void planarWithPaddingToNv21() {
+        int uvRowStride = 4;
+        ByteBuffer u = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u.put(row * uvRowStride + col, uAt(col, row));
+                v.put(row * uvRowStride + col, vAt(col, row));
+            }
+        }
+        byte[] dst = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+        ImageUtil.yuv420888ToNv21(yPlane(), Y_ROW_STRIDE, u, v, uvRowStride, 1, WIDTH, HEIGHT, dst);
+        assertArrayEquals(expected(ImageUtil.FORMAT_NV21), dst);
+    }
+
+    @Test
+    public void convertBetweenFormats() {
+        int[] formats = {ImageUtil.FORMAT_NV21, ImageUtil.FORMAT_NV12, ImageUtil.FORMAT_I420, ImageUtil.FORMAT_YV12};
+        for (int src : formats) {
+            for (int dst : formats) {
+                byte[] out = new byte[ImageUtil.getYuv420Size(WIDTH, HEIGHT)];
+                ImageUtil.convertYuv420(expected(src), src, out, dst, WIDTH, HEIGHT);
+                assertArrayEquals(src + " -> " + dst, expected(dst), out);
+            }
+        }
+        byte[] inPlace = expected(ImageUtil.FORMAT_NV21);
+        ImageUtil.nv21ToNv12(inPlace, inPlace, WIDTH, HEIGHT);
+        assertArrayEquals(expected(ImageUtil.FORMAT_NV12), inPlace);
+    }
+
+    /**
+     * 按坐标逐个像素计算的旋转结果，用于校验分块实现
+     */
+    private static byte[] naiveRotate(byte[] src, int format, int width, int height, int degrees, boolean mirror) {
+        boolean swap = degrees % 180 != 0;
+        int dstWidth = swap ? height : width;
+        int dstHeight = swap ? width : height;
+        byte[] dst = new byte[src.length];
+        for (int plane = 0; plane < 3; plane++) {
+            int scale = plane == 0 ? 1 : 2;
+            int w = width / scale;
+            int h = height / scale;
+            int dw = dstWidth / scale;
+            int dh = dstHeight / scale;
+            for (int dy = 0; dy < dh; dy++) {
+                for (int dx = 0; dx < dw; dx++) {
+                    int x = mirror ? dw - 1 - dx : dx;
+                    int sx;
+                    int sy;
+                    if (degrees == 90) {
+                        sx = dy;
+                        sy = h - 1 - x;
+                    } else if (degrees == 180) {
+                        sx = w - 1 - x;
+                        sy = h - 1 - dy;
+                    } else if (degrees == 270) {
+                        sx = w - 1 - dy;
+                        sy = x;
+                    } else {
+                        sx = x;
+                        sy = dy;
+                    }
+                    if (plane == 0) {
+                        dst[dy * dw + dx] = src[sy * w + sx];
+                    } else {
+                        int pixelStride = ImageUtil.getChromaPixelStride(format);
+                        int srcOffset = plane == 1 ? ImageUtil.getUOffset(format, width, height) : ImageUtil.getVOffset(format, width, height);
+                        int dstOffset = plane == 1 ? ImageUtil.getUOffset(format, dstWidth, dstHeight) : ImageUtil.getVOffset(format, dstWidth, dstHeight);
+                        dst[dstOffset + (dy * dw + dx) * pixelStride] = src[srcOffset + (sy * w + sx) * pixelStride];
+                    }
+                }
+            }
+        }
+        return dst;
+    }
+
+    @Test
+    public void rotateMatchesPerPixelMapping() {
+        // 宽高超过分块大小且不是其整数倍，覆盖分块的边界
+        int width = 70;
+        int height = 38;
+        byte[] src = new byte[ImageUtil.getYuv420Size(width, height)];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i * 7 + i / 13);
+        }
+        int[] formats = {ImageUtil.FORMAT_NV21, ImageUtil.FORMAT_NV12, ImageUtil.FORMAT_I420, ImageUtil.FORMAT_YV12};
+        int[] degreesList = {0, 90, 180, 270};
+        for (int format : formats) {
+            for (int degrees : degreesList) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    byte[] dst = new byte[src.length];
+                    ImageUtil.rotateYuv420(src, dst, format, width, height, degrees, mirror);
+                    assertArrayEquals(format + " " + degrees + " " + mirror, naiveRotate(src, format, width, height, degrees, mirror), dst);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSize() {
+        ImageUtil.convertYuv420(new byte[64], ImageUtil.FORMAT_NV21, new byte[64], ImageUtil.FORMAT_I420, 5, 4);
+    }
+}
@@ -0,0 +1,104 @@
+package com.camera.preview.util;
+
+import com.camera.preview.util.YuvTestFrames.Gradient;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JpegEncoderTest {
+    /**
+     * 不是16的整数倍，覆盖MCU边缘的补齐
+     */
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 26;
+
+    private static byte[] frame(int format) {
+        return YuvTestFrames.frame(format, WIDTH, HEIGHT, new Gradient(40, 4, 2),
+                new Gradient(96, 3, 0), new Gradient(160, 0, -3));
+    }
+
+    private static BufferedImage decode(JpegEncoder encoder, int length) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(encoder.getBuffer(), 0, length));
+    }
+
+    @Test
+    public void decodesCloseToSource() throws IOException {
+        byte[] nv21 = frame(ImageUtil.FORMAT_NV21);
+        JpegEncoder encoder = new JpegEncoder(95);
+        int length = encoder.encode(nv21, ImageUtil.FORMAT_NV21, WIDTH, HEIGHT);
+        BufferedImage image = decode(encoder, length);
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(HEIGHT, image.getHeight());
+
+        int[] expected = new int[WIDTH * HEIGHT];
+        YuvToRgbConverter.yuv420ToArgb(nv21, ImageUtil.FORMAT_NV21, WIDTH, HEIGHT, expected, 1, true);
+        long error = 0;
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int actual = image.getRGB(col, row);
+                int target = expected[row * WIDTH + col];
+                for (int shift = 0; shift < 24; shift += 8) {
+                    error += Math.abs(((actual >> shift) & 0xff) - ((target >> shift) & 0xff));
+                }
+            }
+        }
+        // 解码器的色度上采样方式不同，只比较平均误差
+        assertTrue("mean error " + (double) error / (WIDTH * HEIGHT * 3), error < WIDTH * HEIGHT * 3 * 3);
+    }
+
+    @Test
+    public void paddedPlanesMatchPackedCrop() {
+        byte[] nv21 = frame(ImageUtil.FORMAT_NV21);
+        int rowStride = WIDTH + 24;
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        ByteBuffer u = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+        int uOffset = ImageUtil.getUOffset(ImageUtil.FORMAT_NV21, WIDTH, HEIGHT);
+        int vOffset = ImageUtil.getVOffset(ImageUtil.FORMAT_NV21, WIDTH, HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y.put(row * rowStride + col, nv21[row * WIDTH + col]);
+            }
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u.put(row * rowStride + col * 2, nv21[uOffset + row * WIDTH + col * 2]);
+                v.put(row * rowStride + col * 2, nv21[vOffset + row * WIDTH + col * 2]);
+            }
+        }
+
+        JpegEncoder encoder = new JpegEncoder(80);
+        int length = encoder.encode(y, rowStride, u, v, rowStride, 2, WIDTH, HEIGHT, 6, 4, 21, 17);
+        byte[] fromPlanes = Arrays.copyOf(encoder.getBuffer(), length);
+        assertEquals(0, y.position());
+
+        // 奇数尺寸的裁剪与从紧凑数据中裁剪的结果一致
+        length = encoder.encode(frame(ImageUtil.FORMAT_I420), ImageUtil.FORMAT_I420, WIDTH, HEIGHT, 6, 4, 21, 17);
+        assertArrayEquals(fromPlanes, Arrays.copyOf(encoder.getBuffer(), length));
+    }
+
+    @Test
+    public void reusesOutputBuffer() {
+        byte[] nv21 = frame(ImageUtil.FORMAT_NV21);
+        JpegEncoder encoder = new JpegEncoder();
+        int first = encoder.encode(nv21, ImageUtil.FORMAT_NV21, WIDTH, HEIGHT);
+        byte[] buffer = encoder.getBuffer();
+        assertEquals(first, encoder.encode(nv21, ImageUtil.FORMAT_NV21, WIDTH, HEIGHT));
+        assertSame(buffer, encoder.getBuffer());
+
+        encoder.setQuality(30);
+        assertTrue(encoder.encode(nv21, ImageUtil.FORMAT_NV21, WIDTH, HEIGHT) < first);
+    }
+}
@@ -0,0 +1,72 @@
+package com.camera.preview.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class LumaStatisticsTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+
+    private static byte[] uniform(int value) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        Arrays.fill(luma, (byte) value);
+        return luma;
+    }
+
+    @Test
+    public void computesFrameStatistics() {
+        // 左半边全黑，右半边全白
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++) {
+            Arrays.fill(luma, row * WIDTH + WIDTH / 2, (row + 1) * WIDTH, (byte) 255);
+        }
+        LumaStatistics statistics = new LumaStatistics(8, 4);
+        statistics.update(luma, WIDTH, WIDTH, HEIGHT);
+        assertEquals(127.5f, statistics.getMean(), 1e-3f);
+        assertEquals(127.5f, statistics.getStdDev(), 1e-2f);
+        assertEquals(0.5f, statistics.getUnderExposedFraction(), 1e-6f);
+        assertEquals(0.5f, statistics.getOverExposedFraction(), 1e-6f);
+        assertEquals(0, statistics.getPercentile(50));
+        assertEquals(255, statistics.getPercentile(51));
+        assertEquals(0, statistics.getFramePercentile(50));
+        int[] histogram = new int[256];
+        statistics.getFrameHistogram(histogram);
+        assertEquals(16, histogram[0]);
+        assertEquals(16, histogram[255]);
+    }
+
+    @Test
+    public void smoothsAcrossFrames() {
+        LumaStatistics statistics = new LumaStatistics(8, 4);
+        statistics.setSmoothing(0.25f);
+        statistics.update(uniform(100), WIDTH, WIDTH, HEIGHT);
+        statistics.update(uniform(200), WIDTH, WIDTH, HEIGHT);
+        assertEquals(200f, statistics.getFrameMean(), 0f);
+        assertEquals(125f, statistics.getMean(), 1e-3f);
+        assertEquals(100, statistics.getPercentile(50));
+        assertEquals(200, statistics.getPercentile(90));
+
+        statistics.reset();
+        statistics.update(uniform(200), WIDTH, WIDTH, HEIGHT);
+        assertEquals(200f, statistics.getMean(), 1e-3f);
+    }
+
+    @Test
+    public void samplesOnlyVisiblePixelsOfPaddedPlane() {
+        int rowStride = WIDTH + 16;
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int i = 0; i < plane.capacity(); i++) {
+            // padding区域填充最大值，不应被统计到
+            plane.put(i, (byte) (i % rowStride < WIDTH ? 60 : 255));
+        }
+        LumaStatistics statistics = new LumaStatistics(16, 8);
+        statistics.update(plane, rowStride, WIDTH, HEIGHT);
+        assertEquals(60f, statistics.getMean(), 1e-3f);
+        assertEquals(0f, statistics.getOverExposedFraction(), 0f);
+        assertEquals(0, plane.position());
+    }
+}
@@ -0,0 +1,76 @@
+package com.camera.preview.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MotionDetectorTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+
+    private static byte[] gradient(int offset) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                luma[row * WIDTH + col] = (byte) (col * 2 + row + offset);
+            }
+        }
+        return luma;
+    }
+
+    @Test
+    public void firstFrameCountsAsMotionThenStaticSceneDoesNot() {
+        MotionDetector detector = new MotionDetector(8, 4, 2);
+        assertEquals(1f, detector.detect(gradient(0), WIDTH, WIDTH, HEIGHT), 0f);
+        assertTrue(detector.hasMotion());
+        assertEquals(0f, detector.detect(gradient(0), WIDTH, WIDTH, HEIGHT), 0f);
+        assertFalse(detector.hasMotion());
+    }
+
+    @Test
+    public void reportsChangedBlocks() {
+        MotionDetector detector = new MotionDetector(8, 4, 1);
+        detector.detect(gradient(0), WIDTH, WIDTH, HEIGHT);
+        byte[] moved = gradient(0);
+        // 第2列第1行的块（x 16~23，y 8~15）出现亮物体
+        for (int row = 8; row < 16; row++) {
+            Arrays.fill(moved, row * WIDTH + 16, row * WIDTH + 24, (byte) 255);
+        }
+        float score = detector.detect(moved, WIDTH, WIDTH, HEIGHT);
+        assertEquals(1, detector.getChangedCount());
+        assertEquals(1f / 32, score, 1e-6f);
+        assertTrue(detector.isBlockChanged(2, 1));
+        assertFalse(detector.isBlockChanged(1, 1));
+        boolean[] mask = new boolean[32];
+        detector.getChangedBlocks(mask);
+        assertTrue(mask[1 * 8 + 2]);
+    }
+
+    @Test
+    public void ignoresGlobalBrightnessShift() {
+        MotionDetector detector = new MotionDetector(8, 4, 2);
+        detector.detect(gradient(0), WIDTH, WIDTH, HEIGHT);
+        detector.detect(gradient(40), WIDTH, WIDTH, HEIGHT);
+        assertFalse(detector.hasMotion());
+    }
+
+    @Test
+    public void readsPaddedPlanes() {
+        int rowStride = WIDTH + 16;
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        byte[] luma = gradient(0);
+        for (int row = 0; row < HEIGHT; row++) {
+            plane.position(row * rowStride);
+            plane.put(luma, row * WIDTH, WIDTH);
+        }
+        plane.clear();
+        MotionDetector detector = new MotionDetector(8, 4, 2);
+        detector.detect(luma, WIDTH, WIDTH, HEIGHT);
+        assertEquals(0f, detector.detect(plane, rowStride, WIDTH, HEIGHT), 0f);
+    }
+}
@@ -0,0 +1,121 @@
+package com.camera.preview.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SizeSelectorTest {
+    private static final long FPS_30 = 33333333L;
+    private static final long FPS_24 = 41666666L;
+    private static final long FPS_15 = 66666666L;
+
+    /**
+     * 记录的一台后置摄像头的SurfaceTexture输出能力，按宽高从大到小排列
+     */
+    private static final int[] SIZES = {
+            4032, 3024,
+            3840, 2160,
+            2560, 1440,
+            1920, 1440,
+            1920, 1080,
+            1440, 1080,
+            1280, 960,
+            1280, 720,
+            640, 480,
+            640, 360,
+    };
+    private static final long[] DURATIONS = {
+            FPS_15,
+            FPS_24,
+            FPS_30,
+            FPS_30,
+            FPS_30,
+            FPS_30,
+            FPS_30,
+            FPS_30,
+            0,
+            FPS_30,
+    };
+    private static final int[] FPS_RANGES = {
+            15, 15,
+            7, 30,
+            15, 30,
+            30, 30,
+            24, 24,
+    };
+
+    private static int width(int index) {
+        return SIZES[2 * index];
+    }
+
+    private static int height(int index) {
+        return SIZES[2 * index + 1];
+    }
+
+    @Test
+    public void picksLargestSizeSustainingTargetFps() {
+        float ratio = SizeSelector.longSideRatio(1080, 1920);
+        int index = SizeSelector.selectSize(SIZES, DURATIONS, 0, 0, 0, 0, ratio, 30, 0);
+        // 4032x3024和3840x2160达不到30帧
+        assertEquals(2560, width(index));
+        assertEquals(1440, height(index));
+
+        index = SizeSelector.selectSize(SIZES, DURATIONS, 0, 0, 0, 0, ratio, 24, 0);
+        assertEquals(3840, width(index));
+
+        // 不考虑宽高比时选择面积最大的
+        index = SizeSelector.selectSize(SIZES, DURATIONS, 0, 0, 0, 0, 0, 15, 0);
+        assertEquals(4032, width(index));
+    }
+
+    @Test
+    public void respectsBoundsAndPixelBudget() {
+        float ratio = SizeSelector.longSideRatio(1920, 1080);
+        int index = SizeSelector.selectSize(SIZES, DURATIONS, 1280, 720, 1920, 1080, ratio, 30, 0);
+        assertEquals(1920, width(index));
+        assertEquals(1080, height(index));
+
+        // 每秒4000万像素只能支撑30帧的1280x960，宽高比一致的尺寸中最大的是1280x720
+        index = SizeSelector.selectSize(SIZES, DURATIONS, 0, 0, 0, 0, ratio, 30, 40000000L);
+        assertEquals(1280, width(index));
+        assertEquals(720, height(index));
+
+        // 没有宽高比一致的尺寸时选择面积最大的
+        index = SizeSelector.selectSize(SIZES, DURATIONS, 1280, 960, 1440, 1080, ratio, 30, 0);
+        assertEquals(1440, width(index));
+        assertEquals(1080, height(index));
+
+        // 帧间隔未知的尺寸视为可以维持
+        index = SizeSelector.selectSize(SIZES, DURATIONS, 0, 0, 640, 480, 0, 60, 0);
+        assertEquals(640, width(index));
+        assertEquals(480, height(index));
+
+        assertEquals(-1, SizeSelector.selectSize(SIZES, DURATIONS, 0, 0, 1280, 720, 0, 30, 1000000L));
+    }
+
+    @Test
+    public void appliesBudgetToGivenPixels() {
+        float ratio = SizeSelector.longSideRatio(1920, 1080);
+        // 预算只够30帧的1280x720，但每个预览尺寸只需处理640x360的分析流
+        long[] analysisPixels = new long[DURATIONS.length];
+        for (int i = 0; i < analysisPixels.length; i++) {
+            analysisPixels[i] = Math.min((long) width(i) * height(i), 640 * 360);
+        }
+        long budget = 1280 * 720 * 30L;
+        int index = SizeSelector.selectSize(SIZES, DURATIONS, analysisPixels, 0, 0, 0, 0, ratio, 30, budget);
+        assertEquals(2560, width(index));
+        assertEquals(1440, height(index));
+        index = SizeSelector.selectSize(SIZES, DURATIONS, null, 0, 0, 0, 0, ratio, 30, budget);
+        assertEquals(1280, width(index));
+    }
+
+    @Test
+    public void picksNarrowestFpsRangeReachingTarget() {
+        assertEquals(3, SizeSelector.selectFpsRange(FPS_RANGES, 30));
+        assertEquals(4, SizeSelector.selectFpsRange(FPS_RANGES, 24));
+        assertEquals(0, SizeSelector.selectFpsRange(FPS_RANGES, 15));
+        // 达不到目标帧率时选择上限最大的，上限相同时下限更高的
+        assertEquals(3, SizeSelector.selectFpsRange(FPS_RANGES, 60));
+        assertEquals(-1, SizeSelector.selectFpsRange(new int[0], 30));
+    }
+}
@@ -0,0 +1,63 @@
+package com.camera.preview.util;
+
+import com.camera.preview.util.YuvTestFrames.Gradient;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class YuvCropperTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    private static byte[] frame(int format) {
+        // 亮度和色度都等于在各自平面中的序号加上偏移
+        return YuvTestFrames.frame(format, WIDTH, HEIGHT, new Gradient(0, 1, WIDTH),
+                new Gradient(100, 1, WIDTH / 2), new Gradient(200, 1, WIDTH / 2));
+    }
+
+    @Test
+    public void alignSnapsToChromaAndClamps() {
+        int[] rects = {3, 1, 8, 5, -4, 6, 3, 20, 20, 0, 30, 4};
+        YuvCropper.alignRect(rects, 0, WIDTH, HEIGHT);
+        YuvCropper.alignRect(rects, 1, WIDTH, HEIGHT);
+        assertFalse(YuvCropper.alignRect(rects, 2, WIDTH, HEIGHT));
+        assertArrayEquals(new int[]{2, 0, 8, 6, 0, 6, 4, 8}, Arrays.copyOf(rects, 8));
+    }
+
+    @Test
+    public void cropMatchesSourcePixelsInEveryFormat() {
+        int[] formats = {ImageUtil.FORMAT_NV21, ImageUtil.FORMAT_NV12, ImageUtil.FORMAT_I420, ImageUtil.FORMAT_YV12};
+        for (int srcFormat : formats) {
+            for (int dstFormat : formats) {
+                byte[] src = frame(srcFormat);
+                byte[] dst = new byte[ImageUtil.getYuv420Size(6, 4)];
+                YuvCropper.crop(src, srcFormat, WIDTH, HEIGHT, 4, 2, 6, 4, dst, dstFormat);
+                String message = srcFormat + " -> " + dstFormat;
+                assertEquals(message, 2 * WIDTH + 4, dst[0] & 0xff);
+                assertEquals(message, 5 * WIDTH + 9, dst[23] & 0xff);
+                // 裁剪区域的第一个色度样本位于色度平面的(2, 1)
+                int chromaIndex = WIDTH / 2 + 2;
+                assertEquals(message, 100 + chromaIndex, dst[ImageUtil.getUOffset(dstFormat, 6, 4)] & 0xff);
+                assertEquals(message, 200 + chromaIndex, dst[ImageUtil.getVOffset(dstFormat, 6, 4)] & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void viewRectsMapBackToImage() {
+        // 1280x720的帧旋转90度后显示在720x1280的view中，缩放比例为1
+        FrameTransform transform = new FrameTransform(1280, 720, 720, 1280, 90, false, 0);
+        int[] image = {100, 200, 300, 260};
+        int[] view = new int[4];
+        transform.mapImageRectsToView(image, view, 1);
+        assertArrayEquals(new int[]{460, 100, 520, 300}, view);
+        int[] back = new int[4];
+        transform.mapViewRectsToImage(view, back, 1);
+        assertArrayEquals(image, back);
+    }
+}
@@ -0,0 +1,73 @@
+package com.camera.preview.util;
+
+import com.camera.preview.util.YuvTestFrames.Gradient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class YuvScalerTest {
+
+    private static byte[] gradient(int format, int width, int height) {
+        return YuvTestFrames.frame(format, width, height, new Gradient(0, 4, 0),
+                Gradient.solid(60), Gradient.solid(200));
+    }
+
+    @Test
+    public void boxAveragesEachBlock() {
+        int width = 32;
+        int height = 16;
+        byte[] src = gradient(ImageUtil.FORMAT_NV21, width, height);
+        byte[] dst = new byte[ImageUtil.getYuv420Size(8, 4)];
+        YuvScaler.downscaleBox(src, ImageUtil.FORMAT_NV21, width, height, 4, dst, ImageUtil.FORMAT_I420);
+        // 第一个块的x为0~3，亮度为0、4、8、12，平均值为6
+        assertEquals(6, dst[0] & 0xff);
+        assertEquals(6 + 16 * 7, dst[7] & 0xff);
+        assertEquals(60, dst[ImageUtil.getUOffset(ImageUtil.FORMAT_I420, 8, 4)] & 0xff);
+        assertEquals(200, dst[ImageUtil.getVOffset(ImageUtil.FORMAT_I420, 8, 4) + 3] & 0xff);
+    }
+
+    @Test
+    public void bilinearKeepsFlatChromaAndMonotonicLuma() {
+        int width = 64;
+        int height = 48;
+        byte[] src = gradient(ImageUtil.FORMAT_I420, width, height);
+        byte[] dst = new byte[ImageUtil.getYuv420Size(20, 14)];
+        YuvScaler.scale(src, ImageUtil.FORMAT_I420, width, height, dst, ImageUtil.FORMAT_NV21, 20, 14);
+        for (int x = 1; x < 20; x++) {
+            assertTrue((dst[x] & 0xff) > (dst[x - 1] & 0xff));
+        }
+        assertEquals(200, dst[20 * 14] & 0xff);
+        assertEquals(60, dst[20 * 14 + 1] & 0xff);
+    }
+
+    @Test
+    public void grayOutputOnlyWritesLuma() {
+        byte[] src = gradient(ImageUtil.FORMAT_NV12, 16, 16);
+        byte[] gray = new byte[ImageUtil.getBufferSize(ImageUtil.FORMAT_GRAY, 8, 8)];
+        YuvScaler.scale(src, ImageUtil.FORMAT_NV12, 16, 16, gray, ImageUtil.FORMAT_GRAY, 8, 8);
+        assertEquals(2, gray[0] & 0xff);
+        assertEquals(64, gray.length);
+    }
+
+    @Test
+    public void graySourceScalesAndCropsToGray() {
+        byte[] src = new byte[ImageUtil.getBufferSize(ImageUtil.FORMAT_GRAY, 16, 8)];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i % 16 * 4);
+        }
+        byte[] gray = new byte[ImageUtil.getBufferSize(ImageUtil.FORMAT_GRAY, 8, 4)];
+        YuvScaler.scale(src, ImageUtil.FORMAT_GRAY, 16, 8, gray, ImageUtil.FORMAT_GRAY, 8, 4);
+        assertEquals(2, gray[0] & 0xff);
+        byte[] cropped = new byte[ImageUtil.getBufferSize(ImageUtil.FORMAT_GRAY, 3, 3)];
+        YuvCropper.crop(src, ImageUtil.FORMAT_GRAY, 16, 8, 1, 1, 3, 3, cropped, ImageUtil.FORMAT_GRAY);
+        assertEquals(4, cropped[0] & 0xff);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void graySourceCanNotProduceChroma() {
+        byte[] src = new byte[ImageUtil.getBufferSize(ImageUtil.FORMAT_GRAY, 16, 8)];
+        YuvScaler.scale(src, ImageUtil.FORMAT_GRAY, 16, 8, new byte[ImageUtil.getYuv420Size(8, 4)], ImageUtil.FORMAT_NV21, 8, 4);
+    }
+}
@@ -0,0 +1,83 @@
+package com.camera.preview.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 测试共用的YUV420帧和临时文件。
+ * 每个平面的取值由{@link Gradient}描述，按目标格式的平面偏移和色度像素间隔写入，各格式的同一像素取值相同。
+ */
+public final class YuvTestFrames {
+
+    /**
+     * 平面中(col, row)处的取值为base + col * dx + row * dy，写入时截断为byte
+     */
+    public static final class Gradient {
+        final int base;
+        final int dx;
+        final int dy;
+
+        public Gradient(int base, int dx, int dy) {
+            this.base = base;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        public static Gradient solid(int value) {
+            return new Gradient(value, 0, 0);
+        }
+
+        int valueAt(int col, int row) {
+            return base + col * dx + row * dy;
+        }
+    }
+
+    private YuvTestFrames() {
+    }
+
+    /**
+     * 创建一帧紧凑排列的YUV420数据
+     *
+     * @param format 格式，取值为{@link ImageUtil#FORMAT_NV21}等，为{@link ImageUtil#FORMAT_GRAY}时忽略u、v
+     */
+    public static byte[] frame(int format, int width, int height, Gradient y, Gradient u, Gradient v) {
+        byte[] data = new byte[ImageUtil.getBufferSize(format, width, height)];
+        fill(data, format, width, height, y, u, v);
+        return data;
+    }
+
+    /**
+     * 填充已分配的帧数据，如帧池中的帧
+     *
+     * @see #frame(int, int, int, Gradient, Gradient, Gradient)
+     */
+    public static void fill(byte[] data, int format, int width, int height, Gradient y, Gradient u, Gradient v) {
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                data[row * width + col] = (byte) y.valueAt(col, row);
+            }
+        }
+        if (format == ImageUtil.FORMAT_GRAY) {
+            return;
+        }
+        int uOffset = ImageUtil.getUOffset(format, width, height);
+        int vOffset = ImageUtil.getVOffset(format, width, height);
+        int pixelStride = ImageUtil.getChromaPixelStride(format);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                int index = (row * width / 2 + col) * pixelStride;
+                data[uOffset + index] = (byte) u.valueAt(col, row);
+                data[vOffset + index] = (byte) v.valueAt(col, row);
+            }
+        }
+    }
+
+    /**
+     * 创建测试结束后删除的临时文件
+     */
+    public static File tempFile(String prefix, String suffix) throws IOException {
+        File file = File.createTempFile(prefix, suffix);
+        file.deleteOnExit();
+        return file;
+    }
+}
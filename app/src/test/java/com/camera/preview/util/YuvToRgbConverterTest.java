@@ -0,0 +1,49 @@
+package com.camera.preview.util;
+
+import com.camera.preview.util.YuvTestFrames.Gradient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class YuvToRgbConverterTest {
+
+    private static byte[] solid(int format, int width, int height, int y, int u, int v) {
+        return YuvTestFrames.frame(format, width, height, Gradient.solid(y), Gradient.solid(u), Gradient.solid(v));
+    }
+
+    @Test
+    public void grayAndRangeEndpoints() {
+        int[] argb = new int[16];
+        YuvToRgbConverter.yuv420ToArgb(solid(ImageUtil.FORMAT_NV21, 4, 4, 128, 128, 128), ImageUtil.FORMAT_NV21, 4, 4, argb, 1, true);
+        assertEquals(0xff808080, argb[0]);
+        YuvToRgbConverter.yuv420ToArgb(solid(ImageUtil.FORMAT_I420, 4, 4, 16, 128, 128), ImageUtil.FORMAT_I420, 4, 4, argb, 1, false);
+        assertEquals(0xff000000, argb[5]);
+        YuvToRgbConverter.yuv420ToArgb(solid(ImageUtil.FORMAT_NV12, 4, 4, 235, 128, 128), ImageUtil.FORMAT_NV12, 4, 4, argb, 1, false);
+        assertEquals(0xffffffff, argb[15]);
+    }
+
+    @Test
+    public void redInAllFormatsWithDownsample() {
+        int[] formats = {ImageUtil.FORMAT_NV21, ImageUtil.FORMAT_NV12, ImageUtil.FORMAT_I420, ImageUtil.FORMAT_YV12};
+        for (int format : formats) {
+            // BT.601全范围下纯红色的YUV约为(76, 85, 255)
+            int[] argb = new int[4];
+            YuvToRgbConverter.yuv420ToArgb(solid(format, 8, 8, 76, 85, 255), format, 8, 8, argb, 4, true);
+            int r = (argb[3] >> 16) & 0xff;
+            int g = (argb[3] >> 8) & 0xff;
+            int b = argb[3] & 0xff;
+            assertTrue("format " + format, r >= 253 && g <= 2 && b <= 2);
+
+            short[] rgb565 = new short[4];
+            YuvToRgbConverter.yuv420ToRgb565(solid(format, 8, 8, 76, 85, 255), format, 8, 8, rgb565, 4, true);
+            assertEquals((short) 0xf800, rgb565[0]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsGrayData() {
+        YuvToRgbConverter.yuv420ToArgb(new byte[16 * 8], ImageUtil.FORMAT_GRAY, 16, 8, new int[16 * 8], 1, true);
+    }
+}
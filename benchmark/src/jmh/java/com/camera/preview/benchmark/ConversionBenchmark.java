@@ -0,0 +1,83 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link ImageUtil}中YUV格式转换的基准
+ */
+@State(Scope.Thread)
+public class ConversionBenchmark {
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({SyntheticFrame.LAYOUT_SEMI_PLANAR, SyntheticFrame.LAYOUT_PLANAR})
+    public String layout;
+
+    @Param({"0", "64", "7"})
+    public int rowPadding;
+
+    @Param({SyntheticFrame.CHROMA_RANDOM, SyntheticFrame.CHROMA_FLAT})
+    public String chroma;
+
+    private SyntheticFrame frame;
+    private byte[] dst;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrame.create(resolution, layout, rowPadding, chroma);
+        dst = new byte[ImageUtil.getYuv420Size(frame.width, frame.height)];
+    }
+
+    @Benchmark
+    public byte[] yuv420888ToNv21() {
+        ImageUtil.yuv420888ToNv21(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, frame.uvPixelStride,
+                frame.width, frame.height, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] yuv420888ToNv12() {
+        ImageUtil.yuv420888ToNv12(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, frame.uvPixelStride,
+                frame.width, frame.height, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] yuv420888ToI420() {
+        ImageUtil.yuv420888ToI420(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, frame.uvPixelStride,
+                frame.width, frame.height, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] yuv420888ToYv12() {
+        ImageUtil.yuv420888ToYv12(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, frame.uvPixelStride,
+                frame.width, frame.height, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] nv21ToI420() {
+        ImageUtil.nv21ToI420(frame.nv21, dst, frame.width, frame.height);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] i420ToNv21() {
+        ImageUtil.i420ToNv21(frame.i420, dst, frame.width, frame.height);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] nv21ToNv12() {
+        ImageUtil.nv21ToNv12(frame.nv21, dst, frame.width, frame.height);
+        return dst;
+    }
+}
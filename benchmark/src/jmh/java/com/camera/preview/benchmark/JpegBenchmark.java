@@ -0,0 +1,56 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.JpegEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link JpegEncoder}的基准。合成帧为随机噪声，熵编码的数据量接近最坏情况
+ */
+@State(Scope.Thread)
+public class JpegBenchmark {
+
+    @Param({"1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"75", "90"})
+    public int quality;
+
+    /**
+     * 缩略图区域的边长
+     */
+    private static final int CROP_SIZE = 256;
+
+    private SyntheticFrame frame;
+    private JpegEncoder encoder;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrame.create(resolution, SyntheticFrame.LAYOUT_SEMI_PLANAR, 64);
+        encoder = new JpegEncoder(quality);
+    }
+
+    @Benchmark
+    public int planesFullFrame() {
+        return encoder.encode(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, frame.uvPixelStride,
+                frame.width, frame.height, 0, 0, frame.width, frame.height);
+    }
+
+    @Benchmark
+    public int planesCenterCrop() {
+        int left = (frame.width - CROP_SIZE) / 2 & ~1;
+        int top = (frame.height - CROP_SIZE) / 2 & ~1;
+        return encoder.encode(frame.y, frame.yRowStride, frame.u, frame.v, frame.uvRowStride, frame.uvPixelStride,
+                frame.width, frame.height, left, top, CROP_SIZE, CROP_SIZE);
+    }
+
+    @Benchmark
+    public int nv21FullFrame() {
+        return encoder.encode(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height);
+    }
+}
@@ -0,0 +1,68 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.pipeline.FramePool;
+import com.camera.preview.pipeline.FrameScaler;
+import com.camera.preview.pipeline.FrameSource;
+import com.camera.preview.pipeline.SyntheticFrameSource;
+import com.camera.preview.pipeline.YuvFrame;
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvToRgbConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * 由合成帧源驱动的处理流程：产生帧、缩小为缩略图并转换为ARGB，与CameraPreviewActivity中的处理一致。
+ * 每次调用在当前线程中处理一帧，用于测量单帧耗时和吞吐量
+ */
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    @Param({"1280x720", "1920x1080"})
+    public String resolution;
+
+    private static final int THUMBNAIL_SCALE = 4;
+
+    private SyntheticFrameSource source;
+    private FramePool thumbnailPool;
+    private int[] argb;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        source = new SyntheticFrameSource(width, height, ImageUtil.FORMAT_NV21, 0, 3);
+        final int thumbnailWidth = width / THUMBNAIL_SCALE & ~1;
+        final int thumbnailHeight = height / THUMBNAIL_SCALE & ~1;
+        thumbnailPool = new FramePool(1, thumbnailWidth, thumbnailHeight, ImageUtil.FORMAT_NV21);
+        argb = new int[thumbnailWidth * thumbnailHeight];
+        // 不经过LatestFrameDispatcher，其自适应采样会跳过部分帧，使测得的单帧耗时偏低
+        source.setFrameListener(new FrameSource.FrameListener() {
+            @Override
+            public void onFrame(YuvFrame frame) {
+                YuvFrame thumbnail = FrameScaler.scale(frame, thumbnailPool);
+                if (thumbnail == null) {
+                    return;
+                }
+                try {
+                    YuvToRgbConverter.yuv420ToArgb(thumbnail.getData(), thumbnail.getFormat(),
+                            thumbnailWidth, thumbnailHeight, argb, 1, true);
+                } finally {
+                    thumbnail.release();
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public int[] syntheticToThumbnailArgb() throws IOException {
+        source.produceFrame();
+        return argb;
+    }
+}
@@ -0,0 +1,46 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.util.ImageUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link ImageUtil#rotateYuv420(byte[], byte[], int, int, int, int, boolean)}的基准
+ */
+@State(Scope.Thread)
+public class RotateBenchmark {
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"90", "180", "270"})
+    public int degrees;
+
+    @Param({"false", "true"})
+    public boolean mirror;
+
+    private SyntheticFrame frame;
+    private byte[] dst;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrame.create(resolution, SyntheticFrame.LAYOUT_SEMI_PLANAR, 0);
+        dst = new byte[ImageUtil.getYuv420Size(frame.width, frame.height)];
+    }
+
+    @Benchmark
+    public byte[] rotateNv21() {
+        ImageUtil.rotateYuv420(frame.nv21, dst, ImageUtil.FORMAT_NV21, frame.width, frame.height, degrees, mirror);
+        return dst;
+    }
+
+    @Benchmark
+    public byte[] rotateI420() {
+        ImageUtil.rotateYuv420(frame.i420, dst, ImageUtil.FORMAT_I420, frame.width, frame.height, degrees, mirror);
+        return dst;
+    }
+}
@@ -0,0 +1,65 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvScaler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link YuvScaler}的基准，目标为检测算法常用的320宽的分析分辨率
+ */
+@State(Scope.Thread)
+public class ScaleBenchmark {
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"2", "4"})
+    public int factor;
+
+    private static final int ANALYSIS_WIDTH = 320;
+
+    private SyntheticFrame frame;
+    private byte[] boxDst;
+    private byte[] grayDst;
+    private byte[] bilinearDst;
+    private int analysisHeight;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrame.create(resolution, SyntheticFrame.LAYOUT_SEMI_PLANAR, 0);
+        boxDst = new byte[ImageUtil.getYuv420Size(frame.width / factor, frame.height / factor)];
+        grayDst = new byte[ImageUtil.getBufferSize(ImageUtil.FORMAT_GRAY, frame.width / 8, frame.height / 8)];
+        analysisHeight = (frame.height * ANALYSIS_WIDTH / frame.width) & ~1;
+        bilinearDst = new byte[ImageUtil.getYuv420Size(ANALYSIS_WIDTH, analysisHeight)];
+    }
+
+    @Benchmark
+    public byte[] boxNv21ToNv21() {
+        YuvScaler.downscaleBox(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height, factor, boxDst, ImageUtil.FORMAT_NV21);
+        return boxDst;
+    }
+
+    @Benchmark
+    public byte[] boxNv21ToI420() {
+        YuvScaler.downscaleBox(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height, factor, boxDst, ImageUtil.FORMAT_I420);
+        return boxDst;
+    }
+
+    @Benchmark
+    public byte[] box8ToGray() {
+        YuvScaler.downscaleBox(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height, 8, grayDst, ImageUtil.FORMAT_GRAY);
+        return grayDst;
+    }
+
+    @Benchmark
+    public byte[] bilinearToAnalysisWidth() {
+        YuvScaler.scaleBilinear(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height,
+                bilinearDst, ImageUtil.FORMAT_NV21, ANALYSIS_WIDTH, analysisHeight);
+        return bilinearDst;
+    }
+}
@@ -0,0 +1,127 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.util.ImageUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 合成的YUV_420_888帧，平面布局尽量贴近真实设备输出
+ */
+final class SyntheticFrame {
+    /**
+     * 常见的半平面布局：U、V像素步长为2，两个buffer指向同一块交错内存，
+     * 按数组长度看是 y.length / u.length == 2 的"4:2:2"
+     */
+    static final String LAYOUT_SEMI_PLANAR = "SEMI_PLANAR";
+    /**
+     * 平面布局：U、V像素步长为1，按数组长度看是 y.length / u.length == 4 的"4:2:0"
+     */
+    static final String LAYOUT_PLANAR = "PLANAR";
+    /**
+     * 随机的色度数据
+     */
+    static final String CHROMA_RANDOM = "RANDOM";
+    /**
+     * 整帧相同的中性灰色度，对应黑屏、遮挡镜头或灰色场景
+     */
+    static final String CHROMA_FLAT = "FLAT";
+
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride;
+    final ByteBuffer y;
+    final ByteBuffer u;
+    final ByteBuffer v;
+    /**
+     * 同一帧的紧凑nv21数据，供以紧凑数据为输入的算法使用
+     */
+    final byte[] nv21;
+    /**
+     * 同一帧的紧凑i420数据，供以紧凑数据为输入的算法使用
+     */
+    final byte[] i420;
+
+    private SyntheticFrame(int width, int height, int yRowStride, int uvRowStride, int uvPixelStride,
+                           ByteBuffer y, ByteBuffer u, ByteBuffer v) {
+        this.width = width;
+        this.height = height;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.y = y;
+        this.u = u;
+        this.v = v;
+        nv21 = new byte[ImageUtil.getYuv420Size(width, height)];
+        i420 = new byte[ImageUtil.getYuv420Size(width, height)];
+        ImageUtil.yuv420888ToNv21(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, nv21);
+        ImageUtil.yuv420888ToI420(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height, i420);
+    }
+
+    /**
+     * @param resolution 形如 1920x1080
+     * @param layout     {@link #LAYOUT_SEMI_PLANAR}或{@link #LAYOUT_PLANAR}
+     * @param rowPadding Y平面每行在宽度之外补充的字节数，可以为奇数
+     */
+    static SyntheticFrame create(String resolution, String layout, int rowPadding) {
+        return create(resolution, layout, rowPadding, CHROMA_RANDOM);
+    }
+
+    /**
+     * @param chromaKind {@link #CHROMA_RANDOM}或{@link #CHROMA_FLAT}
+     */
+    static SyntheticFrame create(String resolution, String layout, int rowPadding, String chromaKind) {
+        boolean flat = CHROMA_FLAT.equals(chromaKind);
+        if (!flat && !CHROMA_RANDOM.equals(chromaKind)) {
+            throw new IllegalArgumentException("unknown chroma " + chromaKind);
+        }
+        int separator = resolution.indexOf('x');
+        int width = Integer.parseInt(resolution.substring(0, separator));
+        int height = Integer.parseInt(resolution.substring(separator + 1));
+        int yRowStride = width + rowPadding;
+        Random random = new Random(width * 31L + height);
+
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * height);
+        fill(y, random);
+        if (LAYOUT_SEMI_PLANAR.equals(layout)) {
+            int uvRowStride = yRowStride;
+            // 最后一行只有width - 1个有效字节，和ImageReader返回的buffer长度一致
+            int length = uvRowStride * (height / 2 - 1) + width - 1;
+            ByteBuffer chroma = ByteBuffer.allocateDirect(length + 1);
+            fillChroma(chroma, random, flat);
+            chroma.limit(length);
+            ByteBuffer v = chroma.slice();
+            chroma.limit(length + 1);
+            chroma.position(1);
+            ByteBuffer u = chroma.slice();
+            return new SyntheticFrame(width, height, yRowStride, uvRowStride, 2, y, u, v);
+        } else if (LAYOUT_PLANAR.equals(layout)) {
+            int uvRowStride = (yRowStride + 1) / 2;
+            ByteBuffer u = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+            ByteBuffer v = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+            fillChroma(u, random, flat);
+            fillChroma(v, random, flat);
+            return new SyntheticFrame(width, height, yRowStride, uvRowStride, 1, y, u, v);
+        }
+        throw new IllegalArgumentException("unknown layout " + layout);
+    }
+
+    private static void fillChroma(ByteBuffer buffer, Random random, boolean flat) {
+        if (!flat) {
+            fill(buffer, random);
+            return;
+        }
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 128);
+        }
+    }
+
+    private static void fill(ByteBuffer buffer, Random random) {
+        byte[] data = new byte[buffer.capacity()];
+        random.nextBytes(data);
+        buffer.put(data);
+        buffer.clear();
+    }
+}
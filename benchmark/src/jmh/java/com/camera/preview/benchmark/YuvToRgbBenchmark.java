@@ -0,0 +1,53 @@
+package com.camera.preview.benchmark;
+
+import com.camera.preview.util.ImageUtil;
+import com.camera.preview.util.YuvToRgbConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link YuvToRgbConverter}的基准
+ */
+@State(Scope.Thread)
+public class YuvToRgbBenchmark {
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"1", "4"})
+    public int sampleSize;
+
+    private SyntheticFrame frame;
+    private int[] argb;
+    private short[] rgb565;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrame.create(resolution, SyntheticFrame.LAYOUT_SEMI_PLANAR, 0);
+        int length = YuvToRgbConverter.getSampledSize(frame.width, sampleSize) * YuvToRgbConverter.getSampledSize(frame.height, sampleSize);
+        argb = new int[length];
+        rgb565 = new short[length];
+    }
+
+    @Benchmark
+    public int[] nv21ToArgb() {
+        YuvToRgbConverter.yuv420ToArgb(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height, argb, sampleSize, true);
+        return argb;
+    }
+
+    @Benchmark
+    public int[] i420ToArgbLimitedRange() {
+        YuvToRgbConverter.yuv420ToArgb(frame.i420, ImageUtil.FORMAT_I420, frame.width, frame.height, argb, sampleSize, false);
+        return argb;
+    }
+
+    @Benchmark
+    public short[] nv21ToRgb565() {
+        YuvToRgbConverter.yuv420ToRgb565(frame.nv21, ImageUtil.FORMAT_NV21, frame.width, frame.height, rgb565, sampleSize, true);
+        return rgb565;
+    }
+}